@@ -26,32 +26,42 @@ package com.berries.dashboard.activities;
 
 import com.berries.dashboard.R;
 import com.berries.dashboard.adapters.WheelTypesConnector;
-import com.berries.dashboard.db.WheelContentProvider;
 import com.berries.dashboard.dialogs.AlertDialogUtils;
+import com.berries.dashboard.db.ExportWriter;
+import com.berries.dashboard.db.ImportReader;
+import com.berries.dashboard.db.WheelContentProvider;
+import com.berries.dashboard.db.WheelWriteQueue;
 import com.berries.dashboard.event.WheelTypeClickListener;
 import com.berries.dashboard.handlers.ResourcesHandler;
+import com.berries.dashboard.loaders.LoadMoreScrollListener;
 import com.berries.dashboard.model.Wheel;
 import com.berries.dashboard.model.WheelItem;
 import com.berries.dashboard.utils.AppKeys;
+import com.berries.dashboard.utils.StartupTiming;
 
+import android.content.ContentValues;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
 import android.support.v4.app.FragmentActivity;
 import android.support.v4.app.LoaderManager;
 import android.support.v4.app.LoaderManager.LoaderCallbacks;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v4.widget.SimpleCursorAdapter;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.ContextMenu;
 import android.view.ContextMenu.ContextMenuInfo;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
+import android.widget.EditText;
 import android.widget.GridView;
 import android.widget.Toast;
 
@@ -69,6 +79,16 @@ public class DashboardActivity extends FragmentActivity implements LoaderManager
 	private GridView mGridView;
 	private int mClickedWheelTypeId;
 	private View mSelectedViewForAction;
+
+	private static final int REQUEST_IMPORT = 1;
+	private static final String SEARCH_TEXT_KEY = "searchText";
+	// time in milliseconds without typing before the search runs
+	private static final long SEARCH_DELAY_MS = 250;
+	// saved wheels older than this with the same values are merged per week when compacting
+	private static final long COMPACT_OLDER_THAN_MS = 90L * 24 * 60 * 60 * 1000;
+
+	private final Handler mHandler = new Handler();
+	private String mSearchText;
 	  
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
@@ -82,11 +102,52 @@ public class DashboardActivity extends FragmentActivity implements LoaderManager
 		mGridView = (GridView)this.findViewById(R.id.gridview);		
 		mGridView.setAdapter(mAdapter);
 		mGridView.setScrollBarStyle(GridView.SCROLLBARS_OUTSIDE_INSET);
+		mGridView.setOnScrollListener(new LoadMoreScrollListener(getSupportLoaderManager(), 0));
+
+		// search as you type, the search only runs once the typing pauses
+		EditText searchText = (EditText)this.findViewById(R.id.search_text);
+		mSearchText = searchText.getText().toString();
+		searchText.addTextChangedListener(new TextWatcher() {
+			@Override
+			public void beforeTextChanged(CharSequence text, int start, int count, int after) {
+			}
+
+			@Override
+			public void onTextChanged(CharSequence text, int start, int before, int count) {
+			}
+
+			@Override
+			public void afterTextChanged(Editable text) {
+				String searchText = text.toString().trim();
+				mHandler.removeCallbacks(mSearch);
+				if (!searchText.equals(mSearchText)) {
+					mSearchText = searchText;
+					mHandler.postDelayed(mSearch, SEARCH_DELAY_MS);
+				}
+			}
+		});
 		
 		// load the list of wheel types from content provider
 		loadWheelTypes();			
 	}
 
+	private final Runnable mSearch = new Runnable() {
+		@Override
+		public void run() {
+			loadWheelTypes();
+		}
+	};
+
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+		mHandler.removeCallbacks(mSearch);
+		if (isFinishing()) {
+			// leaving the app, the saves still queued are written in the background
+			WheelWriteQueue.getInstance(this).shutdown();
+		}
+	}
+
 	@Override
 	public void onCreateContextMenu(ContextMenu menu, View v,
 	                                ContextMenuInfo menuInfo) {
@@ -101,6 +162,8 @@ public class DashboardActivity extends FragmentActivity implements LoaderManager
 	public boolean onCreateOptionsMenu(Menu menu) {
 		// Inflate the menu; this adds items to the action bar if it is present.
 		getMenuInflater().inflate(R.menu.wheel_types_menu, menu);
+		// exports are streamed through a pipe which is only available from gingerbread
+		menu.findItem(R.id.action_export).setVisible(Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD);
 		return true;
 	}
 	
@@ -110,6 +173,23 @@ public class DashboardActivity extends FragmentActivity implements LoaderManager
 	        case R.id.action_help:
 	        	AlertDialogUtils.showAlert(this, R.string.welcome_title, R.string.help_wheel_types);
 	            return true;
+	        case R.id.action_export:
+	        	// the history is streamed by the provider while the receiving app reads it
+	        	Intent exportIntent = new Intent(Intent.ACTION_SEND);
+	        	exportIntent.setType("text/csv");
+	        	exportIntent.putExtra(Intent.EXTRA_STREAM, WheelContentProvider.getExportUri(true, ExportWriter.FORMAT_CSV));
+	        	exportIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+	        	startActivity(Intent.createChooser(exportIntent, getString(R.string.export_chooser_title)));
+	        	return true;
+	        case R.id.action_import:
+	        	Intent importIntent = new Intent(Intent.ACTION_GET_CONTENT);
+	        	importIntent.setType("*/*");
+	        	importIntent.addCategory(Intent.CATEGORY_OPENABLE);
+	        	startActivityForResult(Intent.createChooser(importIntent, getString(R.string.import_chooser_title)), REQUEST_IMPORT);
+	        	return true;
+	        case R.id.action_compact:
+	        	compactHistory();
+	        	return true;
 	        case R.id.action_add:	        	
 				Intent wheelViewIntent = new Intent(this, com.berries.dashboard.activities.WheelViewActivity.class);
 				wheelViewIntent.putExtra(AppKeys.WHEEL_PARCEL_KEY,  generateTemplateWheel() );
@@ -122,26 +202,82 @@ public class DashboardActivity extends FragmentActivity implements LoaderManager
 	}	
 	
 	
+	@Override
+	protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+		if (requestCode != REQUEST_IMPORT) {
+			super.onActivityResult(requestCode, resultCode, data);
+			return;
+		}
+		if (resultCode != RESULT_OK || data == null || data.getData() == null) {
+			return;
+		}
+		importHistory(data.getData());
+	}
+
+	// imports on a background thread, the dashboard is refreshed by the provider notifications as chunks are written
+	private void importHistory(Uri source) {
+		final Context appContext = getApplicationContext();
+		String type = getContentResolver().getType(source);
+		boolean json = "application/json".equals(type) || source.toString().toLowerCase().endsWith(".json");
+		ImportReader reader = new ImportReader(appContext.getContentResolver(), source, 
+				json ? ExportWriter.FORMAT_JSON : ExportWriter.FORMAT_CSV, new ImportReader.Callback() {
+			@Override
+			public void onImportComplete(ImportReader.Result result) {
+				if (result == null) {
+					Toast.makeText(appContext, R.string.message_import_fail, Toast.LENGTH_LONG).show();
+				} else if (result.alreadyImported) {
+					Toast.makeText(appContext, R.string.message_import_already_done, Toast.LENGTH_LONG).show();
+				} else {
+					Toast.makeText(appContext, appContext.getString(R.string.message_import_done, result.imported, result.rejected), 
+							Toast.LENGTH_LONG).show();
+				}
+			}
+		});
+		new Thread(reader, ImportReader.class.getSimpleName()).start();
+	}
+
+	// compacts on a background thread, the dashboard is refreshed by the provider notifications once it is done
+	private void compactHistory() {
+		final Context appContext = getApplicationContext();
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				ContentValues values = new ContentValues();
+				values.put(WheelContentProvider.COMPACT_OLDER_THAN, COMPACT_OLDER_THAN_MS);
+				values.put(WheelContentProvider.QUERY_PARAMETER_PERIOD, WheelContentProvider.PERIOD_WEEK);
+				final int removed = appContext.getContentResolver().update(WheelContentProvider.CONTENT_COMPACT_URI, values, null, null);
+				mHandler.post(new Runnable() {
+					@Override
+					public void run() {
+						Toast.makeText(appContext, appContext.getString(R.string.message_compact_done, removed), Toast.LENGTH_LONG).show();
+					}
+				});
+			}
+		}, "HistoryCompactor").start();
+	}
+
 	private void loadWheelTypes() {
 		// start a loader that will load the wheels on the backgroun
 		LoaderCallbacks<Cursor> callbackHandler = (LoaderCallbacks<Cursor>) this;
 		LoaderManager manager = this.getSupportLoaderManager();
-		manager.restartLoader(0, null, callbackHandler);
+		Bundle args = new Bundle();
+		args.putString(SEARCH_TEXT_KEY, mSearchText);
+		manager.restartLoader(0, args, callbackHandler);
 	}
 
 
 	@Override
 	public Loader<Cursor> onCreateLoader(int id, Bundle bundle) {
-		// Create a cursor loader that will retrieve all wheel types 
-		Uri uri = WheelContentProvider.CONTENT_WHEEL_TYPES_URI;
-		CursorLoader cursorLoader = new CursorLoader(this, uri, null, null, null, null);
-		return cursorLoader;
+		// Create a loader that will retrieve the wheel types matching the search page by page as the grid scrolls
+		String searchText = (bundle == null) ? null : bundle.getString(SEARCH_TEXT_KEY);
+		return WheelTypesConnector.getWheelTypesLoader(this, searchText);
 	}
 
 	@Override
 	public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
 		// The loading finished, swap the cursor
 		mAdapter.swapCursor(cursor);
+		StartupTiming.measureFirstFrame(mGridView);
 	}
 	
 
@@ -29,7 +29,6 @@ import android.os.Bundle;
 import android.support.v4.app.FragmentActivity;
 import android.support.v4.app.LoaderManager;
 import android.support.v4.app.LoaderManager.LoaderCallbacks;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v4.widget.SimpleCursorAdapter;
 import android.view.View;
@@ -41,9 +40,13 @@ import com.berries.dashboard.R;
 import com.berries.dashboard.adapters.WheelTypesConnector;
 import com.berries.dashboard.adapters.WheelValuesBinder;
 import com.berries.dashboard.adapters.WheelValuesConnector;
+import com.berries.dashboard.db.WheelHistory;
+import com.berries.dashboard.db.WheelHistoryStore;
+import com.berries.dashboard.loaders.LoadMoreScrollListener;
+import com.berries.dashboard.loaders.PagedCursorLoader;
+import com.berries.dashboard.loaders.WheelHistoryLoader;
 import com.berries.dashboard.model.Wheel;
 import com.berries.dashboard.utils.AppKeys;
-import com.berries.dashboard.utils.Prefs;
 import com.berries.dashboard.views.WheelGroupView;
 
 /**
@@ -61,6 +64,12 @@ public class WheelProgressActivity extends FragmentActivity implements
 	private SimpleCursorAdapter mAdapter;
 	private ListView mList;
 	private TextView mInfoView;
+	private WheelHistory mHistory;
+	// false once the user picked an older row, new saves then no longer replace the wheel shown
+	private boolean mShowingLatest = true;
+	// save time of the values shown in the wheel
+	private long mShownTime;
+	private static final int HISTORY_LOADER_ID = 1;
 	private static final String NEW_LINE = "\n";
 	private static final String SEPARATOR = ":\t";
 
@@ -85,10 +94,12 @@ public class WheelProgressActivity extends FragmentActivity implements
 		mWheelGroupView.setShowTextViews(false);
 		mList = (ListView) findViewById(android.R.id.list);
 
-		int numOfPreviousSaved = Prefs.getPreviousSavedValues(this, wheel);
-		if (numOfPreviousSaved >= 1) {
-			WheelValuesConnector.setWheelValuesToLastSaved(this, wheel);
+		// the saved values summary comes with the wheel from the dashboard, no need to query for it
+		int numOfPreviousSaved = wheel.getNumOfSavedValues();
+		if (wheel.applyLastSavedValues()) {
+			wheel.setTimeSaved(wheel.getLastSavedTime());
 		}
+		mShownTime = wheel.getTimeSaved();
 		mWheelGroupView.setWheel(wheel);
 		mInfoView = (TextView) this.findViewById(R.id.date_saved);
 		CharSequence infoText = generateInfoText(wheel, numOfPreviousSaved > 0);
@@ -102,9 +113,11 @@ public class WheelProgressActivity extends FragmentActivity implements
 		} else {
 			mList.setScrollBarStyle(ListView.SCROLLBARS_OUTSIDE_INSET);
 			mList.setOnItemClickListener(this);
+			mList.setOnScrollListener(new LoadMoreScrollListener(getSupportLoaderManager(), 0));
 			mList.setAdapter(mAdapter);
 			emptyListText.setVisibility(View.GONE);			
 			loadWheels();
+			getSupportLoaderManager().initLoader(HISTORY_LOADER_ID, null, mHistoryCallbacks);
 		}
 	}
 
@@ -130,7 +143,7 @@ public class WheelProgressActivity extends FragmentActivity implements
 
 	@Override
 	public Loader<Cursor> onCreateLoader(int id, Bundle bundle) {
-		CursorLoader cursorLoader = WheelTypesConnector
+		PagedCursorLoader cursorLoader = WheelTypesConnector
 				.getQueryCursorLoaderForWheelType(getBaseContext(),
 						mWheelGroupView.getWheel());
 		return cursorLoader;
@@ -138,8 +151,73 @@ public class WheelProgressActivity extends FragmentActivity implements
 
 	@Override
 	public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
-		// The loading finished
+		// The loading finished, new saves come before the rows shown and must not move them
+		int first = mList.getFirstVisiblePosition();
+		View firstView = mList.getChildAt(0);
+		int top = (firstView == null) ? 0 : firstView.getTop();
+		long firstId = (firstView == null) ? -1 : mAdapter.getItemId(first);
+		int oldCount = mAdapter.getCount();
 		mAdapter.swapCursor(cursor);
+		if (firstId >= 0 && (first > 0 || top < 0)) {
+			int position = findRow(firstId, first, first + Math.max(0, mAdapter.getCount() - oldCount));
+			if (position > first) {
+				mList.setSelectionFromTop(position, top);
+			}
+		}
+		if (mHistory != null) {
+			WheelHistory current = WheelHistoryStore.getInstance().get(mHistory.getTypeId());
+			if (current != mHistory) {
+				// rows were deleted or changed, the history is read again
+				getSupportLoaderManager().restartLoader(HISTORY_LOADER_ID, null, mHistoryCallbacks);
+			} else {
+				showLatest();
+			}
+		}
+	}
+
+	// position of the row with the given id between from and to, -1 if it is not there
+	private int findRow(long id, int from, int to) {
+		for (int position = from; position <= to && position < mAdapter.getCount(); position++) {
+			if (mAdapter.getItemId(position) == id) {
+				return position;
+			}
+		}
+		return -1;
+	}
+
+	private final LoaderCallbacks<WheelHistory> mHistoryCallbacks = new LoaderCallbacks<WheelHistory>() {
+		@Override
+		public Loader<WheelHistory> onCreateLoader(int id, Bundle bundle) {
+			return new WheelHistoryLoader(getBaseContext(), mWheelGroupView.getWheel().getTypeId());
+		}
+
+		@Override
+		public void onLoadFinished(Loader<WheelHistory> loader, WheelHistory history) {
+			mHistory = history;
+			showLatest();
+		}
+
+		@Override
+		public void onLoaderReset(Loader<WheelHistory> loader) {
+			mHistory = null;
+		}
+	};
+
+	// show the newest saved values, which may have been saved after this screen was opened
+	private void showLatest() {
+		int latest = mHistory.latest();
+		Wheel wheel = mWheelGroupView.getWheel();
+		if (!mShowingLatest || latest < 0 || mHistory.getDate(latest) == mShownTime) {
+			return;
+		}
+		Wheel latestWheel = wheel.copy();
+		for (int i = 0; i < latestWheel.getNumOfItems(); i++) {
+			latestWheel.getItemAt(i).setValue(mHistory.getValue(latest, i));
+		}
+		latestWheel.setTimeSaved(mHistory.getDate(latest));
+		mShownTime = latestWheel.getTimeSaved();
+		mInfoView.setText(generateInfoText(latestWheel, true));
+		mWheelGroupView.animateTo(latestWheel);
 	}
 
 	@Override
@@ -163,6 +241,8 @@ public class WheelProgressActivity extends FragmentActivity implements
 						valueHolder.values[i]);
 			}
 			nextAppointmentWheel.setTimeSaved(valueHolder.dateSaved);
+			mShowingLatest = (position == 0);
+			mShownTime = valueHolder.dateSaved;
 			CharSequence infoText = generateInfoText(nextAppointmentWheel, true);
 			mInfoView.setText(infoText);
 			// move to the next appointment wheel values using animation
@@ -37,7 +37,6 @@ import com.berries.dashboard.adapters.WheelValuesConnector;
 import com.berries.dashboard.dialogs.AlertDialogUtils;
 import com.berries.dashboard.model.Wheel;
 import com.berries.dashboard.utils.AppKeys;
-import com.berries.dashboard.utils.Prefs;
 import com.berries.dashboard.views.WheelGroupView;
 
 /**
@@ -107,7 +106,6 @@ public class WheelViewActivity extends FragmentActivity implements
 
 		// retrieve activity mode
 		mActivityMode = intentParams.getByte(AppKeys.WHEEL_ACTIVITY_MODE_KEY);
-		Prefs.getPreviousSavedValues(this, wheel);
 
 		// setup views
 		setContentView(R.layout.activity_main);
@@ -192,8 +190,8 @@ public class WheelViewActivity extends FragmentActivity implements
 		Wheel wheel = mWheelGroupView.getWheel();
 
 		if (mActivityMode == MODE_SET_VALUES) {
-			WheelValuesConnector.saveWheelValues(getBaseContext(), wheel);
-			Prefs.setValuesSavedInPrefs(this, wheel);
+			// queued, the dialog shows right away while the values are written in the background
+			WheelValuesConnector.saveWheelValues(getBaseContext(), wheel, null);
 			AlertDialogUtils.showAlert(this, wheel.getTitle(),
 					R.string.message_values_saved, this);
 
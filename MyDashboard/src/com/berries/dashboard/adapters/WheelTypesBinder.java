@@ -32,6 +32,7 @@ import android.view.View;
 import android.widget.TextView;
 
 import com.berries.dashboard.db.tables.Contract;
+import com.berries.dashboard.db.tables.PackedValuesCodec;
 import com.berries.dashboard.event.WheelTypeClickListener;
 import com.berries.dashboard.handlers.ResourcesHandler;
 import com.berries.dashboard.model.Wheel;
@@ -69,6 +70,16 @@ public class WheelTypesBinder implements SimpleCursorAdapter.ViewBinder
 				listOfItems.add(column, new WheelItem(itemName, colorList[column]));
 			}
 			Wheel wheel = new Wheel(id, wheelName, listOfItems);
+			if ( cursor.getColumnCount() > Contract.COLUMN_IDX_LATEST_VALUES ){
+				// loaded from the summary view, the saved values summary comes along with the type
+				int[] lastSavedValues = null;
+				if ( !cursor.isNull(Contract.COLUMN_IDX_LATEST_VALUES) ){
+					lastSavedValues = new int[numOfItemsInWheel];
+					PackedValuesCodec.unpack(cursor.getLong(Contract.COLUMN_IDX_LATEST_VALUES), lastSavedValues, numOfItemsInWheel);
+				}
+				wheel.setSavedValuesSummary(cursor.getInt(Contract.COLUMN_IDX_SNAPSHOT_COUNT), 
+						cursor.getLong(Contract.COLUMN_IDX_LATEST_DATE), lastSavedValues);
+			}
 
 			TextView label = (TextView)view;
 			label.setOnClickListener(mClickListener);
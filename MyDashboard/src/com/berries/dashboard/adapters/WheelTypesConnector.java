@@ -27,18 +27,24 @@ package com.berries.dashboard.adapters;
 import java.util.Calendar;
 
 import com.berries.dashboard.db.WheelContentProvider;
+import com.berries.dashboard.db.WheelWriteQueue;
 import com.berries.dashboard.db.tables.Contract;
 import com.berries.dashboard.model.Wheel;
 import com.berries.dashboard.model.WheelItem;
 import com.berries.dashboard.R;
 import com.berries.dashboard.event.WheelTypeClickListener;
+import com.berries.dashboard.loaders.PagedCursorLoader;
+import com.berries.dashboard.loaders.ProgressCursorLoader;
 
 import android.app.Activity;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.net.Uri;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.widget.SimpleCursorAdapter;
+import android.text.TextUtils;
 import android.widget.Toast;
 
 /**
@@ -47,6 +53,9 @@ import android.widget.Toast;
  */
 public class WheelTypesConnector  {
 
+	// coalesce key prefix of queued wheel type edits
+	private static final String SAVE_TYPE_KEY = "type/";
+
 	/**
 	 * Generates a SimpleCursorAdapter that will map WheelTypesTable row structure to grid views
 	 * @param context
@@ -65,34 +74,25 @@ public class WheelTypesConnector  {
 
 
 	/**
-	 * Delete this type of wheel both from WheelTypesTable & WheelValuesTable
+	 * Delete this type of wheel both from WheelTypesTable & WheelValuesTable. 
+	 * The provider removes the type and all of its saved values in a single transaction.
 	 * @param context
 	 * @param wheelTypeId
 	 * @return int number of rows deleted from WheelTypesTable
 	 */
 	public static int deleteWheelType(Context context, int wheelTypeId){
-		
-		// first let's delete all rows in WheelValuesTable that reference this wheel type id		
-		String where = Contract.COLUMN_TYPE_ID + " = ?";
-		String [] selectionArgs = {String.valueOf(wheelTypeId)};		
-		int result = context.getContentResolver().delete(WheelContentProvider.CONTENT_PROGRESS_SINGLE_URI, where, selectionArgs);
-		
-		if ( result >= 0 ){
-			// now that all wheel values for this wheel type have been deleted, we can safely delete row from WheelTypesTable
-			where = Contract.COLUMN_ID + " = ?";
-			result = context.getContentResolver().delete(WheelContentProvider.CONTENT_WHEEL_TYPES_SINGLE_URI, where, selectionArgs);
-		}
-		
-		return result;
+		Uri uri = ContentUris.withAppendedId(WheelContentProvider.CONTENT_WHEEL_TYPES_SINGLE_URI, wheelTypeId);
+		return context.getContentResolver().delete(uri, null, null);
 	}
 	
 	/**
-	 * Save this wheel type in the WheelTypes table
+	 * Queue this wheel type to be saved in the WheelTypes table, returns without waiting for the write.
+	 * Editing the same wheel type again before the previous edit was written replaces it.
 	 * @param context
 	 * @param wheel the Wheel object containing the title & item strings to save
 	 * @param insertNew true if we are inserting a new row, false if just updating
 	 */
-	public static void saveWheelType(Context context, Wheel wheel, boolean insertNew) {
+	public static void saveWheelType(Context context, Wheel wheel, final boolean insertNew) {
 		// save the edited/new wheel in the wheel types table
 		String title = wheel.getTitle();
 		ContentValues values = new ContentValues();
@@ -105,33 +105,86 @@ public class WheelTypesConnector  {
 		Calendar cal = Calendar.getInstance();
 		values.put(Contract.COLUMN_DATE, cal.getTimeInMillis());
 		
+		final Context appContext = context.getApplicationContext();
+		WheelWriteQueue.Callback callback = new WheelWriteQueue.Callback() {
+			@Override
+			public void onWriteComplete(ContentProviderResult result) {
+				if (result == null) {
+					Toast.makeText(appContext, "Failed to save wheel", Toast.LENGTH_LONG).show();
+				} else if (insertNew) {
+					Toast.makeText(appContext, "New Wheel Saved " + result.uri, Toast.LENGTH_LONG).show();
+				} else {
+					Toast.makeText(appContext, "Updated, result: " + result.count, Toast.LENGTH_LONG).show();
+				}
+			}
+		};
+		WheelWriteQueue queue = WheelWriteQueue.getInstance(context);
 		if (insertNew){
 			// add new wheel -> insert new row into table
-			Uri uriresult = context.getContentResolver().insert(WheelContentProvider.CONTENT_WHEEL_TYPES_SINGLE_URI, values);
-			Toast.makeText(context, "New Wheel Saved " + uriresult.toString(), Toast.LENGTH_LONG).show();
+			ContentProviderOperation operation = ContentProviderOperation
+					.newInsert(WheelContentProvider.CONTENT_WHEEL_TYPES_SINGLE_URI).withValues(values).build();
+			queue.enqueue(operation, null, callback);
 		}
 		else {
 			// edit wheel -> update existing row
 			String where = Contract.COLUMN_ID + " = ?";
 			String [] selectionArgs = {String.valueOf(wheel.getTypeId())}; 
-			int result = context.getContentResolver().update(WheelContentProvider.CONTENT_WHEEL_TYPES_SINGLE_URI, values, where, selectionArgs);
-			Toast.makeText(context, "Updated, result: "+result, Toast.LENGTH_LONG).show();			
+			ContentProviderOperation operation = ContentProviderOperation
+					.newUpdate(WheelContentProvider.CONTENT_WHEEL_TYPES_SINGLE_URI).withValues(values)
+					.withSelection(where, selectionArgs).build();
+			queue.enqueue(operation, SAVE_TYPE_KEY + wheel.getTypeId(), callback);
 		}
 	}
 	
 
 	/**
-	 * Constructs and returns a CursorLoader for the given wheel. The loader is responsible for retrieving all wheels of the same type as the type of the wheel passed. 
+	 * Constructs and returns a loader for the given wheel. The loader is responsible for retrieving all wheels of the same type as the type of the wheel passed,
+	 * newest first, one page at a time (see {@link PagedCursorLoader#loadMore()}). New saves are added before the rows loaded, 
+	 * see {@link ProgressCursorLoader}. 
 	 * @param context
 	 * @param wheel
 	 * @return
 	 */
-	public static CursorLoader getQueryCursorLoaderForWheelType(Context context, Wheel wheel) {
-		Uri uri = WheelContentProvider.CONTENT_PROGRESS_URI;
-		String selection = Contract.COLUMN_TYPE_ID + " = ?";
-		String [] selectionArgs = { String.valueOf(wheel.getTypeId())  };
-		CursorLoader cursorLoader = new CursorLoader(context, uri, null, selection, selectionArgs, null);
-		return cursorLoader;
+	public static PagedCursorLoader getQueryCursorLoaderForWheelType(Context context, Wheel wheel) {
+		return new ProgressCursorLoader(context, wheel.getTypeId());
+	}
+
+	/**
+	 * Constructs and returns a loader retrieving the wheels of the same type as the wheel passed that were saved in the given time range. 
+	 * Only the rows within the range are read.
+	 * @param context
+	 * @param wheel
+	 * @param from time in milliseconds of the oldest wheel to load
+	 * @param to time in milliseconds, only wheels saved before it are loaded
+	 * @return
+	 */
+	public static PagedCursorLoader getQueryCursorLoaderForWheelType(Context context, Wheel wheel, long from, long to) {
+		Uri uri = WheelContentProvider.getProgressRangeUri(wheel.getTypeId(), from, to);
+		return new PagedCursorLoader(context, uri, null, null, null);
+	}
+
+	/**
+	 * Constructs and returns a loader retrieving all wheel types together with their saved values summary, 
+	 * one page at a time (see {@link PagedCursorLoader#loadMore()}).
+	 * @param context
+	 * @return
+	 */
+	public static PagedCursorLoader getWheelTypesLoader(Context context) {
+		return new PagedCursorLoader(context, WheelContentProvider.CONTENT_WHEEL_SUMMARY_URI, null, null, null);
+	}
+
+	/**
+	 * Constructs and returns a loader retrieving the wheel types whose title or item names have words starting with 
+	 * the words of the text, together with their saved values summary, one page at a time.
+	 * @param context
+	 * @param text as typed by the user, all wheel types are loaded if it is empty
+	 * @return
+	 */
+	public static PagedCursorLoader getWheelTypesLoader(Context context, String text) {
+		if (TextUtils.isEmpty(text)) {
+			return getWheelTypesLoader(context);
+		}
+		return new PagedCursorLoader(context, WheelContentProvider.getSearchUri(text), null, null, null);
 	}
 	
 	
@@ -35,6 +35,7 @@ import android.widget.TextView;
 
 import com.berries.dashboard.R;
 import com.berries.dashboard.db.tables.Contract;
+import com.berries.dashboard.db.tables.PackedValuesCodec;
 
 /**
  * Binds values from WheelValuesTable row to ListView
@@ -52,14 +53,26 @@ public class WheelValuesBinder implements SimpleCursorAdapter.ViewBinder {
 
 		if (view instanceof TextView) {
 
-			// set the wheel values as a tag to this list item
-			ValueHolder holder = new ValueHolder();
-			holder.values = new int[mWheelNumOfItems];
-			for (int column = 0; column < mWheelNumOfItems; column++) {
-				int val = cursor.getInt(Contract.COLUMN_IDX_VAL0 + column);
-				holder.values[column] = val;
+			// set the wheel values as a tag to this list item, recycled views keep their holder
+			Object tag = view.getTag();
+			ValueHolder holder;
+			if (tag instanceof ValueHolder) {
+				holder = (ValueHolder) tag;
+			} else {
+				holder = new ValueHolder();
+				holder.values = new int[mWheelNumOfItems];
 			}
-			holder.dateSaved = cursor.getLong(Contract.COLUMN_IDX_DATE);
+			long id = cursor.getLong(Contract.COLUMN_IDX_ID);
+			long packedValues = cursor.getLong(Contract.COLUMN_IDX_PACKED_VALUES);
+			long dateSaved = cursor.getLong(Contract.COLUMN_IDX_DATE);
+			if (holder == tag && holder.id == id && holder.packedValues == packedValues && holder.dateSaved == dateSaved) {
+				// the row shown already, e.g. a visible row when new saves are added to the list
+				return true;
+			}
+			holder.id = id;
+			holder.packedValues = packedValues;
+			PackedValuesCodec.unpack(packedValues, holder.values, mWheelNumOfItems);
+			holder.dateSaved = dateSaved;
 			TextView listItemView = (TextView) view;
 			listItemView.setTag(holder);
 
@@ -91,6 +104,8 @@ public class WheelValuesBinder implements SimpleCursorAdapter.ViewBinder {
 	public class ValueHolder {
 		public int[] values;
 		public long dateSaved;
+		long id = -1;
+		long packedValues;
 	}
 
 }
@@ -25,17 +25,16 @@ package com.berries.dashboard.adapters;
 
 import java.util.Calendar;
 
-import android.content.ContentValues;
 import android.content.Context;
-import android.database.Cursor;
-import android.net.Uri;
 import android.support.v4.widget.SimpleCursorAdapter;
 
 import com.berries.dashboard.R;
-import com.berries.dashboard.db.WheelContentProvider;
 import com.berries.dashboard.db.tables.Contract;
+import com.berries.dashboard.db.tables.PackedValuesCodec;
 import com.berries.dashboard.model.Wheel;
-import com.berries.dashboard.model.WheelItem;
+import com.berries.dashboard.storage.JournalSnapshotStorage;
+import com.berries.dashboard.storage.SQLiteSnapshotStorage;
+import com.berries.dashboard.storage.SnapshotStorage;
 
 /**
  * This class contains methods that connect between the WheelValues table to
@@ -44,6 +43,9 @@ import com.berries.dashboard.model.WheelItem;
  */
 public class WheelValuesConnector {
 
+	// where saved values go, the WHEEL_PROGRESS table unless changed with setSnapshotStorage
+	private static SnapshotStorage sStorage;
+
 	public static SimpleCursorAdapter getAdapter(Context context,
 			int wheelNumOfItems) {
 		String[] from = { Contract.COLUMN_DATE };
@@ -54,38 +56,36 @@ public class WheelValuesConnector {
 		return adapter;
 	}
 
-	public static void saveWheelValues(Context context, Wheel wheel) {
-		// save the wheel values to the progress table
-		ContentValues values = new ContentValues();
-		values.put(Contract.COLUMN_TYPE_ID, wheel.getTypeId());
-		for (int i = 0; i < wheel.getNumOfItems(); i++) {
-			WheelItem item = wheel.getItemAt(i);
-			values.put(Contract.COLUMN_VALUE + i, item.getValue());
-		}
-		Calendar cal = Calendar.getInstance();
-		values.put(Contract.COLUMN_DATE, cal.getTimeInMillis());
-		context.getContentResolver().insert(
-				WheelContentProvider.CONTENT_PROGRESS_SINGLE_URI, values);
+	/**
+	 * Save the current wheel values to the snapshot storage, returns without waiting for the write.
+	 * @param context
+	 * @param wheel
+	 * @param onComplete run on the main thread once the values were saved, may be null
+	 */
+	public static void saveWheelValues(Context context, Wheel wheel, Runnable onComplete) {
+		long date = Calendar.getInstance().getTimeInMillis();
+		getSnapshotStorage(context).append(wheel.getTypeId(), date, PackedValuesCodec.pack(wheel), onComplete);
+		// keep the summary the wheel was loaded with up to date
+		wheel.addSavedValues(date);
 	}
 
-	public static void setWheelValuesToLastSaved(Context context, Wheel wheel) {
-		Uri uri = WheelContentProvider.CONTENT_PROGRESS_SINGLE_URI;
-		String selection = Contract.COLUMN_TYPE_ID + "= ? ";
-		String[] selectionArgs = { String.valueOf(wheel.getTypeId()) };
-		String sortOrder = Contract.COLUMN_DATE + " DESC";
-		Cursor cursor = context.getContentResolver().query(uri, null,
-				selection, selectionArgs, sortOrder);
-		cursor.moveToFirst();
-		if (cursor != null && cursor.getCount() == 1) {
-			int numOfItems = wheel.getNumOfItems();
-			for (int column = 0; column < numOfItems; column++) {
-				int val = cursor.getInt(Contract.COLUMN_IDX_VAL0 + column);
-				wheel.getItemAt(column).setValue(val);
-			}
-			long timestamp = cursor.getLong(Contract.COLUMN_IDX_DATE);
-			wheel.setTimeSaved(timestamp);
+	/**
+	 * @param context
+	 * @return SnapshotStorage the storage saved values are written to
+	 */
+	public static synchronized SnapshotStorage getSnapshotStorage(Context context) {
+		if (sStorage == null) {
+			sStorage = new SQLiteSnapshotStorage(context);
 		}
-		cursor.close();
+		return sStorage;
+	}
+
+	/**
+	 * Replace the storage saved values are written to, e.g. with a {@link JournalSnapshotStorage}
+	 * @param storage null to go back to the WHEEL_PROGRESS table
+	 */
+	public static synchronized void setSnapshotStorage(SnapshotStorage storage) {
+		sStorage = storage;
 	}
 
 	// don't want anyone to create an object of this class
@@ -0,0 +1,133 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+package com.berries.dashboard.backup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+
+import com.berries.dashboard.db.WheelContentProvider;
+
+import android.app.backup.BackupAgent;
+import android.app.backup.BackupDataInput;
+import android.app.backup.BackupDataOutput;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+/**
+ * Backs up the wheel types and saved wheels in the compact backup format of WheelContentProvider 
+ * instead of the database file, which would also carry its indexes, rollups and free pages. 
+ * The backup is only sent when it changed since the last one, the state holds its checksum.
+ */
+public class WheelBackupAgent extends BackupAgent {
+
+	private static final String TAG = WheelBackupAgent.class.getSimpleName();
+	private static final String DASHBOARD_KEY = "dashboard";
+	private static final int BUFFER_SIZE = 8192;
+
+	@Override
+	public void onBackup(ParcelFileDescriptor oldState, BackupDataOutput data, ParcelFileDescriptor newState) throws IOException {
+		InputStream input = getContentResolver().openInputStream(WheelContentProvider.CONTENT_BACKUP_URI);
+		ByteArrayOutputStream backup = new ByteArrayOutputStream();
+		try {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int read;
+			while ((read = input.read(buffer)) != -1) {
+				backup.write(buffer, 0, read);
+			}
+		} finally {
+			input.close();
+		}
+		byte[] bytes = backup.toByteArray();
+		CRC32 checksum = new CRC32();
+		checksum.update(bytes);
+		if (checksum.getValue() != readState(oldState)) {
+			data.writeEntityHeader(DASHBOARD_KEY, bytes.length);
+			data.writeEntityData(bytes, bytes.length);
+			Log.i(TAG, "Backed up " + bytes.length + " bytes");
+		}
+		writeState(newState, checksum.getValue());
+	}
+
+	@Override
+	public void onRestore(BackupDataInput data, int appVersionCode, ParcelFileDescriptor newState) throws IOException {
+		while (data.readNextHeader()) {
+			if (!DASHBOARD_KEY.equals(data.getKey())) {
+				data.skipEntityData();
+				continue;
+			}
+			byte[] bytes = new byte[data.getDataSize()];
+			data.readEntityData(bytes, 0, bytes.length);
+			// the provider reads the backup from a uri
+			File file = new File(getCacheDir(), DASHBOARD_KEY + System.nanoTime());
+			try {
+				FileOutputStream output = new FileOutputStream(file);
+				try {
+					output.write(bytes);
+				} finally {
+					output.close();
+				}
+				ContentValues values = new ContentValues();
+				values.put(WheelContentProvider.BACKUP_SOURCE, Uri.fromFile(file).toString());
+				getContentResolver().update(WheelContentProvider.CONTENT_BACKUP_URI, values, null, null);
+			} catch (IllegalArgumentException e) {
+				// the database is left as it was
+				Log.e(TAG, "Failed to restore backup", e);
+			} finally {
+				file.delete();
+			}
+			CRC32 checksum = new CRC32();
+			checksum.update(bytes);
+			writeState(newState, checksum.getValue());
+		}
+	}
+
+	// @return the checksum of the last backup, -1 if there is none
+	private static long readState(ParcelFileDescriptor state) {
+		if (state == null) {
+			return -1;
+		}
+		DataInputStream input = new DataInputStream(new FileInputStream(state.getFileDescriptor()));
+		try {
+			return input.readLong();
+		} catch (IOException e) {
+			// first backup
+			return -1;
+		}
+	}
+
+	private static void writeState(ParcelFileDescriptor state, long checksum) throws IOException {
+		DataOutputStream output = new DataOutputStream(new FileOutputStream(state.getFileDescriptor()));
+		output.writeLong(checksum);
+		output.flush();
+	}
+}
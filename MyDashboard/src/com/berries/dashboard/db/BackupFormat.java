@@ -0,0 +1,108 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package com.berries.dashboard.db;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The binary backup of the dashboard database, written by {@link BackupWriter} and read by {@link BackupReader}.
+ * <p>
+ * The file starts with the 4 bytes of {@link #MAGIC} and a version byte, everything after them is deflate-compressed: 
+ * the number of wheel types followed by each type (_id, title, count, item0..item7, date), 
+ * then blocks of up to {@link #BLOCK_SIZE} saved wheels of one type, each block being its typeId, 
+ * its number of saved wheels and for every saved wheel the time since the previous one of the same type 
+ * and the packed values (see com.berries.dashboard.db.tables.PackedValuesCodec). Since version 2 every saved wheel 
+ * is followed by its repeatCount and the time from its date to its endDate, 0 for a single save (see com.berries.dashboard.db.HistoryCompactor). 
+ * A typeId of 0 ends the blocks and is followed by the total number of saved wheels, so a truncated file is detected.
+ * </p>
+ * Numbers are written as unsigned varints, 7 bits per byte lowest first. Strings are their UTF-8 length + 1 
+ * followed by the bytes, a length of 0 stands for null.
+ */
+final class BackupFormat {
+
+	static final byte[] MAGIC = { 'W', 'H', 'L', 'B' };
+	static final int VERSION = 2;
+	/** Oldest version that can still be restored, without repeatCount & endDate */
+	static final int VERSION_SINGLE_SAVES = 1;
+	/** Max saved wheels per block, the writer holds one block in memory */
+	static final int BLOCK_SIZE = 1024;
+	static final int END_OF_BLOCKS = 0;
+	private static final String CHARSET = "UTF-8";
+
+	private BackupFormat() {
+	}
+
+	static void writeVarLong(DataOutput output, long value) throws IOException {
+		if (value < 0) {
+			throw new IOException("Cannot write negative number " + value);
+		}
+		while ((value & ~0x7FL) != 0) {
+			output.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		output.writeByte((int) value);
+	}
+
+	static long readVarLong(DataInput input) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = input.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed number in backup");
+	}
+
+	static int readVarInt(DataInput input) throws IOException {
+		long value = readVarLong(input);
+		if (value > Integer.MAX_VALUE) {
+			throw new IOException("Number out of range in backup " + value);
+		}
+		return (int) value;
+	}
+
+	static void writeString(DataOutput output, String value) throws IOException {
+		if (value == null) {
+			writeVarLong(output, 0);
+			return;
+		}
+		byte[] bytes = value.getBytes(CHARSET);
+		writeVarLong(output, bytes.length + 1);
+		output.write(bytes);
+	}
+
+	static String readString(DataInput input) throws IOException {
+		int length = readVarInt(input);
+		if (length == 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length - 1];
+		input.readFully(bytes);
+		return new String(bytes, CHARSET);
+	}
+}
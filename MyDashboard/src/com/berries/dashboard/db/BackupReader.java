@@ -0,0 +1,166 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package com.berries.dashboard.db;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.InflaterInputStream;
+
+import android.content.ContentValues;
+
+import com.berries.dashboard.db.tables.Contract;
+
+/**
+ * Reads a backup in the {@link BackupFormat} one wheel type and one saved wheel at a time: 
+ * {@link #readHeader()} first, then {@link #readType(ContentValues)} until it returns false, 
+ * then {@link #nextSnapshot()} until it returns false.
+ */
+class BackupReader {
+
+	private final InputStream mInput;
+	private DataInputStream mData;
+	private int mTypesLeft;
+	private int mBlockLeft;
+	private int mTypeId;
+	private long mDate;
+	private long mPackedValues;
+	private int mRepeatCount;
+	private Long mEndDate;
+	private int mVersion;
+	private long mSnapshotsRead;
+
+	BackupReader(InputStream input) {
+		mInput = input;
+	}
+
+	/**
+	 * Checks the magic and version, call before changing anything so that a file that is not a backup is rejected right away
+	 * @throws IOException if the stream is not a backup this version can read
+	 */
+	void readHeader() throws IOException {
+		byte[] magic = new byte[BackupFormat.MAGIC.length];
+		DataInputStream header = new DataInputStream(mInput);
+		header.readFully(magic);
+		for (int i = 0; i < magic.length; i++) {
+			if (magic[i] != BackupFormat.MAGIC[i]) {
+				throw new IOException("Not a dashboard backup");
+			}
+		}
+		mVersion = header.readUnsignedByte();
+		if (mVersion < BackupFormat.VERSION_SINGLE_SAVES || mVersion > BackupFormat.VERSION) {
+			throw new IOException("Unsupported backup version " + mVersion);
+		}
+		mData = new DataInputStream(new BufferedInputStream(new InflaterInputStream(mInput)));
+		mTypesLeft = BackupFormat.readVarInt(mData);
+	}
+
+	/**
+	 * @param values cleared and filled with the columns of the next WHEEL_TYPES row
+	 * @return false once all wheel types were read
+	 */
+	boolean readType(ContentValues values) throws IOException {
+		if (mTypesLeft == 0) {
+			return false;
+		}
+		mTypesLeft--;
+		values.clear();
+		values.put(Contract.COLUMN_ID, BackupFormat.readVarInt(mData));
+		values.put(Contract.COLUMN_TITLE, BackupFormat.readString(mData));
+		values.put(Contract.COLUMN_COUNT, BackupFormat.readVarInt(mData));
+		for (int item = 0; item < Contract.MAX_ITEMS_IN_WHEEL; item++) {
+			values.put(Contract.COLUMN_ITEM + item, BackupFormat.readString(mData));
+		}
+		values.put(Contract.COLUMN_DATE, BackupFormat.readVarLong(mData));
+		return true;
+	}
+
+	/**
+	 * Moves to the next saved wheel, read it with {@link #getTypeId()}, {@link #getDate()}, {@link #getPackedValues()}, 
+	 * {@link #getRepeatCount()} and {@link #getEndDate()}
+	 * @return false after the last saved wheel
+	 * @throws IOException if the backup is truncated
+	 */
+	boolean nextSnapshot() throws IOException {
+		if (mTypesLeft != 0) {
+			throw new IllegalStateException("Wheel types must be read first");
+		}
+		while (mBlockLeft == 0) {
+			int typeId = BackupFormat.readVarInt(mData);
+			if (typeId == BackupFormat.END_OF_BLOCKS) {
+				long total = BackupFormat.readVarLong(mData);
+				if (total != mSnapshotsRead) {
+					throw new IOException("Backup holds " + mSnapshotsRead + " saved wheels, expected " + total);
+				}
+				return false;
+			}
+			if (typeId != mTypeId) {
+				// the dates of each wheel type are relative to the previous one of the same type
+				mTypeId = typeId;
+				mDate = 0;
+			}
+			mBlockLeft = BackupFormat.readVarInt(mData);
+		}
+		mBlockLeft--;
+		mDate += BackupFormat.readVarLong(mData);
+		mPackedValues = BackupFormat.readVarLong(mData);
+		mRepeatCount = 1;
+		mEndDate = null;
+		if (mVersion > BackupFormat.VERSION_SINGLE_SAVES) {
+			mRepeatCount = BackupFormat.readVarInt(mData);
+			long endDateDelta = BackupFormat.readVarLong(mData);
+			if (endDateDelta > 0) {
+				mEndDate = mDate + endDateDelta;
+			}
+		}
+		mSnapshotsRead++;
+		return true;
+	}
+
+	int getTypeId() {
+		return mTypeId;
+	}
+
+	long getDate() {
+		return mDate;
+	}
+
+	long getPackedValues() {
+		return mPackedValues;
+	}
+
+	int getRepeatCount() {
+		return mRepeatCount;
+	}
+
+	// null for a single save
+	Long getEndDate() {
+		return mEndDate;
+	}
+
+	long getSnapshotsRead() {
+		return mSnapshotsRead;
+	}
+}
@@ -0,0 +1,173 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package com.berries.dashboard.db;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import com.berries.dashboard.db.tables.Contract;
+import com.berries.dashboard.db.tables.WheelTypesTable;
+import com.berries.dashboard.db.tables.WheelValuesTable;
+
+/**
+ * Writes the wheel types and saved wheels to a stream in the {@link BackupFormat}. 
+ * Saved wheels are read one block at a time per wheel type through the (typeId, date) index, 
+ * so memory use does not grow with the history.
+ */
+public class BackupWriter implements Runnable {
+
+	private static final String TAG = BackupWriter.class.getSimpleName();
+	private static final String BLOCK_SELECTION = Contract.COLUMN_TYPE_ID + " = ? and (" + Contract.COLUMN_DATE + " > ? or ("
+			+ Contract.COLUMN_DATE + " = ? and " + Contract.COLUMN_ID + " > ?))";
+	private static final String BLOCK_ORDER = Contract.COLUMN_DATE + " ASC, " + Contract.COLUMN_ID + " ASC";
+	private static final String[] BLOCK_PROJECTION = { Contract.COLUMN_ID, Contract.COLUMN_DATE, Contract.COLUMN_PACKED_VALUES,
+			Contract.COLUMN_REPEAT_COUNT, Contract.COLUMN_END_DATE };
+
+	private final WheelDBManager mDatabase;
+	private final OutputStream mOutput;
+
+	/**
+	 * @param database
+	 * @param output closed once the backup is written
+	 */
+	public BackupWriter(WheelDBManager database, OutputStream output) {
+		mDatabase = database;
+		mOutput = output;
+	}
+
+	@Override
+	public void run() {
+		try {
+			write();
+		} catch (IOException e) {
+			// the reading side closed the pipe
+			Log.w(TAG, "Backup stopped", e);
+		}
+	}
+
+	/**
+	 * Writes the backup on the calling thread and closes the stream
+	 */
+	public void write() throws IOException {
+		try {
+			mOutput.write(BackupFormat.MAGIC);
+			mOutput.write(BackupFormat.VERSION);
+			DeflaterOutputStream deflater = new DeflaterOutputStream(mOutput, new Deflater(Deflater.BEST_COMPRESSION));
+			DataOutputStream output = new DataOutputStream(new BufferedOutputStream(deflater));
+			List<Integer> typeIds = writeTypes(output);
+			long total = 0;
+			for (Integer typeId : typeIds) {
+				total += writeBlocks(output, typeId);
+			}
+			BackupFormat.writeVarLong(output, BackupFormat.END_OF_BLOCKS);
+			BackupFormat.writeVarLong(output, total);
+			output.flush();
+			deflater.finish();
+		} finally {
+			mOutput.close();
+		}
+	}
+
+	// @return the ids of the wheel types written
+	private List<Integer> writeTypes(DataOutputStream output) throws IOException {
+		String[] projection = new String[3 + Contract.MAX_ITEMS_IN_WHEEL + 1];
+		int i = 0;
+		projection[i++] = Contract.COLUMN_ID;
+		projection[i++] = Contract.COLUMN_TITLE;
+		projection[i++] = Contract.COLUMN_COUNT;
+		for (int item = 0; item < Contract.MAX_ITEMS_IN_WHEEL; item++) {
+			projection[i++] = Contract.COLUMN_ITEM + item;
+		}
+		projection[i++] = Contract.COLUMN_DATE;
+
+		SQLiteDatabase db = mDatabase.getReaderDatabase();
+		Cursor cursor = db.query(WheelTypesTable.TABLE_NAME, projection, null, null, null, null, Contract.COLUMN_ID + " ASC");
+		List<Integer> typeIds = new ArrayList<Integer>(cursor.getCount());
+		try {
+			BackupFormat.writeVarLong(output, cursor.getCount());
+			while (cursor.moveToNext()) {
+				typeIds.add(cursor.getInt(0));
+				BackupFormat.writeVarLong(output, cursor.getInt(0));
+				BackupFormat.writeString(output, cursor.getString(1));
+				BackupFormat.writeVarLong(output, cursor.getInt(2));
+				for (int item = 0; item < Contract.MAX_ITEMS_IN_WHEEL; item++) {
+					BackupFormat.writeString(output, cursor.getString(3 + item));
+				}
+				BackupFormat.writeVarLong(output, cursor.getLong(3 + Contract.MAX_ITEMS_IN_WHEEL));
+			}
+		} finally {
+			cursor.close();
+		}
+		return typeIds;
+	}
+
+	// @return the number of saved wheels written for the wheel type
+	private long writeBlocks(DataOutputStream output, int typeId) throws IOException {
+		String type = String.valueOf(typeId);
+		long lastDate = Long.MIN_VALUE;
+		long lastId = 0;
+		long previousDate = 0;
+		long written = 0;
+		boolean more = true;
+		while (more) {
+			SQLiteDatabase db = mDatabase.getReaderDatabase();
+			Cursor cursor = db.query(WheelValuesTable.TABLE_NAME, BLOCK_PROJECTION, BLOCK_SELECTION,
+					new String[] { type, String.valueOf(lastDate), String.valueOf(lastDate), String.valueOf(lastId) }, null, null,
+					BLOCK_ORDER, String.valueOf(BackupFormat.BLOCK_SIZE));
+			try {
+				int count = cursor.getCount();
+				more = (count == BackupFormat.BLOCK_SIZE);
+				if (count == 0) {
+					break;
+				}
+				BackupFormat.writeVarLong(output, typeId);
+				BackupFormat.writeVarLong(output, count);
+				while (cursor.moveToNext()) {
+					lastId = cursor.getLong(0);
+					lastDate = cursor.getLong(1);
+					// ordered by date, so the time since the previous saved wheel is never negative
+					BackupFormat.writeVarLong(output, lastDate - previousDate);
+					BackupFormat.writeVarLong(output, cursor.getLong(2));
+					BackupFormat.writeVarLong(output, cursor.getInt(3));
+					BackupFormat.writeVarLong(output, cursor.isNull(4) ? 0 : cursor.getLong(4) - lastDate);
+					previousDate = lastDate;
+				}
+				written += count;
+			} finally {
+				cursor.close();
+			}
+		}
+		return written;
+	}
+}
@@ -0,0 +1,88 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package com.berries.dashboard.db;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import android.app.backup.BackupManager;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Collects the uris changed by the provider and notifies their observers once per short window, 
+ * so that a burst of writes makes every affected loader reload once instead of once per write. 
+ * The backup manager is told about the changes at the same time, see com.berries.dashboard.backup.WheelBackupAgent.
+ */
+class ChangeNotifier {
+
+	/** Time in milliseconds that changes are collected before observers are notified */
+	static final long DEBOUNCE_MS = 100;
+
+	private final ContentResolver mResolver;
+	private final BackupManager mBackupManager;
+	private final Handler mHandler = new Handler(Looper.getMainLooper());
+	private final Set<Uri> mPending = new LinkedHashSet<Uri>();
+	private boolean mScheduled;
+
+	ChangeNotifier(Context context) {
+		mResolver = context.getContentResolver();
+		mBackupManager = new BackupManager(context);
+	}
+
+	/**
+	 * Notify the observers of uri once the current window ends
+	 * @param uri
+	 */
+	void notifyChange(Uri uri) {
+		synchronized (mPending) {
+			mPending.add(uri);
+			if (!mScheduled) {
+				mScheduled = true;
+				mHandler.postDelayed(mFlush, DEBOUNCE_MS);
+			}
+		}
+	}
+
+	private final Runnable mFlush = new Runnable() {
+		@Override
+		public void run() {
+			List<Uri> changes;
+			synchronized (mPending) {
+				changes = new ArrayList<Uri>(mPending);
+				mPending.clear();
+				mScheduled = false;
+			}
+			for (Uri uri : changes) {
+				mResolver.notifyChange(uri, null);
+			}
+			mBackupManager.dataChanged();
+		}
+	};
+}
@@ -0,0 +1,259 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package com.berries.dashboard.db;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import com.berries.dashboard.db.tables.Contract;
+import com.berries.dashboard.db.tables.PackedValuesCodec;
+import com.berries.dashboard.db.tables.WheelTypesTable;
+import com.berries.dashboard.db.tables.WheelValuesTable;
+
+/**
+ * Writes WHEEL_TYPES or WHEEL_PROGRESS as CSV or JSON to a stream, reading the table in pages ordered by _id, 
+ * so memory use does not grow with the table and the first rows are written before the last ones are read.
+ * Saved wheels are written with their values unpacked into value0..value7, items a wheel does not have are left empty, 
+ * followed by repeatCount and endDate, which is empty for a single save.
+ */
+public class ExportWriter implements Runnable {
+
+	public static final String FORMAT_CSV = "csv";
+	public static final String FORMAT_JSON = "json";
+
+	private static final String TAG = ExportWriter.class.getSimpleName();
+	private static final int PAGE_SIZE = 500;
+	private static final String PAGE_SELECTION = Contract.COLUMN_ID + " > ?";
+	private static final String PAGE_ORDER = Contract.COLUMN_ID + " ASC";
+	private static final String CHARSET = "UTF-8";
+
+	private final WheelDBManager mDatabase;
+	private final boolean mTypes;
+	private final boolean mJson;
+	private final OutputStream mOutput;
+
+	/**
+	 * @param database
+	 * @param table WheelTypesTable.TABLE_NAME or WheelValuesTable.TABLE_NAME
+	 * @param format {@link #FORMAT_CSV} or {@link #FORMAT_JSON}
+	 * @param output closed once the export ends
+	 */
+	public ExportWriter(WheelDBManager database, String table, String format, OutputStream output) {
+		if (!WheelTypesTable.TABLE_NAME.equals(table) && !WheelValuesTable.TABLE_NAME.equals(table)) {
+			throw new IllegalArgumentException("Cannot export table " + table);
+		}
+		if (!FORMAT_CSV.equals(format) && !FORMAT_JSON.equals(format)) {
+			throw new IllegalArgumentException("Unsupported export format " + format);
+		}
+		mDatabase = database;
+		mTypes = WheelTypesTable.TABLE_NAME.equals(table);
+		mJson = FORMAT_JSON.equals(format);
+		mOutput = output;
+	}
+
+	@Override
+	public void run() {
+		Writer writer = null;
+		try {
+			writer = new BufferedWriter(new OutputStreamWriter(mOutput, CHARSET));
+			write(writer);
+			writer.flush();
+		} catch (IOException e) {
+			// the reading side closed the pipe
+			Log.w(TAG, "Export stopped", e);
+		} finally {
+			try {
+				mOutput.close();
+			} catch (IOException e) {
+				// nothing left to write
+			}
+		}
+	}
+
+	private void write(Writer writer) throws IOException {
+		String[] columns = getColumns();
+		String table = mTypes ? WheelTypesTable.TABLE_NAME : WheelValuesTable.TABLE_NAME;
+		String[] projection = mTypes ? columns : new String[] { Contract.COLUMN_ID, Contract.COLUMN_TYPE_ID, Contract.COLUMN_DATE,
+				Contract.COLUMN_PACKED_VALUES, Contract.COLUMN_REPEAT_COUNT, Contract.COLUMN_END_DATE };
+		String[] fields = new String[columns.length];
+		boolean[] quoted = new boolean[columns.length];
+
+		if (mJson) {
+			writer.write('[');
+		} else {
+			writeCsvRow(writer, columns);
+		}
+		long lastId = -1;
+		boolean first = true;
+		boolean more = true;
+		while (more) {
+			SQLiteDatabase db = mDatabase.getReaderDatabase();
+			Cursor cursor = db.query(table, projection, PAGE_SELECTION, new String[] { String.valueOf(lastId) }, null, null,
+					PAGE_ORDER, String.valueOf(PAGE_SIZE));
+			try {
+				more = (cursor.getCount() == PAGE_SIZE);
+				while (cursor.moveToNext()) {
+					lastId = cursor.getLong(0);
+					readRow(cursor, fields, quoted);
+					if (mJson) {
+						writer.write(first ? "\n" : ",\n");
+						writeJsonRow(writer, columns, fields, quoted);
+					} else {
+						writeCsvRow(writer, fields);
+					}
+					first = false;
+				}
+			} finally {
+				cursor.close();
+			}
+		}
+		if (mJson) {
+			writer.write("\n]\n");
+		}
+	}
+
+	private String[] getColumns() {
+		String[] columns;
+		int i = 0;
+		if (mTypes) {
+			columns = new String[4 + Contract.MAX_ITEMS_IN_WHEEL];
+			columns[i++] = Contract.COLUMN_ID;
+			columns[i++] = Contract.COLUMN_TITLE;
+			for (int item = 0; item < Contract.MAX_ITEMS_IN_WHEEL; item++) {
+				columns[i++] = Contract.COLUMN_ITEM + item;
+			}
+			columns[i++] = Contract.COLUMN_DATE;
+			columns[i++] = Contract.COLUMN_COUNT;
+		} else {
+			columns = new String[5 + Contract.MAX_ITEMS_IN_WHEEL];
+			columns[i++] = Contract.COLUMN_ID;
+			columns[i++] = Contract.COLUMN_TYPE_ID;
+			columns[i++] = Contract.COLUMN_DATE;
+			for (int item = 0; item < Contract.MAX_ITEMS_IN_WHEEL; item++) {
+				columns[i++] = Contract.COLUMN_VALUE + item;
+			}
+			columns[i++] = Contract.COLUMN_REPEAT_COUNT;
+			columns[i++] = Contract.COLUMN_END_DATE;
+		}
+		return columns;
+	}
+
+	// fields are null for missing values, quoted tells the text fields of JSON from the numbers
+	private void readRow(Cursor cursor, String[] fields, boolean[] quoted) {
+		if (mTypes) {
+			for (int i = 0; i < fields.length; i++) {
+				fields[i] = cursor.getString(i);
+				quoted[i] = (i > 0 && i <= Contract.MAX_ITEMS_IN_WHEEL + 1);
+			}
+			return;
+		}
+		fields[0] = cursor.getString(0);
+		fields[1] = cursor.getString(1);
+		fields[2] = cursor.getString(2);
+		long packedValues = cursor.getLong(3);
+		for (int item = 0; item < Contract.MAX_ITEMS_IN_WHEEL; item++) {
+			int value = PackedValuesCodec.valueAt(packedValues, item);
+			fields[3 + item] = (value == 0) ? null : String.valueOf(value);
+		}
+		fields[3 + Contract.MAX_ITEMS_IN_WHEEL] = cursor.getString(4);
+		fields[4 + Contract.MAX_ITEMS_IN_WHEEL] = cursor.getString(5);
+	}
+
+	private static void writeCsvRow(Writer writer, String[] fields) throws IOException {
+		for (int i = 0; i < fields.length; i++) {
+			if (i > 0) {
+				writer.write(',');
+			}
+			String field = fields[i];
+			if (field == null) {
+				continue;
+			}
+			if (field.indexOf(',') >= 0 || field.indexOf('"') >= 0 || field.indexOf('\n') >= 0 || field.indexOf('\r') >= 0) {
+				writer.write('"');
+				writer.write(field.replace("\"", "\"\""));
+				writer.write('"');
+			} else {
+				writer.write(field);
+			}
+		}
+		writer.write("\r\n");
+	}
+
+	private static void writeJsonRow(Writer writer, String[] columns, String[] fields, boolean[] quoted) throws IOException {
+		writer.write('{');
+		for (int i = 0; i < fields.length; i++) {
+			if (i > 0) {
+				writer.write(',');
+			}
+			writeJsonString(writer, columns[i]);
+			writer.write(':');
+			if (fields[i] == null) {
+				writer.write("null");
+			} else if (quoted[i]) {
+				writeJsonString(writer, fields[i]);
+			} else {
+				writer.write(fields[i]);
+			}
+		}
+		writer.write('}');
+	}
+
+	private static void writeJsonString(Writer writer, String value) throws IOException {
+		writer.write('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				writer.write("\\\"");
+				break;
+			case '\\':
+				writer.write("\\\\");
+				break;
+			case '\n':
+				writer.write("\\n");
+				break;
+			case '\r':
+				writer.write("\\r");
+				break;
+			case '\t':
+				writer.write("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					writer.write(String.format("\\u%04x", (int) c));
+				} else {
+					writer.write(c);
+				}
+			}
+		}
+		writer.write('"');
+	}
+}
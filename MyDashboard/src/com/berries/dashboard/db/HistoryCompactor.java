@@ -0,0 +1,249 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package com.berries.dashboard.db;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.berries.dashboard.db.tables.Contract;
+import com.berries.dashboard.db.tables.WheelRollupsTable;
+import com.berries.dashboard.db.tables.WheelValuesTable;
+
+/**
+ * Shrinks WHEEL_PROGRESS in two steps, each wheel type in its own transaction: 
+ * <ol>
+ * <li>saved wheels older than a given time are downsampled per day or week, the rows of a day or week holding the same values 
+ * are merged into the first of them</li>
+ * <li>runs of consecutive rows with the same values are collapsed into their first row</li>
+ * </ol>
+ * Only rows with equal values are ever merged, the kept row counts the saves it replaced in repeatCount and the time of the last one 
+ * in endDate, see WheelValuesTable. Counts, sums, averages, min and max over the saved wheels stay exact, a day or week with many 
+ * different values keeps one row for each of them. WHEEL_ROLLUPS is left as it is, its buckets were added up 
+ * from the single saves and stay exact until the type's buckets are rebuilt, which places a compacted row in the bucket of its date.
+ */
+public class HistoryCompactor {
+
+	private static final String TAG = HistoryCompactor.class.getSimpleName();
+
+	private static final String[] PROJECTION = { Contract.COLUMN_ID, Contract.COLUMN_DATE, Contract.COLUMN_END_DATE,
+			Contract.COLUMN_PACKED_VALUES, Contract.COLUMN_REPEAT_COUNT };
+	private static final String SORT_ORDER = Contract.COLUMN_DATE + " ASC, " + Contract.COLUMN_ID + " ASC";
+	private static final String UPDATE_SQL = "update " + WheelValuesTable.TABLE_NAME + " set " + Contract.COLUMN_PACKED_VALUES
+			+ " = ?, " + Contract.COLUMN_REPEAT_COUNT + " = ?, " + Contract.COLUMN_END_DATE + " = ? where " + Contract.COLUMN_ID + " = ?";
+	private static final String DELETE_SQL = "delete from " + WheelValuesTable.TABLE_NAME + " where " + Contract.COLUMN_ID + " = ?";
+
+	public static class Result {
+		/** WHEEL_PROGRESS rows deleted */
+		public int rowsRemoved;
+		/** size of the database pages freed by the deleted rows, the file itself only shrinks on VACUUM */
+		public long bytesReclaimed;
+	}
+
+	// a row that is kept, possibly standing for the rows merged into it
+	private static class Entry {
+		long id;
+		long date;
+		long endDate;
+		long packedValues;
+		int repeatCount;
+		boolean changed;
+	}
+
+	private final SQLiteDatabase mDatabase;
+	private final long mDownsampleBefore;
+	private final int mPeriod;
+	private final Calendar mCalendar = Calendar.getInstance();
+
+	// per wheel type state
+	private final List<Entry> mUpdates = new ArrayList<Entry>();
+	private final List<Long> mDeletes = new ArrayList<Long>();
+	private Entry mRun;
+	// the kept rows of the current day or week by their values, in the order of their dates
+	private final Map<Long, Entry> mBucketEntries = new LinkedHashMap<Long, Entry>();
+	private long mBucket;
+
+	/**
+	 * @param database
+	 * @param downsampleBefore time in milliseconds, rows saved before it are downsampled. 0 to only collapse identical rows
+	 * @param period WheelRollupsTable.PERIOD_DAY or WheelRollupsTable.PERIOD_WEEK
+	 */
+	public HistoryCompactor(SQLiteDatabase database, long downsampleBefore, int period) {
+		mDatabase = database;
+		mDownsampleBefore = downsampleBefore;
+		mPeriod = period;
+	}
+
+	/**
+	 * Compact the saved wheels of every wheel type
+	 * @param changedTypeIds filled with the types whose rows changed
+	 * @return Result
+	 */
+	public Result compact(Set<Integer> changedTypeIds) {
+		Result result = new Result();
+		long freePagesBefore = DatabaseUtils.longForQuery(mDatabase, "PRAGMA freelist_count", null);
+		Cursor cursor = mDatabase.query(true, WheelValuesTable.TABLE_NAME, new String[] { Contract.COLUMN_TYPE_ID }, null, null, null,
+				null, null, null);
+		List<Integer> typeIds = new ArrayList<Integer>();
+		try {
+			while (cursor.moveToNext()) {
+				typeIds.add(cursor.getInt(0));
+			}
+		} finally {
+			cursor.close();
+		}
+		for (int typeId : typeIds) {
+			int removed = compactType(typeId);
+			if (removed > 0) {
+				result.rowsRemoved += removed;
+				changedTypeIds.add(typeId);
+			}
+		}
+		long freePages = DatabaseUtils.longForQuery(mDatabase, "PRAGMA freelist_count", null) - freePagesBefore;
+		result.bytesReclaimed = Math.max(0, freePages) * mDatabase.getPageSize();
+		Log.i(TAG, "Removed " + result.rowsRemoved + " saved wheels, " + result.bytesReclaimed + " bytes freed");
+		return result;
+	}
+
+	/**
+	 * Compact the saved wheels of a single type in one transaction
+	 * @return int the number of rows deleted
+	 */
+	private int compactType(int typeId) {
+		mDatabase.beginTransaction();
+		try {
+			Cursor cursor = mDatabase.query(WheelValuesTable.TABLE_NAME, PROJECTION, Contract.COLUMN_TYPE_ID + " = ?",
+					new String[] { String.valueOf(typeId) }, null, null, SORT_ORDER);
+			try {
+				while (cursor.moveToNext()) {
+					Entry entry = new Entry();
+					entry.id = cursor.getLong(0);
+					entry.date = cursor.getLong(1);
+					entry.endDate = cursor.isNull(2) ? entry.date : cursor.getLong(2);
+					entry.packedValues = cursor.getLong(3);
+					entry.repeatCount = cursor.getInt(4);
+					if (entry.date < mDownsampleBefore) {
+						addToBucket(entry);
+					} else {
+						closeBucket();
+						addToRun(entry);
+					}
+				}
+				closeBucket();
+				closeRun();
+			} finally {
+				cursor.close();
+			}
+			int removed = mDeletes.size();
+			apply();
+			mDatabase.setTransactionSuccessful();
+			return removed;
+		} finally {
+			mUpdates.clear();
+			mDeletes.clear();
+			mRun = null;
+			mBucketEntries.clear();
+			mDatabase.endTransaction();
+		}
+	}
+
+	private void addToBucket(Entry entry) {
+		long bucket = WheelRollupsTable.getBucketStart(mCalendar, mPeriod, entry.date);
+		if (!mBucketEntries.isEmpty() && bucket != mBucket) {
+			closeBucket();
+		}
+		mBucket = bucket;
+		Entry kept = mBucketEntries.get(entry.packedValues);
+		if (kept == null) {
+			mBucketEntries.put(entry.packedValues, entry);
+			return;
+		}
+		kept.repeatCount += entry.repeatCount;
+		kept.endDate = Math.max(kept.endDate, entry.endDate);
+		kept.changed = true;
+		mDeletes.add(entry.id);
+	}
+
+	// the kept rows of the bucket go on to the runs, a run may continue from the previous bucket
+	private void closeBucket() {
+		for (Entry entry : mBucketEntries.values()) {
+			addToRun(entry);
+		}
+		mBucketEntries.clear();
+	}
+
+	private void addToRun(Entry entry) {
+		if (mRun != null && mRun.packedValues == entry.packedValues) {
+			mRun.repeatCount += entry.repeatCount;
+			mRun.endDate = Math.max(mRun.endDate, entry.endDate);
+			mRun.changed = true;
+			mDeletes.add(entry.id);
+			return;
+		}
+		closeRun();
+		mRun = entry;
+	}
+
+	private void closeRun() {
+		if (mRun != null && mRun.changed) {
+			mUpdates.add(mRun);
+		}
+		mRun = null;
+	}
+
+	private void apply() {
+		SQLiteStatement delete = mDatabase.compileStatement(DELETE_SQL);
+		try {
+			// the item rows go with them through ON DELETE CASCADE
+			for (long id : mDeletes) {
+				delete.bindLong(1, id);
+				delete.execute();
+			}
+		} finally {
+			delete.close();
+		}
+		SQLiteStatement update = mDatabase.compileStatement(UPDATE_SQL);
+		try {
+			for (Entry entry : mUpdates) {
+				update.bindLong(1, entry.packedValues);
+				update.bindLong(2, entry.repeatCount);
+				update.bindLong(3, entry.endDate);
+				update.bindLong(4, entry.id);
+				update.execute();
+			}
+		} finally {
+			update.close();
+		}
+	}
+
+}
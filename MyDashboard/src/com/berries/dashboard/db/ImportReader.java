@@ -0,0 +1,467 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package com.berries.dashboard.db;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import android.annotation.TargetApi;
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.RemoteException;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.Log;
+import android.util.SparseBooleanArray;
+
+import com.berries.dashboard.db.tables.Contract;
+import com.berries.dashboard.db.tables.PackedValuesCodec;
+
+/**
+ * Imports saved wheels from CSV or JSON in the layout written by {@link ExportWriter}: typeId, date, value0..value7 
+ * and the optional repeatCount and endDate of compacted rows, 
+ * any other column (e.g. the exported _id) is ignored. The source is parsed one row at a time and written in chunks, 
+ * each chunk in a single {@link WheelContentProvider#applyBatch(ArrayList)} together with the number of rows read so far, 
+ * kept in MIGRATIONS under a name made of the source uri. A killed process resumes after the last committed chunk, 
+ * and a source that was imported completely is not imported again.
+ * <p>
+ * Rows are rejected and counted if the wheel type does not exist, the date is not in milliseconds, 
+ * a value is not 1 to 10, the number of values is not Contract.MIN_ITEMS_IN_WHEEL to Contract.MAX_ITEMS_IN_WHEEL, 
+ * the repeatCount is below 1 or the endDate is before the date. 
+ * JSON sources need API 11.
+ * </p>
+ */
+public class ImportReader implements Runnable {
+
+	/** Called on the main thread once the import ended */
+	public interface Callback {
+		/**
+		 * @param result null if the source could not be read or a chunk failed to be written, 
+		 * the chunks written before are kept and the next import of the same source resumes after them
+		 */
+		void onImportComplete(Result result);
+	}
+
+	public static class Result {
+		/** rows written by this run */
+		public int imported;
+		/** rows this run skipped because they failed validation */
+		public int rejected;
+		/** true if the source was imported completely before and nothing was written */
+		public boolean alreadyImported;
+	}
+
+	private static final String TAG = ImportReader.class.getSimpleName();
+	private static final String MIGRATION_NAME_PREFIX = "import:";
+	// rows per transaction, a chunk is redone as a whole if the process dies while writing it
+	private static final int CHUNK_SIZE = 200;
+	private static final String CHARSET = "UTF-8";
+
+	private static final int FIELD_TYPE_ID = 0;
+	private static final int FIELD_DATE = 1;
+	private static final int FIELD_VALUE0 = 2;
+	private static final int FIELD_REPEAT_COUNT = FIELD_VALUE0 + Contract.MAX_ITEMS_IN_WHEEL;
+	private static final int FIELD_END_DATE = FIELD_REPEAT_COUNT + 1;
+	private static final int FIELD_COUNT = FIELD_END_DATE + 1;
+
+	private final ContentResolver mResolver;
+	private final Uri mSource;
+	private final boolean mJson;
+	private final Callback mCallback;
+	private final Uri mCheckpointUri;
+	private final int[] mValues = new int[Contract.MAX_ITEMS_IN_WHEEL];
+	private SparseBooleanArray mTypeIds;
+
+	/**
+	 * @param resolver
+	 * @param source uri of the CSV or JSON to read, opened with {@link ContentResolver#openInputStream(Uri)}
+	 * @param format {@link ExportWriter#FORMAT_CSV} or {@link ExportWriter#FORMAT_JSON}
+	 * @param callback may be null
+	 */
+	public ImportReader(ContentResolver resolver, Uri source, String format, Callback callback) {
+		if (!ExportWriter.FORMAT_CSV.equals(format) && !ExportWriter.FORMAT_JSON.equals(format)) {
+			throw new IllegalArgumentException("Unsupported import format " + format);
+		}
+		mResolver = resolver;
+		mSource = source;
+		mJson = ExportWriter.FORMAT_JSON.equals(format);
+		mCallback = callback;
+		mCheckpointUri = WheelContentProvider.getMigrationUri(MIGRATION_NAME_PREFIX + format + ":" + source);
+	}
+
+	@Override
+	public void run() {
+		Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+		Result result = null;
+		try {
+			result = read();
+		} catch (IOException e) {
+			Log.e(TAG, "Failed to read " + mSource, e);
+		} catch (RemoteException e) {
+			Log.e(TAG, "Failed to import " + mSource, e);
+		} catch (OperationApplicationException e) {
+			Log.e(TAG, "Failed to import " + mSource, e);
+		} catch (RuntimeException e) {
+			// e.g. a malformed JSON source, the chunks written so far are kept
+			Log.e(TAG, "Failed to import " + mSource, e);
+		}
+		if (mCallback != null) {
+			final Result importResult = result;
+			new Handler(Looper.getMainLooper()).post(new Runnable() {
+				@Override
+				public void run() {
+					mCallback.onImportComplete(importResult);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Imports the source on the calling thread, resuming after the last chunk written by an earlier run
+	 */
+	public Result read() throws IOException, RemoteException, OperationApplicationException {
+		if (mJson && Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+			throw new IOException("JSON imports need API 11");
+		}
+		Result result = new Result();
+		long[] checkpoint = getCheckpoint();
+		if (checkpoint == null) {
+			// the number of rows is not known until the end is reached
+			ContentValues values = new ContentValues();
+			values.put(Contract.COLUMN_END_ID, Long.MAX_VALUE);
+			mResolver.insert(mCheckpointUri, values);
+			checkpoint = new long[] { 0, Long.MAX_VALUE };
+		} else if (checkpoint[0] >= checkpoint[1]) {
+			result.alreadyImported = true;
+			return result;
+		}
+		long committedRows = checkpoint[0];
+		mTypeIds = loadTypeIds();
+
+		InputStream input = mResolver.openInputStream(mSource);
+		if (input == null) {
+			throw new IOException("Cannot open " + mSource);
+		}
+		Reader reader = new BufferedReader(new InputStreamReader(input, CHARSET));
+		try {
+			RowSource rows = mJson ? new JsonRows(reader) : new CsvRows(reader);
+			String[] fields = new String[FIELD_COUNT];
+			ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>(CHUNK_SIZE + 1);
+			int pendingRejected = 0;
+			long rowsRead = 0;
+			while (rows.next(fields)) {
+				rowsRead++;
+				if (rowsRead <= committedRows) {
+					// written by an earlier run
+					continue;
+				}
+				ContentProviderOperation insert = toInsert(fields);
+				if (insert == null) {
+					pendingRejected++;
+				} else {
+					operations.add(insert);
+				}
+				if (rowsRead - committedRows == CHUNK_SIZE) {
+					writeChunk(operations, rowsRead, false);
+					result.imported += operations.size();
+					result.rejected += pendingRejected;
+					operations.clear();
+					pendingRejected = 0;
+					committedRows = rowsRead;
+				}
+			}
+			writeChunk(operations, rowsRead, true);
+			result.imported += operations.size();
+			result.rejected += pendingRejected;
+		} finally {
+			reader.close();
+		}
+		Log.i(TAG, "Imported " + result.imported + " saved wheels from " + mSource + ", rejected " + result.rejected);
+		return result;
+	}
+
+	// writes the rows together with the position reached so both or neither are committed
+	private void writeChunk(ArrayList<ContentProviderOperation> operations, long rowsRead, boolean last)
+			throws RemoteException, OperationApplicationException {
+		ContentProviderOperation.Builder checkpoint = ContentProviderOperation.newUpdate(mCheckpointUri)
+				.withValue(Contract.COLUMN_LAST_ID, rowsRead);
+		if (last) {
+			checkpoint.withValue(Contract.COLUMN_END_ID, rowsRead);
+		}
+		operations.add(checkpoint.build());
+		mResolver.applyBatch(WheelContentProvider.AUTHORITY, operations);
+		operations.remove(operations.size() - 1);
+	}
+
+	/** @return long[] {rows committed, rows in the source or Long.MAX_VALUE} or null if the source was never imported */
+	private long[] getCheckpoint() {
+		Cursor cursor = mResolver.query(mCheckpointUri, null, null, null, null);
+		try {
+			if (cursor.moveToFirst()) {
+				return new long[] { cursor.getLong(0), cursor.getLong(1) };
+			}
+			return null;
+		} finally {
+			cursor.close();
+		}
+	}
+
+	private SparseBooleanArray loadTypeIds() {
+		SparseBooleanArray typeIds = new SparseBooleanArray();
+		Cursor cursor = mResolver.query(WheelContentProvider.CONTENT_WHEEL_TYPES_URI, new String[] { Contract.COLUMN_ID }, null,
+				null, null);
+		try {
+			while (cursor.moveToNext()) {
+				typeIds.put(cursor.getInt(0), true);
+			}
+		} finally {
+			cursor.close();
+		}
+		return typeIds;
+	}
+
+	/** @return ContentProviderOperation the insert of a valid row, null if the row is rejected */
+	private ContentProviderOperation toInsert(String[] fields) {
+		if (isEmpty(fields[FIELD_TYPE_ID]) || isEmpty(fields[FIELD_DATE])) {
+			return null;
+		}
+		try {
+			int typeId = Integer.parseInt(fields[FIELD_TYPE_ID].trim());
+			long date = Long.parseLong(fields[FIELD_DATE].trim());
+			if (!mTypeIds.get(typeId) || date < Contract.MIN_DATE_IN_MILLIS) {
+				return null;
+			}
+			// the values have to be contiguous, an empty one ends the wheel
+			int count = 0;
+			while (count < Contract.MAX_ITEMS_IN_WHEEL && !isEmpty(fields[FIELD_VALUE0 + count])) {
+				mValues[count] = Integer.parseInt(fields[FIELD_VALUE0 + count].trim());
+				count++;
+			}
+			for (int i = count; i < Contract.MAX_ITEMS_IN_WHEEL; i++) {
+				if (!isEmpty(fields[FIELD_VALUE0 + i])) {
+					return null;
+				}
+			}
+			if (count < Contract.MIN_ITEMS_IN_WHEEL) {
+				return null;
+			}
+			int repeatCount = isEmpty(fields[FIELD_REPEAT_COUNT]) ? 1 : Integer.parseInt(fields[FIELD_REPEAT_COUNT].trim());
+			Long endDate = isEmpty(fields[FIELD_END_DATE]) ? null : Long.valueOf(fields[FIELD_END_DATE].trim());
+			if (repeatCount < 1 || (endDate != null && endDate < date)) {
+				return null;
+			}
+			long packedValues = PackedValuesCodec.pack(mValues, count);
+			return ContentProviderOperation.newInsert(WheelContentProvider.CONTENT_PROGRESS_SINGLE_URI)
+					.withValue(Contract.COLUMN_TYPE_ID, typeId)
+					.withValue(Contract.COLUMN_DATE, date)
+					.withValue(Contract.COLUMN_PACKED_VALUES, packedValues)
+					.withValue(Contract.COLUMN_REPEAT_COUNT, repeatCount)
+					.withValue(Contract.COLUMN_END_DATE, endDate)
+					.build();
+		} catch (NumberFormatException e) {
+			return null;
+		} catch (IllegalArgumentException e) {
+			// a value out of range, see PackedValuesCodec.put
+			return null;
+		}
+	}
+
+	private static boolean isEmpty(String field) {
+		return field == null || field.trim().length() == 0;
+	}
+
+	// maps a column name to its field, -1 for the columns that are not imported
+	private static int getField(String column) {
+		if (Contract.COLUMN_TYPE_ID.equals(column)) {
+			return FIELD_TYPE_ID;
+		}
+		if (Contract.COLUMN_DATE.equals(column)) {
+			return FIELD_DATE;
+		}
+		for (int item = 0; item < Contract.MAX_ITEMS_IN_WHEEL; item++) {
+			if ((Contract.COLUMN_VALUE + item).equals(column)) {
+				return FIELD_VALUE0 + item;
+			}
+		}
+		if (Contract.COLUMN_REPEAT_COUNT.equals(column)) {
+			return FIELD_REPEAT_COUNT;
+		}
+		if (Contract.COLUMN_END_DATE.equals(column)) {
+			return FIELD_END_DATE;
+		}
+		return -1;
+	}
+
+	private interface RowSource {
+		/**
+		 * @param fields filled with the fields of the next row, null for the ones it does not have
+		 * @return false once there are no more rows
+		 */
+		boolean next(String[] fields) throws IOException;
+	}
+
+	/** RFC 4180 CSV, the first row holds the column names */
+	private static class CsvRows implements RowSource {
+
+		private final Reader mReader;
+		private final List<String> mRow = new ArrayList<String>(FIELD_COUNT + 1);
+		private final StringBuilder mField = new StringBuilder();
+		private int[] mColumnFields;
+		private boolean mSkipLineFeed;
+
+		CsvRows(Reader reader) {
+			mReader = reader;
+		}
+
+		@Override
+		public boolean next(String[] fields) throws IOException {
+			if (mColumnFields == null) {
+				if (!readRow()) {
+					return false;
+				}
+				mColumnFields = new int[mRow.size()];
+				for (int i = 0; i < mRow.size(); i++) {
+					mColumnFields[i] = getField(mRow.get(i).trim());
+				}
+			}
+			// blank lines are not rows
+			do {
+				if (!readRow()) {
+					return false;
+				}
+			} while (mRow.size() == 1 && mRow.get(0).length() == 0);
+			for (int i = 0; i < fields.length; i++) {
+				fields[i] = null;
+			}
+			for (int i = 0; i < mColumnFields.length && i < mRow.size(); i++) {
+				if (mColumnFields[i] >= 0) {
+					fields[mColumnFields[i]] = mRow.get(i);
+				}
+			}
+			return true;
+		}
+
+		// reads the fields of the next line into mRow, false at the end of the source
+		private boolean readRow() throws IOException {
+			mRow.clear();
+			mField.setLength(0);
+			boolean quoted = false;
+			boolean any = false;
+			while (true) {
+				int c = mReader.read();
+				if (mSkipLineFeed) {
+					mSkipLineFeed = false;
+					if (c == '\n') {
+						continue;
+					}
+				}
+				if (c == -1) {
+					if (!any) {
+						return false;
+					}
+					mRow.add(mField.toString());
+					return true;
+				}
+				any = true;
+				if (quoted) {
+					if (c == '"') {
+						mReader.mark(1);
+						if (mReader.read() == '"') {
+							mField.append('"');
+						} else {
+							mReader.reset();
+							quoted = false;
+						}
+					} else {
+						mField.append((char) c);
+					}
+				} else if (c == '"') {
+					quoted = true;
+				} else if (c == ',') {
+					mRow.add(mField.toString());
+					mField.setLength(0);
+				} else if (c == '\r' || c == '\n') {
+					mSkipLineFeed = (c == '\r');
+					mRow.add(mField.toString());
+					return true;
+				} else {
+					mField.append((char) c);
+				}
+			}
+		}
+	}
+
+	/** A JSON array of objects, the names of the object members are the column names */
+	@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+	private static class JsonRows implements RowSource {
+
+		private final JsonReader mReader;
+		private boolean mStarted;
+
+		JsonRows(Reader reader) {
+			mReader = new JsonReader(reader);
+		}
+
+		@Override
+		public boolean next(String[] fields) throws IOException {
+			if (!mStarted) {
+				mReader.beginArray();
+				mStarted = true;
+			}
+			if (!mReader.hasNext()) {
+				mReader.endArray();
+				return false;
+			}
+			for (int i = 0; i < fields.length; i++) {
+				fields[i] = null;
+			}
+			mReader.beginObject();
+			while (mReader.hasNext()) {
+				int field = getField(mReader.nextName());
+				JsonToken token = mReader.peek();
+				if (field < 0 || token == JsonToken.NULL || token == JsonToken.BEGIN_ARRAY || token == JsonToken.BEGIN_OBJECT) {
+					mReader.skipValue();
+				} else {
+					// numbers are read as they were written, nextString accepts numbers and booleans too
+					fields[field] = mReader.nextString();
+				}
+			}
+			mReader.endObject();
+			return true;
+		}
+	}
+}
@@ -0,0 +1,202 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package com.berries.dashboard.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import android.annotation.TargetApi;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.Build;
+import android.support.v4.util.LruCache;
+import android.text.TextUtils;
+
+/**
+ * Bounded LRU of materialized query results, so that a screen recreated on rotation reads its lists from memory instead of SQLite. 
+ * Results are kept per uri path and invalidated with the same uris the provider notifies its observers with: 
+ * a change to a path drops the results of that path, of the paths below it and of the paths above it. 
+ * Every invalidation moves the generation forward, a result read from SQLite before an invalidation is not cached, 
+ * since it may hold rows older than the change.
+ * Values are materialized using Cursor.getType, so results are only cached from API 11.
+ */
+class QueryCache {
+
+	/** true if this platform can cache results */
+	static final boolean ENABLED = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+
+	// size is counted in rows
+	private static final int MAX_CACHED_ROWS = 1000;
+	// larger results are returned without caching them
+	private static final int MAX_ROWS_PER_RESULT = 100;
+	private static final String KEY_SEPARATOR = "|";
+
+	private final LruCache<String, Result> mResults = new LruCache<String, Result>(MAX_CACHED_ROWS) {
+		@Override
+		protected int sizeOf(String key, Result result) {
+			// empty results still take an entry
+			return Math.max(1, result.rows.size());
+		}
+	};
+	private long mGeneration;
+
+	/**
+	 * @return String the cache key of a query, the query parameters of uri are sorted
+	 */
+	@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+	static String getKey(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+		StringBuilder key = new StringBuilder(uri.getPath());
+		List<String> names = new ArrayList<String>(uri.getQueryParameterNames());
+		Collections.sort(names);
+		for (String name : names) {
+			key.append(KEY_SEPARATOR).append(name).append('=').append(uri.getQueryParameter(name));
+		}
+		key.append(KEY_SEPARATOR).append(projection == null ? "*" : TextUtils.join(",", projection));
+		key.append(KEY_SEPARATOR).append(selection);
+		key.append(KEY_SEPARATOR).append(selectionArgs == null ? "" : Arrays.toString(selectionArgs));
+		key.append(KEY_SEPARATOR).append(sortOrder);
+		return key.toString();
+	}
+
+	/**
+	 * @return long the generation to pass to {@link #put(String, Uri, long, Cursor)}, read it before querying SQLite
+	 */
+	synchronized long getGeneration() {
+		return mGeneration;
+	}
+
+	/**
+	 * @param key see {@link #getKey(Uri, String[], String, String[], String)}
+	 * @return Cursor a new cursor over the cached rows, null if the result is not cached
+	 */
+	Cursor get(String key) {
+		Result result = mResults.get(key);
+		return (result == null) ? null : result.newCursor();
+	}
+
+	/**
+	 * Cache the rows of cursor unless the cache was invalidated since generation was read
+	 * @param key see {@link #getKey(Uri, String[], String, String[], String)}
+	 * @param uri the query uri
+	 * @param generation see {@link #getGeneration()}
+	 * @param cursor read to its end and closed when cached
+	 * @return Cursor the cursor to return to the caller in place of the given one
+	 */
+	@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+	Cursor put(String key, Uri uri, long generation, Cursor cursor) {
+		if (cursor == null || cursor.getCount() > MAX_ROWS_PER_RESULT) {
+			return cursor;
+		}
+		Result result = new Result(uri.getPath(), cursor.getColumnNames(), cursor.getCount());
+		int columnCount = result.columns.length;
+		cursor.moveToPosition(-1);
+		while (cursor.moveToNext()) {
+			Object[] row = new Object[columnCount];
+			for (int i = 0; i < columnCount; i++) {
+				row[i] = getValue(cursor, i);
+			}
+			result.rows.add(row);
+		}
+		cursor.close();
+		synchronized (this) {
+			if (generation == mGeneration) {
+				mResults.put(key, result);
+			}
+		}
+		return result.newCursor();
+	}
+
+	/**
+	 * Drop the results of uri's path and of the paths below and above it
+	 * @param uri a uri the provider notifies as changed
+	 */
+	void invalidate(Uri uri) {
+		String path = uri.getPath();
+		synchronized (this) {
+			mGeneration++;
+			for (Map.Entry<String, Result> entry : mResults.snapshot().entrySet()) {
+				if (isRelated(path, entry.getValue().path)) {
+					mResults.remove(entry.getKey());
+				}
+			}
+		}
+	}
+
+	int hitCount() {
+		return mResults.hitCount();
+	}
+
+	int missCount() {
+		return mResults.missCount();
+	}
+
+	int evictionCount() {
+		return mResults.evictionCount();
+	}
+
+	// true if one path is the other or one of its ancestors
+	private static boolean isRelated(String changedPath, String cachedPath) {
+		return changedPath.equals(cachedPath) || cachedPath.startsWith(changedPath + "/") || changedPath.startsWith(cachedPath + "/");
+	}
+
+	@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+	private static Object getValue(Cursor cursor, int column) {
+		switch (cursor.getType(column)) {
+		case Cursor.FIELD_TYPE_INTEGER:
+			return cursor.getLong(column);
+		case Cursor.FIELD_TYPE_FLOAT:
+			return cursor.getDouble(column);
+		case Cursor.FIELD_TYPE_STRING:
+			return cursor.getString(column);
+		case Cursor.FIELD_TYPE_BLOB:
+			return cursor.getBlob(column);
+		default:
+			return null;
+		}
+	}
+
+	private static class Result {
+		final String path;
+		final String[] columns;
+		final List<Object[]> rows;
+
+		Result(String path, String[] columns, int rowCount) {
+			this.path = path;
+			this.columns = columns;
+			this.rows = new ArrayList<Object[]>(rowCount);
+		}
+
+		Cursor newCursor() {
+			MatrixCursor cursor = new MatrixCursor(columns, rows.size());
+			for (Object[] row : rows) {
+				cursor.addRow(row);
+			}
+			return cursor;
+		}
+	}
+}
@@ -0,0 +1,146 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package com.berries.dashboard.db;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * Compiled statements of the provider writes, so that a write binds its values instead of building and parsing the SQL again. 
+ * The statements belong to the writable database they were compiled on and are dropped when it changes. 
+ * A compiled statement holds its bindings, so statements may only be used inside a write transaction, 
+ * which SQLiteDatabase grants to one thread at a time.
+ */
+class StatementCache {
+
+	// inserts and updates with different column sets each take an entry
+	private static final int MAX_STATEMENTS = 16;
+
+	private SQLiteDatabase mDatabase;
+	private final Map<String, SQLiteStatement> mStatements = new LinkedHashMap<String, SQLiteStatement>(MAX_STATEMENTS, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, SQLiteStatement> eldest) {
+			if (size() > MAX_STATEMENTS) {
+				eldest.getValue().close();
+				return true;
+			}
+			return false;
+		}
+	};
+
+	/**
+	 * @param database the writable database
+	 * @param sql
+	 * @return SQLiteStatement the statement compiled from sql, its bindings are cleared
+	 */
+	synchronized SQLiteStatement get(SQLiteDatabase database, String sql) {
+		if (database != mDatabase) {
+			close();
+			mDatabase = database;
+		}
+		SQLiteStatement statement = mStatements.get(sql);
+		if (statement == null) {
+			statement = database.compileStatement(sql);
+			mStatements.put(sql, statement);
+		} else {
+			statement.clearBindings();
+		}
+		return statement;
+	}
+
+	/**
+	 * @return SQLiteStatement an insert into table of the columns in values, with the values bound
+	 */
+	SQLiteStatement getInsert(SQLiteDatabase database, String table, ContentValues values) {
+		String[] columns = getSortedColumns(values);
+		StringBuilder sqlBuilder = new StringBuilder("insert into ");
+		sqlBuilder.append(table).append(" (");
+		for (int i = 0; i < columns.length; i++) {
+			sqlBuilder.append(i > 0 ? ", " : "").append(columns[i]);
+		}
+		sqlBuilder.append(") values (");
+		for (int i = 0; i < columns.length; i++) {
+			sqlBuilder.append(i > 0 ? ", ?" : "?");
+		}
+		sqlBuilder.append(")");
+		SQLiteStatement statement = get(database, sqlBuilder.toString());
+		bindValues(statement, columns, values);
+		return statement;
+	}
+
+	/**
+	 * @return SQLiteStatement an update of table setting the columns in values where whereClause matches, 
+	 * with the values and whereArgs bound
+	 */
+	SQLiteStatement getUpdate(SQLiteDatabase database, String table, ContentValues values, String whereClause, String[] whereArgs) {
+		String[] columns = getSortedColumns(values);
+		StringBuilder sqlBuilder = new StringBuilder("update ");
+		sqlBuilder.append(table).append(" set ");
+		for (int i = 0; i < columns.length; i++) {
+			sqlBuilder.append(i > 0 ? ", " : "").append(columns[i]).append(" = ?");
+		}
+		if (whereClause != null && whereClause.length() > 0) {
+			sqlBuilder.append(" where ").append(whereClause);
+		}
+		SQLiteStatement statement = get(database, sqlBuilder.toString());
+		bindValues(statement, columns, values);
+		for (int i = 0; whereArgs != null && i < whereArgs.length; i++) {
+			DatabaseUtils.bindObjectToProgram(statement, columns.length + i + 1, whereArgs[i]);
+		}
+		return statement;
+	}
+
+	synchronized void close() {
+		for (SQLiteStatement statement : mStatements.values()) {
+			statement.close();
+		}
+		mStatements.clear();
+		mDatabase = null;
+	}
+
+	// the order of ContentValues is not stable, the same columns must build the same sql
+	private static String[] getSortedColumns(ContentValues values) {
+		String[] columns = new String[values.size()];
+		int i = 0;
+		for (Map.Entry<String, Object> entry : values.valueSet()) {
+			columns[i++] = entry.getKey();
+		}
+		Arrays.sort(columns);
+		return columns;
+	}
+
+	private static void bindValues(SQLiteStatement statement, String[] columns, ContentValues values) {
+		for (int i = 0; i < columns.length; i++) {
+			DatabaseUtils.bindObjectToProgram(statement, i + 1, values.get(columns[i]));
+		}
+	}
+}
@@ -23,30 +23,106 @@ THE SOFTWARE.
  */
 package com.berries.dashboard.db;
 
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.annotation.TargetApi;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
 import android.text.TextUtils;
+import android.util.Log;
 
+import com.berries.dashboard.db.tables.ChangeLogTable;
 import com.berries.dashboard.db.tables.Contract;
+import com.berries.dashboard.db.tables.MigrationsTable;
+import com.berries.dashboard.db.tables.PackedValuesCodec;
+import com.berries.dashboard.db.tables.WheelItemValuesTable;
+import com.berries.dashboard.db.tables.WheelRollupsTable;
+import com.berries.dashboard.db.tables.WheelTypesSearchTable;
+import com.berries.dashboard.db.tables.WheelTypesSummaryView;
 import com.berries.dashboard.db.tables.WheelTypesTable;
 import com.berries.dashboard.db.tables.WheelValuesTable;
+import com.berries.dashboard.utils.StartupTiming;
 
 /**
  * Handles access to WheelTypesTable & WheelValuesTable
  */
 public class WheelContentProvider extends ContentProvider {
 
+	private static final String TAG = WheelContentProvider.class.getSimpleName();
+
+	// null for mydashboarddb
+	private final String mDatabaseName;
 	private WheelDBManager mDatabase;
+	// becomes true once all history has been copied into WHEEL_ITEM_VALUES
+	private volatile boolean mItemValuesReady;
+	// uris changed by the batch running on the current thread, notified once the batch commits
+	private final ThreadLocal<Set<Uri>> mBatchChanges = new ThreadLocal<Set<Uri>>();
+	// updates of the in-memory histories made by the batch running on the current thread, run once the batch commits
+	private final ThreadLocal<List<Runnable>> mBatchCommitActions = new ThreadLocal<List<Runnable>>();
+	// compiled insert & update statements of the writable database
+	private final StatementCache mStatements = new StatementCache();
+	// notifies the observers of changed uris, at most once per ChangeNotifier.DEBOUNCE_MS
+	private ChangeNotifier mChangeNotifier;
+	// results of the list queries, invalidated with the notified uris
+	private final QueryCache mQueryCache = new QueryCache();
 
 	private static final String SINGLE_RESULTS_LIMIT = "1";
-	private static final String MULTI_RESULTS_LIMIT = "50";
+	// SQLite allows 999 arguments per statement
+	private static final int MAX_SELECTION_ARGS = 500;
+	// history lists are paged newest first, with _id breaking ties between rows saved at the same time
+	private static final String PROGRESS_KEYSET_ORDER = Contract.COLUMN_DATE + " DESC, " + Contract.COLUMN_ID + " DESC";
+	private static final String PROGRESS_KEYSET_SELECTION = Contract.COLUMN_DATE + " <= ? and (" + Contract.COLUMN_DATE + " < ? or "
+			+ Contract.COLUMN_ID + " < ?)";
+	private static final String TYPES_KEYSET_ORDER = Contract.COLUMN_ID + " ASC";
+	private static final String TYPES_KEYSET_SELECTION = Contract.COLUMN_ID + " > ?";
+	private static final String PAGE_KEY_SEPARATOR = ",";
+
+	/** Query parameter limiting the number of rows returned by a list uri */
+	public static final String QUERY_PARAMETER_PAGE_SIZE = "pageSize";
+	/** Query parameter holding the key of the last row of the previous page, see {@link #getPageKey(Uri, Cursor)} */
+	public static final String QUERY_PARAMETER_AFTER = "after";
 	private static final String BASE_PATH = "wheelprogress";
 	private static final String WHEEL_TYPES_PATH = "wheeltypes";
+	private static final String ITEM_VALUES_PATH = "wheelitems";
+	private static final String ROLLUPS_PATH = "rollups";
+	private static final String TYPE_PATH = "type";
+	private static final String WHEEL_SUMMARY_PATH = "wheelsummary";
+	private static final String SEARCH_PATH = "search";
+	private static final String EXPORT_PATH = "export";
+	private static final String MIGRATIONS_PATH = "migrations";
+	private static final String BACKUP_PATH = "backup";
+	private static final String MAINTENANCE_PATH = "maintenance";
+	private static final String COMPACT_PATH = "compact";
+	private static final String CHANGES_PATH = "changes";
+	private static final String CONSUMERS_PATH = "consumers";
 
 	public static final Uri CONTENT_BASE_URI = Uri
 			.parse("content://com.berries.dashboard.wheelcontent/");
@@ -61,18 +137,106 @@ public class WheelContentProvider extends ContentProvider {
 	public static final Uri CONTENT_WHEEL_TYPES_URI = Uri
 			.parse("content://com.berries.dashboard.wheelcontent/"
 					+ WHEEL_TYPES_PATH + "/*");
+	public static final Uri CONTENT_ITEM_VALUES_URI = Uri
+			.parse("content://com.berries.dashboard.wheelcontent/"
+					+ ITEM_VALUES_PATH);
+	/** All wheel types with the number of saved wheels and the latest saved values, see {@link WheelTypesSummaryView} */
+	public static final Uri CONTENT_WHEEL_SUMMARY_URI = Uri
+			.parse("content://com.berries.dashboard.wheelcontent/"
+					+ WHEEL_SUMMARY_PATH);
+	public static final Uri CONTENT_ROLLUPS_URI = Uri
+			.parse("content://com.berries.dashboard.wheelcontent/"
+					+ ROLLUPS_PATH);
+
+	/** Query parameter of the export uris, {@link ExportWriter#FORMAT_CSV} or {@link ExportWriter#FORMAT_JSON} */
+	public static final String QUERY_PARAMETER_FORMAT = "format";
+	/** Text to search the wheel types for, see {@link #getSearchUri(String)} */
+	public static final String QUERY_PARAMETER_SEARCH = "q";
+
+	/** 
+	 * Open for reading to get a backup of all wheel types and saved wheels, see {@link BackupFormat}. 
+	 * Update with the uri of a backup in {@link #BACKUP_SOURCE} to replace them all with the backup.
+	 */
+	public static final Uri CONTENT_BACKUP_URI = Uri
+			.parse("content://com.berries.dashboard.wheelcontent/" + BACKUP_PATH);
+	public static final String BACKUP_SOURCE = "source";
+
+	/** 
+	 * Update to compact the saved wheels, see {@link HistoryCompactor}, returns the number of rows removed. 
+	 * The values may hold {@link #COMPACT_OLDER_THAN} and {@link #QUERY_PARAMETER_PERIOD}, without them identical consecutive rows are collapsed only.
+	 */
+	public static final Uri CONTENT_COMPACT_URI = Uri
+			.parse("content://com.berries.dashboard.wheelcontent/" + MAINTENANCE_PATH + "/" + COMPACT_PATH);
+	/** Age in milliseconds above which the saved wheels with the same values are merged per {@link #PERIOD_DAY} or {@link #PERIOD_WEEK} */
+	public static final String COMPACT_OLDER_THAN = "olderThan";
+	/** 
+	 * Method for ContentResolver.call (API 11) compacting the saved wheels, the extras are the values of {@link #CONTENT_COMPACT_URI}. 
+	 * Returns the number of rows removed in {@link #COMPACT_ROWS_REMOVED} and of bytes freed in {@link #COMPACT_BYTES_RECLAIMED}
+	 */
+	public static final String METHOD_COMPACT = "compact";
+	public static final String COMPACT_ROWS_REMOVED = "rowsRemoved";
+	public static final String COMPACT_BYTES_RECLAIMED = "bytesReclaimed";
+
+	/** 
+	 * The changes to the saved wheels and wheel types, see {@link ChangeLogTable}, notified with every change. 
+	 * Query {@link #getChangesUri(long)} for the changes after a seq, the uri itself returns all changes still logged.
+	 */
+	public static final Uri CONTENT_CHANGES_URI = Uri
+			.parse("content://com.berries.dashboard.wheelcontent/" + CHANGES_PATH);
+	/** Query parameter of the changes uri, only changes with a greater seq are returned */
+	public static final String QUERY_PARAMETER_SINCE = "since";
+
+	/** Method for ContentResolver.call (API 11) returning the hit, miss & eviction counts of the query result cache */
+	public static final String METHOD_QUERY_CACHE_STATS = "queryCacheStats";
+	public static final String STATS_HITS = "hits";
+	public static final String STATS_MISSES = "misses";
+	public static final String STATS_EVICTIONS = "evictions";
+
+	/** Query parameter of the history uri of a wheel type, only rows saved at or after this time in milliseconds are returned */
+	public static final String QUERY_PARAMETER_FROM = "from";
+	/** Query parameter of the history uri of a wheel type, only rows saved before this time in milliseconds are returned */
+	public static final String QUERY_PARAMETER_TO = "to";
+
+	/** Query parameter of the rollups uri selecting the bucket size: day, week or month */
+	public static final String QUERY_PARAMETER_PERIOD = "period";
+	public static final String PERIOD_DAY = "day";
+	public static final String PERIOD_WEEK = "week";
+	public static final String PERIOD_MONTH = "month";
 
 	private static final int WHEEL_VALUES_TABLE_CODE_BASE = 100;
 	private static final int WHEEL_SINGLE = WHEEL_VALUES_TABLE_CODE_BASE + 0;
 	private static final int WHEEL_SINGLE_ID = WHEEL_VALUES_TABLE_CODE_BASE + 1;
 	private static final int WHEEL_PROGRESS = WHEEL_VALUES_TABLE_CODE_BASE + 2;
+	private static final int WHEEL_PROGRESS_TYPE = WHEEL_VALUES_TABLE_CODE_BASE + 3;
 
 	private static final int WHEEL_TYPES_TABLE_CODE_BASE = 200;
 	private static final int WHEEL_TYPE_SINGLE = WHEEL_TYPES_TABLE_CODE_BASE + 0;
 	private static final int WHEEL_TYPE_SINGLE_ID = WHEEL_TYPES_TABLE_CODE_BASE + 1;
 	private static final int WHEEL_TYPE_LIST = WHEEL_TYPES_TABLE_CODE_BASE + 2;
+	private static final int WHEEL_TYPE_SUMMARY = WHEEL_TYPES_TABLE_CODE_BASE + 3;
+	private static final int WHEEL_TYPE_SEARCH = WHEEL_TYPES_TABLE_CODE_BASE + 4;
+
+	private static final int ITEM_VALUES_TABLE_CODE_BASE = 300;
+	private static final int ITEM_HISTORY = ITEM_VALUES_TABLE_CODE_BASE + 0;
+
+	private static final int ROLLUPS_TABLE_CODE_BASE = 400;
+	private static final int ROLLUPS_FOR_TYPE = ROLLUPS_TABLE_CODE_BASE + 0;
+
+	private static final int FILES_CODE_BASE = 500;
+	private static final int EXPORT = FILES_CODE_BASE + 0;
+	private static final int BACKUP = FILES_CODE_BASE + 1;
+
+	private static final int MIGRATIONS_TABLE_CODE_BASE = 600;
+	private static final int MIGRATION = MIGRATIONS_TABLE_CODE_BASE + 0;
 
-	private static final String AUTHORITY = "com.berries.dashboard.wheelcontent";
+	private static final int MAINTENANCE_CODE_BASE = 700;
+	private static final int COMPACT = MAINTENANCE_CODE_BASE + 0;
+
+	private static final int CHANGES_CODE_BASE = 800;
+	private static final int CHANGES = CHANGES_CODE_BASE + 0;
+	private static final int CHANGE_CONSUMER = CHANGES_CODE_BASE + 1;
+
+	public static final String AUTHORITY = "com.berries.dashboard.wheelcontent";
 	private static final UriMatcher sURIMatcher = new UriMatcher(
 			UriMatcher.NO_MATCH);
 
@@ -80,21 +244,164 @@ public class WheelContentProvider extends ContentProvider {
 		sURIMatcher.addURI(AUTHORITY, BASE_PATH, WHEEL_SINGLE);
 		sURIMatcher.addURI(AUTHORITY, BASE_PATH + "/#", WHEEL_SINGLE_ID);
 		sURIMatcher.addURI(AUTHORITY, BASE_PATH + "/*", WHEEL_PROGRESS);
+		sURIMatcher.addURI(AUTHORITY, BASE_PATH + "/" + TYPE_PATH + "/#", WHEEL_PROGRESS_TYPE);
 
 		sURIMatcher.addURI(AUTHORITY, WHEEL_TYPES_PATH, WHEEL_TYPE_SINGLE);
 		sURIMatcher.addURI(AUTHORITY, WHEEL_TYPES_PATH + "/#", WHEEL_TYPE_SINGLE_ID);
 		sURIMatcher.addURI(AUTHORITY, WHEEL_TYPES_PATH + "/*", WHEEL_TYPE_LIST);
+		sURIMatcher.addURI(AUTHORITY, WHEEL_SUMMARY_PATH, WHEEL_TYPE_SUMMARY);
+		sURIMatcher.addURI(AUTHORITY, WHEEL_SUMMARY_PATH + "/" + SEARCH_PATH, WHEEL_TYPE_SEARCH);
+
+		sURIMatcher.addURI(AUTHORITY, ITEM_VALUES_PATH + "/#/#", ITEM_HISTORY);
+
+		sURIMatcher.addURI(AUTHORITY, ROLLUPS_PATH + "/#", ROLLUPS_FOR_TYPE);
+		sURIMatcher.addURI(AUTHORITY, EXPORT_PATH + "/*", EXPORT);
+		sURIMatcher.addURI(AUTHORITY, BACKUP_PATH, BACKUP);
+		sURIMatcher.addURI(AUTHORITY, MIGRATIONS_PATH + "/*", MIGRATION);
+		sURIMatcher.addURI(AUTHORITY, MAINTENANCE_PATH + "/" + COMPACT_PATH, COMPACT);
+		sURIMatcher.addURI(AUTHORITY, CHANGES_PATH, CHANGES);
+		sURIMatcher.addURI(AUTHORITY, CHANGES_PATH + "/" + CONSUMERS_PATH + "/*", CHANGE_CONSUMER);
+	}
+
+	/**
+	 * @param typeId the wheel type id
+	 * @return Uri of all saved values of the wheel type, newest first. Accepts the paging parameters as well as 
+	 * {@link #QUERY_PARAMETER_FROM} and {@link #QUERY_PARAMETER_TO}
+	 */
+	public static Uri getProgressUri(int typeId) {
+		return CONTENT_PROGRESS_SINGLE_URI.buildUpon()
+				.appendPath(TYPE_PATH)
+				.appendPath(String.valueOf(typeId)).build();
+	}
+
+	/**
+	 * @param typeId the wheel type id
+	 * @param from time in milliseconds of the oldest row to return
+	 * @param to time in milliseconds, only rows saved before it are returned
+	 * @return Uri of the values of the wheel type saved in the given time range, newest first
+	 */
+	public static Uri getProgressRangeUri(int typeId, long from, long to) {
+		return getProgressUri(typeId).buildUpon()
+				.appendQueryParameter(QUERY_PARAMETER_FROM, String.valueOf(from))
+				.appendQueryParameter(QUERY_PARAMETER_TO, String.valueOf(to)).build();
+	}
+
+	/**
+	 * @param typeId the wheel type id
+	 * @param period one of PERIOD_DAY, PERIOD_WEEK, PERIOD_MONTH
+	 * @return Uri returning one row per bucket and item, newest bucket first, with the columns 
+	 * typeId, period, bucket, itemIndex, sum, count, min, max, average
+	 */
+	public static Uri getRollupsUri(int typeId, String period) {
+		return CONTENT_ROLLUPS_URI.buildUpon()
+				.appendPath(String.valueOf(typeId))
+				.appendQueryParameter(QUERY_PARAMETER_PERIOD, period).build();
+	}
+
+	/**
+	 * @param typeId the wheel type id
+	 * @param itemIndex index of the item within the wheel
+	 * @return Uri returning the saved values of a single item, newest first, with the columns _id, date, value
+	 */
+	public static Uri getItemHistoryUri(int typeId, int itemIndex) {
+		return CONTENT_ITEM_VALUES_URI.buildUpon()
+				.appendPath(String.valueOf(typeId))
+				.appendPath(String.valueOf(itemIndex)).build();
+	}
+
+	/**
+	 * @param progress true to export WHEEL_PROGRESS, false to export WHEEL_TYPES
+	 * @param format {@link ExportWriter#FORMAT_CSV} or {@link ExportWriter#FORMAT_JSON}
+	 * @return Uri to open with ContentResolver.openInputStream, the export is streamed as it is read from the database
+	 */
+	public static Uri getExportUri(boolean progress, String format) {
+		return CONTENT_BASE_URI.buildUpon()
+				.appendPath(EXPORT_PATH)
+				.appendPath(progress ? BASE_PATH : WHEEL_TYPES_PATH)
+				.appendQueryParameter(QUERY_PARAMETER_FORMAT, format).build();
+	}
+
+	/**
+	 * The wheel types having a word in their title or item names that starts with every word of the text, 
+	 * with the columns of {@link #CONTENT_WHEEL_SUMMARY_URI}. The words are looked up in the full-text index, 
+	 * so the query does not scan the wheel types. Supports the paging parameters of the list uris.
+	 * @param text as typed by the user, all wheel types are returned if it has no words
+	 */
+	public static Uri getSearchUri(String text) {
+		return CONTENT_WHEEL_SUMMARY_URI.buildUpon().appendPath(SEARCH_PATH).appendQueryParameter(QUERY_PARAMETER_SEARCH, text).build();
+	}
+
+	/**
+	 * The progress of a background migration or import, by name. 
+	 * Query returns its lastId and endId, insert starts it with the given endId and update sets lastId and/or endId. 
+	 * Updating it in the same {@link #applyBatch(ArrayList)} as the rows it covers keeps the two consistent.
+	 * @param name unique name of the migration
+	 */
+	public static Uri getMigrationUri(String name) {
+		return CONTENT_BASE_URI.buildUpon().appendPath(MIGRATIONS_PATH).appendPath(name).build();
+	}
+
+	/**
+	 * The changes logged after the given seq, oldest first, with the columns seq, tableName, operation, rowId & typeId. 
+	 * Supports {@link #QUERY_PARAMETER_PAGE_SIZE}.
+	 * @param since seq of the last change the caller has applied
+	 */
+	public static Uri getChangesUri(long since) {
+		return CONTENT_CHANGES_URI.buildUpon().appendQueryParameter(QUERY_PARAMETER_SINCE, String.valueOf(since)).build();
+	}
+
+	/**
+	 * The position of a consumer of the changes, by name. Changes are only logged while a consumer is registered, 
+	 * and the changes every consumer has moved past are pruned. 
+	 * Insert registers the consumer at the latest change, query returns its seq, update moves it to the seq in the values 
+	 * and delete stops logging for it. A new consumer should register before it reads the data it follows, 
+	 * then apply the changes since the seq it was registered at, so nothing written in between is missed.
+	 * @param name unique name of the consumer
+	 */
+	public static Uri getChangeConsumerUri(String name) {
+		return CONTENT_CHANGES_URI.buildUpon().appendPath(CONSUMERS_PATH).appendPath(name).build();
 	}
 
 	public WheelContentProvider() {
+		this(null);
+	}
+
+	/**
+	 * A provider over a database other than mydashboarddb, attached with attachInfo and called directly. 
+	 * Its saves are not added to the in-memory histories of WheelHistoryStore, which belong to mydashboarddb.
+	 * @param databaseName null for mydashboarddb
+	 */
+	public WheelContentProvider(String databaseName) {
+		mDatabaseName = databaseName;
 	}
 
 	@Override
 	public boolean onCreate() {
-		mDatabase = new WheelDBManager(getContext());
+		StartupTiming.markProcessStart();
+		mDatabase = (mDatabaseName == null) ? new WheelDBManager(getContext()) : new WheelDBManager(getContext(), mDatabaseName);
+		mChangeNotifier = new ChangeNotifier(getContext());
+		// open, create or upgrade the database while the first activity is still being set up, 
+		// so the loader of the first screen does not wait for it
+		Thread warmUp = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				mDatabase.getReaderDatabase();
+				StartupTiming.markDatabaseReady();
+				Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
+				new WheelItemValuesMigration(mDatabase).run();
+			}
+		}, WheelDBManager.class.getSimpleName());
+		warmUp.start();
 		return false;
 	}
 
+	/** Closes the database, only ever called for providers created with a database name */
+	@Override
+	public void shutdown() {
+		mStatements.close();
+		mDatabase.close();
+	}
+
 	public Cursor query(Uri uri, String[] projection, String selection,
 			String[] selectionArgs, String sortOrder) {
 
@@ -107,7 +414,25 @@ public class WheelContentProvider extends ContentProvider {
 		int uriType = sURIMatcher.match(uri);
 		String limit = null;
 
-		if (uriType >= WHEEL_TYPES_TABLE_CODE_BASE) {
+		if (uriType == ITEM_HISTORY) {
+			return queryItemHistory(uri, projection);
+		} else if (uriType == ROLLUPS_FOR_TYPE) {
+			return queryRollups(uri, projection, selection, selectionArgs);
+		} else if (uriType == MIGRATION) {
+			return MigrationsTable.query(mDatabase.getReaderDatabase(), uri.getLastPathSegment());
+		} else if (uriType == CHANGE_CONSUMER) {
+			return ChangeLogTable.queryConsumer(mDatabase.getReaderDatabase(), uri.getLastPathSegment());
+		} else if (uriType == CHANGES) {
+			String since = uri.getQueryParameter(QUERY_PARAMETER_SINCE);
+			Cursor cursor = ChangeLogTable.query(mDatabase.getReaderDatabase(), (since == null) ? 0 : Long.parseLong(since),
+					uri.getQueryParameter(QUERY_PARAMETER_PAGE_SIZE));
+			cursor.setNotificationUri(getContext().getContentResolver(), CONTENT_CHANGES_URI);
+			return cursor;
+		}
+
+		if (uriType == WHEEL_TYPE_SUMMARY || uriType == WHEEL_TYPE_SEARCH) {
+			queryBuilder.setTables(WheelTypesSummaryView.VIEW_NAME);
+		} else if (uriType >= WHEEL_TYPES_TABLE_CODE_BASE) {
 			queryBuilder.setTables(WheelTypesTable.TABLE_NAME);
 		} else {
 			queryBuilder.setTables(WheelValuesTable.TABLE_NAME);
@@ -118,8 +443,50 @@ public class WheelContentProvider extends ContentProvider {
 
 		if (uriType == WHEEL_SINGLE) {
 			limit = SINGLE_RESULTS_LIMIT;
-		} else if ((uriType == WHEEL_TYPE_LIST) || (uriType == WHEEL_PROGRESS)) {
-			limit = MULTI_RESULTS_LIMIT;
+		} else if ((uriType == WHEEL_TYPE_LIST) || (uriType == WHEEL_TYPE_SUMMARY) || (uriType == WHEEL_TYPE_SEARCH)
+				|| (uriType == WHEEL_PROGRESS) || (uriType == WHEEL_PROGRESS_TYPE)) {
+			boolean progress = (uriType == WHEEL_PROGRESS) || (uriType == WHEEL_PROGRESS_TYPE);
+			if (uriType == WHEEL_TYPE_SEARCH) {
+				String match = WheelTypesSearchTable.toPrefixQuery(uri.getQueryParameter(QUERY_PARAMETER_SEARCH));
+				if (match != null) {
+					selectionToUse = addFirstConditionToSelection(WheelTypesSearchTable.MATCH_SELECTION, selectionToUse);
+					selectionArgsToUse = addFirstToSelectionArgs(match, selectionArgsToUse);
+				}
+			}
+			if (uriType == WHEEL_PROGRESS_TYPE) {
+				// the range is applied together with typeId so the query is a single range scan of the (typeId, date) index
+				String from = uri.getQueryParameter(QUERY_PARAMETER_FROM);
+				String to = uri.getQueryParameter(QUERY_PARAMETER_TO);
+				if (to != null) {
+					selectionToUse = addFirstConditionToSelection(Contract.COLUMN_DATE + " < ?", selectionToUse);
+					selectionArgsToUse = addFirstToSelectionArgs(to, selectionArgsToUse);
+				}
+				if (from != null) {
+					selectionToUse = addFirstConditionToSelection(Contract.COLUMN_DATE + " >= ?", selectionToUse);
+					selectionArgsToUse = addFirstToSelectionArgs(from, selectionArgsToUse);
+				}
+				selectionToUse = addFirstConditionToSelection(Contract.COLUMN_TYPE_ID + " = ?", selectionToUse);
+				selectionArgsToUse = addFirstToSelectionArgs(uri.getLastPathSegment(), selectionArgsToUse);
+			}
+			// lists are only limited when the caller asks for a page
+			limit = uri.getQueryParameter(QUERY_PARAMETER_PAGE_SIZE);
+			if (limit != null) {
+				sortOrder = progress ? PROGRESS_KEYSET_ORDER : TYPES_KEYSET_ORDER;
+			}
+			String afterKey = uri.getQueryParameter(QUERY_PARAMETER_AFTER);
+			if (afterKey != null) {
+				String[] keys = afterKey.split(PAGE_KEY_SEPARATOR);
+				if (progress && keys.length < 2) {
+					throw new IllegalArgumentException("Malformed page key for db query: " + uri);
+				}
+				if (progress) {
+					selectionToUse = addFirstConditionToSelection(PROGRESS_KEYSET_SELECTION, selectionToUse);
+					selectionArgsToUse = addFirstToSelectionArgs(new String[] { keys[0], keys[0], keys[1] }, selectionArgsToUse);
+				} else {
+					selectionToUse = addFirstConditionToSelection(TYPES_KEYSET_SELECTION, selectionToUse);
+					selectionArgsToUse = addFirstToSelectionArgs(new String[] { keys[0] }, selectionArgsToUse);
+				}
+			}
 		} else if ((uriType == WHEEL_TYPE_SINGLE_ID)
 				|| (uriType == WHEEL_SINGLE_ID)) {
 			limit = SINGLE_RESULTS_LIMIT;
@@ -132,20 +499,282 @@ public class WheelContentProvider extends ContentProvider {
 					+ uri);
 		}
 
-		SQLiteDatabase db = mDatabase.getWritableDatabase();
+		// lists are served from memory when the same query ran since the last change to them
+		String cacheKey = null;
+		long cacheGeneration = 0;
+		if (QueryCache.ENABLED && isCacheable(uri, uriType)) {
+			cacheKey = QueryCache.getKey(uri, projection, selectionToUse, selectionArgsToUse, sortOrder);
+			Cursor cached = mQueryCache.get(cacheKey);
+			if (cached != null) {
+				cached.setNotificationUri(getContext().getContentResolver(), uri);
+				return cached;
+			}
+			cacheGeneration = mQueryCache.getGeneration();
+		}
+
+		SQLiteDatabase db = mDatabase.getReaderDatabase();
 
 		Cursor cursor = queryBuilder.query(db, projection, selectionToUse,
 				selectionArgsToUse, null, null, sortOrder, limit);
+		if (cacheKey != null) {
+			cursor = mQueryCache.put(cacheKey, uri, cacheGeneration, cursor);
+		}
 		// Make sure that potential listeners are getting notified
 		cursor.setNotificationUri(getContext().getContentResolver(), uri);
 
 		return cursor;
 	}
 
+	// only results whose every change is notified on their own path or one above or below it can be cached
+	private static boolean isCacheable(Uri uri, int uriType) {
+		switch (uriType) {
+		case WHEEL_PROGRESS:
+			return uri.getPath().equals(CONTENT_PROGRESS_URI.getPath());
+		case WHEEL_PROGRESS_TYPE:
+		case WHEEL_TYPE_LIST:
+		case WHEEL_TYPE_SUMMARY:
+		case WHEEL_TYPE_SINGLE_ID:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * @param uri a list uri, {@link #CONTENT_PROGRESS_URI}, {@link #getProgressUri(int)}, {@link #CONTENT_WHEEL_TYPES_URI} 
+	 * {@link #CONTENT_WHEEL_SUMMARY_URI} or {@link #getSearchUri(String)}
+	 * @param pageSize max number of rows in the page
+	 * @param afterKey key of the last row of the previous page, null for the first page
+	 * @return Uri of a single page of the list
+	 */
+	public static Uri getPageUri(Uri uri, int pageSize, String afterKey) {
+		Uri.Builder builder = uri.buildUpon().appendQueryParameter(QUERY_PARAMETER_PAGE_SIZE, String.valueOf(pageSize));
+		if (afterKey != null) {
+			builder.appendQueryParameter(QUERY_PARAMETER_AFTER, afterKey);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * @param uri the list uri the cursor was loaded from
+	 * @param cursor positioned on the last row of a page
+	 * @return String the key to pass with {@link #QUERY_PARAMETER_AFTER} to get the next page
+	 */
+	public static String getPageKey(Uri uri, Cursor cursor) {
+		String id = cursor.getString(cursor.getColumnIndexOrThrow(Contract.COLUMN_ID));
+		int uriType = sURIMatcher.match(uri);
+		if (uriType == WHEEL_PROGRESS || uriType == WHEEL_PROGRESS_TYPE) {
+			return cursor.getLong(cursor.getColumnIndexOrThrow(Contract.COLUMN_DATE)) + PAGE_KEY_SEPARATOR + id;
+		}
+		return id;
+	}
+
+	/**
+	 * Reads the history of a single item from WHEEL_ITEM_VALUES, or from the packed values of WHEEL_PROGRESS 
+	 * while older rows are still being copied over
+	 */
+	private Cursor queryItemHistory(Uri uri, String[] projection) {
+		List<String> segments = uri.getPathSegments();
+		String typeId = segments.get(1);
+		int itemIndex = Integer.parseInt(segments.get(2));
+		if (itemIndex >= Contract.MAX_ITEMS_IN_WHEEL) {
+			throw new IllegalArgumentException("Unsupported item index for db query: " + uri);
+		}
+
+		SQLiteDatabase db = mDatabase.getReaderDatabase();
+		SQLiteQueryBuilder queryBuilder = new SQLiteQueryBuilder();
+		HashMap<String, String> columns = new HashMap<String, String>();
+		String selection;
+		String[] selectionArgs;
+		if (isItemValuesReady(db)) {
+			queryBuilder.setTables(WheelItemValuesTable.TABLE_NAME);
+			columns.put(Contract.COLUMN_ID, Contract.COLUMN_SNAPSHOT_ID + " AS " + Contract.COLUMN_ID);
+			columns.put(Contract.COLUMN_VALUE, Contract.COLUMN_VALUE);
+			selection = Contract.COLUMN_TYPE_ID + " = ? and " + Contract.COLUMN_ITEM_INDEX + " = ?";
+			selectionArgs = new String[] { typeId, String.valueOf(itemIndex) };
+		} else {
+			queryBuilder.setTables(WheelValuesTable.TABLE_NAME);
+			columns.put(Contract.COLUMN_ID, Contract.COLUMN_ID);
+			columns.put(Contract.COLUMN_VALUE, PackedValuesCodec.sqlValueAt(Contract.COLUMN_PACKED_VALUES, itemIndex) + " AS " + Contract.COLUMN_VALUE);
+			selection = Contract.COLUMN_TYPE_ID + " = ?";
+			selectionArgs = new String[] { typeId };
+		}
+		columns.put(Contract.COLUMN_DATE, Contract.COLUMN_DATE);
+		queryBuilder.setProjectionMap(columns);
+
+		Cursor cursor = queryBuilder.query(db, projection, selection, selectionArgs, null, null, Contract.COLUMN_DATE + " DESC");
+		cursor.setNotificationUri(getContext().getContentResolver(), uri);
+		return cursor;
+	}
+
+	private Cursor queryRollups(Uri uri, String[] projection, String selection, String[] selectionArgs) {
+		int periodToUse = toRollupsPeriod(uri.getQueryParameter(QUERY_PARAMETER_PERIOD));
+		if (periodToUse < 0) {
+			throw new IllegalArgumentException("Unsupported period for db query: " + uri);
+		}
+
+		SQLiteQueryBuilder queryBuilder = new SQLiteQueryBuilder();
+		queryBuilder.setTables(WheelRollupsTable.TABLE_NAME);
+		HashMap<String, String> columns = new HashMap<String, String>();
+		for (String column : new String[] { Contract.COLUMN_TYPE_ID, Contract.COLUMN_PERIOD, Contract.COLUMN_BUCKET,
+				Contract.COLUMN_ITEM_INDEX, Contract.COLUMN_SUM, Contract.COLUMN_COUNT, Contract.COLUMN_MIN, Contract.COLUMN_MAX }) {
+			columns.put(column, column);
+		}
+		columns.put(Contract.COLUMN_AVERAGE, "(1.0 * " + Contract.COLUMN_SUM + " / " + Contract.COLUMN_COUNT + ") AS " + Contract.COLUMN_AVERAGE);
+		queryBuilder.setProjectionMap(columns);
+
+		String selectionToUse = addFirstConditionToSelection(Contract.COLUMN_TYPE_ID + " = ? and " + Contract.COLUMN_PERIOD + " = ?", selection);
+		String[] selectionArgsToUse = addFirstToSelectionArgs(new String[] { uri.getLastPathSegment(), String.valueOf(periodToUse) },
+				selectionArgs);
+		Cursor cursor = queryBuilder.query(mDatabase.getReaderDatabase(), projection, selectionToUse, selectionArgsToUse, null, null,
+				Contract.COLUMN_BUCKET + " DESC, " + Contract.COLUMN_ITEM_INDEX + " ASC");
+		cursor.setNotificationUri(getContext().getContentResolver(), uri);
+		return cursor;
+	}
+
+	private boolean isItemValuesReady(SQLiteDatabase db) {
+		if (!mItemValuesReady) {
+			mItemValuesReady = MigrationsTable.isComplete(db, WheelItemValuesTable.MIGRATION_NAME);
+		}
+		return mItemValuesReady;
+	}
+
 	@Override
 	public String getType(Uri uri) {
-		// TODO Auto-generated method stub
-		return null;
+		switch (sURIMatcher.match(uri)) {
+		case EXPORT:
+			return ExportWriter.FORMAT_JSON.equals(uri.getQueryParameter(QUERY_PARAMETER_FORMAT)) ? "application/json" : "text/csv";
+		case BACKUP:
+			return "application/octet-stream";
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Opens an export uri, see {@link #getExportUri(boolean, String)}, or {@link #CONTENT_BACKUP_URI}. 
+	 * The rows are written to a pipe by a background thread one page at a time, 
+	 * the reader gets the first rows while the rest are still being read.
+	 */
+	@Override
+	public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+		int uriType = sURIMatcher.match(uri);
+		if (uriType != EXPORT && uriType != BACKUP) {
+			throw new FileNotFoundException("Unsupported URI for open: " + uri);
+		}
+		if (!"r".equals(mode)) {
+			throw new FileNotFoundException("Exports and backups can only be opened for reading: " + uri);
+		}
+		if (uriType == BACKUP) {
+			return openBackup();
+		}
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.GINGERBREAD) {
+			throw new FileNotFoundException("Exports need pipes, available from API 9");
+		}
+		String table = BASE_PATH.equals(uri.getLastPathSegment()) ? WheelValuesTable.TABLE_NAME : WheelTypesTable.TABLE_NAME;
+		String format = uri.getQueryParameter(QUERY_PARAMETER_FORMAT);
+		if (format == null) {
+			format = ExportWriter.FORMAT_CSV;
+		}
+		ParcelFileDescriptor[] pipe = createPipe();
+		ExportWriter writer = new ExportWriter(mDatabase, table, format, new ParcelFileDescriptor.AutoCloseOutputStream(pipe[1]));
+		new Thread(writer, ExportWriter.class.getSimpleName()).start();
+		return pipe[0];
+	}
+
+	private ParcelFileDescriptor openBackup() throws FileNotFoundException {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD) {
+			ParcelFileDescriptor[] pipe = createPipe();
+			BackupWriter writer = new BackupWriter(mDatabase, new ParcelFileDescriptor.AutoCloseOutputStream(pipe[1]));
+			new Thread(writer, BackupWriter.class.getSimpleName()).start();
+			return pipe[0];
+		}
+		// no pipes, the backup is written to a file that is removed as soon as it is open, the descriptor keeps it readable
+		File file = new File(getContext().getCacheDir(), BACKUP_PATH + System.nanoTime());
+		try {
+			new BackupWriter(mDatabase, new FileOutputStream(file)).write();
+			return ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+		} catch (IOException e) {
+			FileNotFoundException error = new FileNotFoundException("Cannot write backup");
+			error.initCause(e);
+			throw error;
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Replaces all wheel types and saved wheels with the ones of a backup in a single transaction, 
+	 * if the backup cannot be read to the end nothing is changed.
+	 * @param source uri of a backup written from {@link #CONTENT_BACKUP_URI}
+	 * @return int number of saved wheels restored
+	 */
+	private int restoreBackup(Uri source) {
+		SQLiteDatabase sqlDB = mDatabase.getWritableDatabase();
+		Set<Integer> changedTypeIds;
+		int restored = 0;
+		InputStream input = null;
+		try {
+			input = getContext().getContentResolver().openInputStream(source);
+			if (input == null) {
+				throw new IOException("Cannot open " + source);
+			}
+			BackupReader reader = new BackupReader(input);
+			reader.readHeader();
+			sqlDB.beginTransaction();
+			try {
+				changedTypeIds = getTypeIds(sqlDB, WheelTypesTable.TABLE_NAME, Contract.COLUMN_ID, null, null);
+				// the item rows go with the saved wheels through ON DELETE CASCADE
+				sqlDB.delete(WheelValuesTable.TABLE_NAME, null, null);
+				sqlDB.delete(WheelTypesTable.TABLE_NAME, null, null);
+				sqlDB.delete(WheelRollupsTable.TABLE_NAME, null, null);
+				ContentValues type = new ContentValues();
+				while (reader.readType(type)) {
+					// backups do not hold the guids, the restored rows are new to the other devices
+					putSyncColumns(type);
+					if (insertRow(sqlDB, WheelTypesTable.TABLE_NAME, type) < 0) {
+						throw new IOException("Cannot restore wheel type " + type.getAsInteger(Contract.COLUMN_ID));
+					}
+					changedTypeIds.add(type.getAsInteger(Contract.COLUMN_ID));
+				}
+				while (reader.nextSnapshot()) {
+					if (insertSnapshot(sqlDB, reader.getTypeId(), reader.getDate(), reader.getPackedValues(),
+							reader.getRepeatCount(), reader.getEndDate(), null) < 0) {
+						throw new IOException("Cannot restore saved wheel of type " + reader.getTypeId());
+					}
+					restored++;
+				}
+				sqlDB.setTransactionSuccessful();
+			} finally {
+				sqlDB.endTransaction();
+			}
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Cannot restore backup " + source, e);
+		} finally {
+			if (input != null) {
+				try {
+					input.close();
+				} catch (IOException e) {
+					// everything was read
+				}
+			}
+		}
+		Log.i(TAG, "Restored " + restored + " saved wheels from " + source);
+		invalidateHistory(changedTypeIds);
+		notifySnapshotsChanged(changedTypeIds);
+		notifyTypesChanged();
+		return restored;
+	}
+
+	@TargetApi(Build.VERSION_CODES.GINGERBREAD)
+	private static ParcelFileDescriptor[] createPipe() throws FileNotFoundException {
+		try {
+			return ParcelFileDescriptor.createPipe();
+		} catch (IOException e) {
+			FileNotFoundException error = new FileNotFoundException("Cannot create export pipe");
+			error.initCause(e);
+			throw error;
+		}
 	}
 
 	@Override
@@ -156,18 +785,50 @@ public class WheelContentProvider extends ContentProvider {
 		long id = 0;
 		switch (uriType) {
 		case WHEEL_SINGLE:
-			id = sqlDB.insert(WheelValuesTable.TABLE_NAME, null, values);
+			sqlDB.beginTransaction();
+			try {
+				id = insertSnapshot(sqlDB, values);
+				sqlDB.setTransactionSuccessful();
+			} finally {
+				sqlDB.endTransaction();
+			}
+			checkInserted(uri, id);
 			retUri = Uri.parse(BASE_PATH + "/" + id);
+			// insertSnapshot leaves the typeId in values, a row without one belongs to no history
+			Integer typeId = values.getAsInteger(Contract.COLUMN_TYPE_ID);
+			if (id > 0 && typeId != null) {
+				addToHistory(typeId, id, values.getAsLong(Contract.COLUMN_DATE), values.getAsLong(Contract.COLUMN_PACKED_VALUES));
+				notifySnapshotsChanged(Collections.singleton(typeId));
+			}
 			break;
 		case WHEEL_TYPE_SINGLE:
-			id = sqlDB.insert(WheelTypesTable.TABLE_NAME, null, values);
+			if (!values.containsKey(Contract.COLUMN_DATE)) {
+				// databases created before version 7 still default the date to seconds
+				values.put(Contract.COLUMN_DATE, System.currentTimeMillis());
+			}
+			putSyncColumns(values);
+			sqlDB.beginTransaction();
+			try {
+				id = insertRow(sqlDB, WheelTypesTable.TABLE_NAME, values);
+				sqlDB.setTransactionSuccessful();
+			} finally {
+				sqlDB.endTransaction();
+			}
+			checkInserted(uri, id);
 			retUri = Uri.parse(WHEEL_TYPES_PATH + "/" + id);
+			notifyTypesChanged();
+			break;
+		case MIGRATION:
+			Long endId = values.getAsLong(Contract.COLUMN_END_ID);
+			MigrationsTable.start(sqlDB, uri.getLastPathSegment(), (endId == null) ? 0 : endId);
+			break;
+		case CHANGE_CONSUMER:
+			ChangeLogTable.registerConsumer(sqlDB, uri.getLastPathSegment());
 			break;
 		default:
 			throw new IllegalArgumentException(
 					"Unsupported URI for db insert: " + uri);
 		}
-		getContext().getContentResolver().notifyChange(uri, null);
 		return retUri;
 	}
 
@@ -198,6 +859,8 @@ public class WheelContentProvider extends ContentProvider {
 			tableName = WheelTypesTable.TABLE_NAME;
 			addId = true;
 			break;
+		case CHANGE_CONSUMER:
+			return ChangeLogTable.unregisterConsumer(sqlDB, uri.getLastPathSegment());
 		default:
 			throw new IllegalArgumentException(
 					"Unsupported URI for db delete: " + uri);
@@ -209,9 +872,31 @@ public class WheelContentProvider extends ContentProvider {
 			selectionArgsToUse = addFirstToSelectionArgs(id, selectionArgs);
 		}
 
-		rowsDeleted = sqlDB.delete(tableName, selectionToUse,
-				selectionArgsToUse);
-		getContext().getContentResolver().notifyChange(uri, null);
+		Set<Integer> changedTypeIds = new HashSet<Integer>();
+		boolean snapshots = tableName.equals(WheelValuesTable.TABLE_NAME);
+		sqlDB.beginTransaction();
+		try {
+			if (snapshots) {
+				rowsDeleted = deleteSnapshots(sqlDB, selectionToUse, selectionArgsToUse, changedTypeIds);
+			} else {
+				// the saved values of the wheel types and their item rows go with them through ON DELETE CASCADE
+				changedTypeIds.addAll(getTypeIds(sqlDB, tableName, Contract.COLUMN_ID, selectionToUse, selectionArgsToUse));
+				rowsDeleted = sqlDB.delete(tableName, selectionToUse,
+						selectionArgsToUse);
+				WheelRollupsTable.deleteOrphans(sqlDB);
+			}
+			sqlDB.setTransactionSuccessful();
+		} finally {
+			sqlDB.endTransaction();
+		}
+		if (uriType == WHEEL_SINGLE_ID) {
+			notifyChange(uri);
+		}
+		invalidateHistory(changedTypeIds);
+		notifySnapshotsChanged(changedTypeIds);
+		if (!snapshots) {
+			notifyTypesChanged();
+		}
 		return rowsDeleted;
 	}
 
@@ -226,6 +911,16 @@ public class WheelContentProvider extends ContentProvider {
 		SQLiteDatabase sqlDB = mDatabase.getWritableDatabase();
 		int rowsUpdated = 0;
 		switch (uriType) {
+		case MIGRATION:
+			// no one observes the progress of a migration
+			return MigrationsTable.update(sqlDB, uri.getLastPathSegment(), values);
+		case BACKUP:
+			return restoreBackup(Uri.parse(values.getAsString(BACKUP_SOURCE)));
+		case CHANGE_CONSUMER:
+			return ChangeLogTable.setConsumerSeq(sqlDB, uri.getLastPathSegment(), values.getAsLong(Contract.COLUMN_SEQ));
+		case COMPACT:
+			Long olderThan = values.getAsLong(COMPACT_OLDER_THAN);
+			return compactHistory(olderThan == null ? 0 : olderThan, values.getAsString(QUERY_PARAMETER_PERIOD)).rowsRemoved;
 		case WHEEL_SINGLE:
 			tableName = WheelValuesTable.TABLE_NAME;
 			break;
@@ -248,12 +943,552 @@ public class WheelContentProvider extends ContentProvider {
 			throw new IllegalArgumentException(
 					"Unsupported URI for db update: " + uri);
 		}
-		rowsUpdated = sqlDB.update(tableName, values, selectionToUse,
-				selectionArgsToUse);
-		getContext().getContentResolver().notifyChange(uri, null);
+		if (tableName.equals(WheelValuesTable.TABLE_NAME)) {
+			Set<Integer> changedTypeIds = new HashSet<Integer>();
+			sqlDB.beginTransaction();
+			try {
+				rowsUpdated = updateSnapshots(sqlDB, values, selectionToUse, selectionArgsToUse, changedTypeIds);
+				sqlDB.setTransactionSuccessful();
+			} finally {
+				sqlDB.endTransaction();
+			}
+			if (uriType == WHEEL_SINGLE_ID) {
+				notifyChange(uri);
+			}
+			invalidateHistory(changedTypeIds);
+			notifySnapshotsChanged(changedTypeIds);
+		} else {
+			if (!values.containsKey(Contract.COLUMN_MODIFIED)) {
+				values.put(Contract.COLUMN_MODIFIED, System.currentTimeMillis());
+			}
+			sqlDB.beginTransaction();
+			try {
+				rowsUpdated = updateRows(sqlDB, tableName, values, selectionToUse, selectionArgsToUse);
+				sqlDB.setTransactionSuccessful();
+			} finally {
+				sqlDB.endTransaction();
+			}
+			notifyTypesChanged();
+		}
+		return rowsUpdated;
+	}
+
+	/**
+	 * Insert a saved wheel together with its item rows and rollups, and notify observers. 
+	 * In-process callers can use this instead of {@link #insert(Uri, ContentValues)} to save without building ContentValues.
+	 * @param typeId the wheel type id
+	 * @param date time in milliseconds at which the values were saved
+	 * @param packedValues see {@link PackedValuesCodec}
+	 * @return long the id of the new WHEEL_PROGRESS row, -1 on failure
+	 */
+	public long insertSnapshot(int typeId, long date, long packedValues) {
+		SQLiteDatabase sqlDB = mDatabase.getWritableDatabase();
+		long id;
+		sqlDB.beginTransaction();
+		try {
+			id = insertSnapshot(sqlDB, typeId, date, packedValues);
+			sqlDB.setTransactionSuccessful();
+		} finally {
+			sqlDB.endTransaction();
+		}
+		if (id > 0) {
+			addToHistory(typeId, id, date, packedValues);
+			notifySnapshotsChanged(Collections.singleton(typeId));
+		}
+		return id;
+	}
+
+	/**
+	 * Insert a saved wheel together with its item rows and rollups. Must be called inside a transaction.
+	 * @return long the id of the new WHEEL_PROGRESS row, -1 on failure
+	 */
+	private long insertSnapshot(SQLiteDatabase sqlDB, ContentValues values) {
+		packSnapshotValues(values);
+		if (!values.containsKey(Contract.COLUMN_DATE)) {
+			// databases created before version 7 still default the date to seconds
+			values.put(Contract.COLUMN_DATE, System.currentTimeMillis());
+		}
+		Integer typeId = values.getAsInteger(Contract.COLUMN_TYPE_ID);
+		Integer repeatCount = values.getAsInteger(Contract.COLUMN_REPEAT_COUNT);
+		if (repeatCount == null) {
+			repeatCount = 1;
+		}
+		if (typeId != null && isPackedSnapshot(values)) {
+			return insertSnapshot(sqlDB, typeId, values.getAsLong(Contract.COLUMN_DATE), values.getAsLong(Contract.COLUMN_PACKED_VALUES),
+					repeatCount, values.getAsLong(Contract.COLUMN_END_DATE), values.getAsString(Contract.COLUMN_GUID));
+		}
+		// e.g. an explicit _id, goes through the generic path
+		if (values.getAsString(Contract.COLUMN_GUID) == null) {
+			values.put(Contract.COLUMN_GUID, UUID.randomUUID().toString());
+		}
+		long id = insertRow(sqlDB, WheelValuesTable.TABLE_NAME, values);
+		if (id > 0 && typeId != null) {
+			WheelItemValuesTable.copyFromWideRows(sqlDB, Contract.COLUMN_ID + " = ?", new String[] { String.valueOf(id) });
+			WheelRollupsTable.add(sqlDB, typeId, values.getAsLong(Contract.COLUMN_DATE), values.getAsLong(Contract.COLUMN_PACKED_VALUES),
+					repeatCount);
+		}
+		return id;
+	}
+
+	/**
+	 * Insert a saved wheel binding the values to the cached statements. Must be called inside a transaction.
+	 * @return long the id of the new WHEEL_PROGRESS row, -1 on failure
+	 */
+	private long insertSnapshot(SQLiteDatabase sqlDB, int typeId, long date, long packedValues) {
+		return insertSnapshot(sqlDB, typeId, date, packedValues, 1, null, null);
+	}
+
+	/**
+	 * Insert a row standing for repeatCount saves of the same values, see WheelValuesTable. Must be called inside a transaction.
+	 * @param endDate time in milliseconds of the last save, null for a single save
+	 * @param guid of the row on the device it was saved on, null for a new one
+	 * @return long the id of the new WHEEL_PROGRESS row, -1 on failure
+	 */
+	private long insertSnapshot(SQLiteDatabase sqlDB, int typeId, long date, long packedValues, int repeatCount, Long endDate,
+			String guid) {
+		long id;
+		try {
+			id = WheelValuesTable.insert(mStatements.get(sqlDB, WheelValuesTable.INSERT_PACKED_SQL), typeId, date, packedValues,
+					repeatCount, endDate, guid);
+		} catch (SQLException e) {
+			// same as SQLiteDatabase.insert, e.g. the wheel type does not exist
+			Log.e(TAG, "Error inserting saved wheel of type " + typeId, e);
+			return -1;
+		}
+		if (id > 0) {
+			WheelItemValuesTable.insertPacked(mStatements.get(sqlDB, WheelItemValuesTable.INSERT_SQL), id, typeId, date, packedValues);
+			WheelRollupsTable.add(mStatements.get(sqlDB, WheelRollupsTable.INSERT_BUCKET_SQL),
+					mStatements.get(sqlDB, WheelRollupsTable.ADD_TO_BUCKET_SQL), typeId, date, packedValues, repeatCount);
+		}
+		return id;
+	}
+
+	// true if values hold nothing but the typeId, date, packed values, repeat columns and guid of a saved wheel
+	private static boolean isPackedSnapshot(ContentValues values) {
+		for (Map.Entry<String, Object> entry : values.valueSet()) {
+			String column = entry.getKey();
+			if (column.equals(Contract.COLUMN_TYPE_ID) || column.equals(Contract.COLUMN_DATE)
+					|| column.equals(Contract.COLUMN_PACKED_VALUES) || column.equals(Contract.COLUMN_END_DATE)
+					|| column.equals(Contract.COLUMN_GUID)) {
+				continue;
+			}
+			if (column.equals(Contract.COLUMN_REPEAT_COUNT) && entry.getValue() != null) {
+				continue;
+			}
+			// packSnapshotValues leaves the valueN columns null
+			if (column.startsWith(Contract.COLUMN_VALUE) && entry.getValue() == null) {
+				continue;
+			}
+			return false;
+		}
+		return values.get(Contract.COLUMN_DATE) != null && values.get(Contract.COLUMN_PACKED_VALUES) != null;
+	}
+
+	/**
+	 * Insert a row with a cached statement for the columns in values. Must be called inside a transaction.
+	 * @return long the id of the new row, -1 on failure
+	 */
+	private long insertRow(SQLiteDatabase sqlDB, String table, ContentValues values) {
+		if (values == null || values.size() == 0) {
+			return sqlDB.insert(table, null, values);
+		}
+		try {
+			return mStatements.getInsert(sqlDB, table, values).executeInsert();
+		} catch (SQLException e) {
+			Log.e(TAG, "Error inserting into " + table, e);
+			return -1;
+		}
+	}
+
+	// one of the WheelRollupsTable periods, day if period is null, -1 if it is unknown
+	private static int toRollupsPeriod(String period) {
+		if (period == null || PERIOD_DAY.equals(period)) {
+			return WheelRollupsTable.PERIOD_DAY;
+		} else if (PERIOD_WEEK.equals(period)) {
+			return WheelRollupsTable.PERIOD_WEEK;
+		} else if (PERIOD_MONTH.equals(period)) {
+			return WheelRollupsTable.PERIOD_MONTH;
+		}
+		return -1;
+	}
+
+	/**
+	 * Compact the saved wheels of all wheel types, see {@link HistoryCompactor}, and notify the observers of the changed ones
+	 * @param olderThan age in milliseconds above which saved wheels are downsampled, 0 to only collapse identical consecutive rows
+	 * @param period {@link #PERIOD_DAY} or {@link #PERIOD_WEEK}, day if null
+	 */
+	private HistoryCompactor.Result compactHistory(long olderThan, String period) {
+		int periodToUse = toRollupsPeriod(period);
+		if (periodToUse != WheelRollupsTable.PERIOD_DAY && periodToUse != WheelRollupsTable.PERIOD_WEEK) {
+			throw new IllegalArgumentException("Unsupported period for compacting: " + period);
+		}
+		long downsampleBefore = (olderThan > 0) ? System.currentTimeMillis() - olderThan : 0;
+		Set<Integer> changedTypeIds = new HashSet<Integer>();
+		HistoryCompactor.Result result = new HistoryCompactor(mDatabase.getWritableDatabase(), downsampleBefore, periodToUse)
+				.compact(changedTypeIds);
+		invalidateHistory(changedTypeIds);
+		notifySnapshotsChanged(changedTypeIds);
+		return result;
+	}
+
+	/**
+	 * Update rows with a cached statement for the columns in values. Must be called inside a transaction.
+	 * The number of rows changed is only returned by compiled statements since API 11, older versions use SQLiteDatabase.update.
+	 * @return int number of rows updated
+	 */
+	private int updateRows(SQLiteDatabase sqlDB, String table, ContentValues values, String selection, String[] selectionArgs) {
+		if (values == null || values.size() == 0 || Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+			return sqlDB.update(table, values, selection, selectionArgs);
+		}
+		return executeUpdateDelete(mStatements.getUpdate(sqlDB, table, values, selection, selectionArgs));
+	}
+
+	@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+	private static int executeUpdateDelete(SQLiteStatement statement) {
+		return statement.executeUpdateDelete();
+	}
+
+	/**
+	 * Delete saved wheels and take them out of the rollups of their wheel types, the item rows go with them through 
+	 * ON DELETE CASCADE. Must be called inside a transaction.
+	 * @param changedTypeIds filled with the wheel types of the deleted rows
+	 * @return int number of WHEEL_PROGRESS rows deleted
+	 */
+	private int deleteSnapshots(SQLiteDatabase sqlDB, String selection, String[] selectionArgs, Set<Integer> changedTypeIds) {
+		WheelRollupsTable.Removal removal = WheelRollupsTable.collect(sqlDB, selection, selectionArgs);
+		changedTypeIds.addAll(removal.getTypeIds());
+		int rowsDeleted = sqlDB.delete(WheelValuesTable.TABLE_NAME, selection, selectionArgs);
+		WheelRollupsTable.remove(sqlDB, removal);
+		return rowsDeleted;
+	}
+
+	/**
+	 * Update saved wheels together with their item rows and rollups. Must be called inside a transaction.
+	 * @param changedTypeIds filled with the wheel types of the rows before and after the update
+	 * @return int number of WHEEL_PROGRESS rows updated
+	 */
+	private int updateSnapshots(SQLiteDatabase sqlDB, ContentValues values, String selection, String[] selectionArgs,
+			Set<Integer> changedTypeIds) {
+		WheelRollupsTable.Removal removal = WheelRollupsTable.collect(sqlDB, selection, selectionArgs);
+		changedTypeIds.addAll(removal.getTypeIds());
+		// the update may change the columns of the selection, the rows are found again by _id afterwards
+		List<Long> ids = getSnapshotIds(sqlDB, selection, selectionArgs);
+		// before the other columns change, they may be part of the selection
+		int rowsUpdated = updateWideValues(sqlDB, values, selection, selectionArgs);
+		if (values.size() > 0) {
+			rowsUpdated = updateRows(sqlDB, WheelValuesTable.TABLE_NAME, values, selection, selectionArgs);
+		}
+		for (int start = 0; start < ids.size(); start += MAX_SELECTION_ARGS) {
+			List<Long> chunk = ids.subList(start, Math.min(ids.size(), start + MAX_SELECTION_ARGS));
+			String idSelection = inSelection(Contract.COLUMN_ID, chunk.size());
+			String[] idArgs = toArgs(chunk);
+			WheelItemValuesTable.copyFromWideRows(sqlDB, idSelection, idArgs);
+			WheelRollupsTable.addRows(sqlDB, idSelection, idArgs);
+			// the rows may have moved to another wheel type
+			changedTypeIds.addAll(getSnapshotTypeIds(sqlDB, idSelection, idArgs));
+		}
+		// after the new values were added, so that a bucket keeping a row is not emptied on the way
+		WheelRollupsTable.remove(sqlDB, removal);
+		return rowsUpdated;
+	}
+
+	/**
+	 * Write the valueN columns passed by older callers into the packedValues of each saved wheel matching selection, 
+	 * the items not passed keep their value and a null value removes the item. The valueN columns are removed from values, 
+	 * they are ignored if values holds packedValues as well.
+	 * @return int number of rows updated, 0 if values holds no valueN column
+	 */
+	private static int updateWideValues(SQLiteDatabase sqlDB, ContentValues values, String selection, String[] selectionArgs) {
+		boolean packed = values.containsKey(Contract.COLUMN_PACKED_VALUES);
+		long mask = 0;
+		long wideValues = 0;
+		for (int i = 0; i < Contract.MAX_ITEMS_IN_WHEEL; i++) {
+			String column = Contract.COLUMN_VALUE + i;
+			if (!values.containsKey(column)) {
+				continue;
+			}
+			Integer value = values.getAsInteger(column);
+			values.remove(column);
+			mask |= ((1L << PackedValuesCodec.BITS_PER_VALUE) - 1) << (i * PackedValuesCodec.BITS_PER_VALUE);
+			if (value != null) {
+				wideValues = PackedValuesCodec.put(wideValues, i, value);
+			}
+		}
+		if (packed || mask == 0) {
+			return 0;
+		}
+		int rowsUpdated = 0;
+		Cursor cursor = sqlDB.query(WheelValuesTable.TABLE_NAME, new String[] { Contract.COLUMN_ID, Contract.COLUMN_PACKED_VALUES },
+				selection, selectionArgs, null, null, null);
+		SQLiteStatement statement = sqlDB.compileStatement("update " + WheelValuesTable.TABLE_NAME + " set "
+				+ Contract.COLUMN_PACKED_VALUES + " = ? where " + Contract.COLUMN_ID + " = ?");
+		try {
+			while (cursor.moveToNext()) {
+				statement.bindLong(1, (cursor.getLong(1) & ~mask) | wideValues);
+				statement.bindLong(2, cursor.getLong(0));
+				statement.execute();
+				rowsUpdated++;
+			}
+		} finally {
+			statement.close();
+			cursor.close();
+		}
 		return rowsUpdated;
 	}
 
+	private static List<Long> getSnapshotIds(SQLiteDatabase sqlDB, String selection, String[] selectionArgs) {
+		List<Long> ids = new ArrayList<Long>();
+		Cursor cursor = sqlDB.query(WheelValuesTable.TABLE_NAME, new String[] { Contract.COLUMN_ID }, selection, selectionArgs, null,
+				null, null);
+		try {
+			while (cursor.moveToNext()) {
+				ids.add(cursor.getLong(0));
+			}
+		} finally {
+			cursor.close();
+		}
+		return ids;
+	}
+
+	private static String inSelection(String column, int count) {
+		StringBuilder selection = new StringBuilder(column).append(" in (");
+		for (int i = 0; i < count; i++) {
+			selection.append(i == 0 ? "?" : ", ?");
+		}
+		return selection.append(")").toString();
+	}
+
+	private static String[] toArgs(List<Long> ids) {
+		String[] args = new String[ids.size()];
+		for (int i = 0; i < args.length; i++) {
+			args[i] = String.valueOf(ids.get(i));
+		}
+		return args;
+	}
+
+	private static Set<Integer> getSnapshotTypeIds(SQLiteDatabase sqlDB, String selection, String[] selectionArgs) {
+		return getTypeIds(sqlDB, WheelValuesTable.TABLE_NAME, Contract.COLUMN_TYPE_ID, selection, selectionArgs);
+	}
+
+	// the distinct values of a wheel type id column among the rows matching selection
+	private static Set<Integer> getTypeIds(SQLiteDatabase sqlDB, String table, String typeIdColumn, String selection,
+			String[] selectionArgs) {
+		Set<Integer> typeIds = new HashSet<Integer>();
+		Cursor cursor = sqlDB.query(true, table, new String[] { typeIdColumn }, selection,
+				selectionArgs, null, null, null, null);
+		try {
+			while (cursor.moveToNext()) {
+				typeIds.add(cursor.getInt(0));
+			}
+		} finally {
+			cursor.close();
+		}
+		return typeIds;
+	}
+
+	// a row that failed to insert within a batch fails the batch, otherwise the caller gets the -1 id as with SQLiteDatabase.insert
+	private void checkInserted(Uri uri, long id) {
+		if (id < 0 && mBatchChanges.get() != null) {
+			throw new SQLException("Failed to insert " + uri);
+		}
+	}
+
+	/**
+	 * Inserts all rows in a single transaction and notifies observers once at the end. 
+	 * If any row fails to insert none of them are inserted and an SQLException is thrown.
+	 * @return int number of rows inserted
+	 */
+	@Override
+	public int bulkInsert(Uri uri, ContentValues[] values) {
+		SQLiteDatabase sqlDB = mDatabase.getWritableDatabase();
+		beginBatch(sqlDB);
+		boolean successful = false;
+		try {
+			for (ContentValues row : values) {
+				insert(uri, row);
+			}
+			sqlDB.setTransactionSuccessful();
+			successful = true;
+		} finally {
+			endBatch(sqlDB, successful);
+		}
+		// a row that fails to insert throws and rolls back the whole batch, so getting here means every row was inserted
+		return values.length;
+	}
+
+	/**
+	 * Applies all operations in a single transaction and notifies observers once at the end. 
+	 * If any operation fails none of them are applied.
+	 */
+	@Override
+	public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+			throws OperationApplicationException {
+		SQLiteDatabase sqlDB = mDatabase.getWritableDatabase();
+		beginBatch(sqlDB);
+		boolean successful = false;
+		try {
+			ContentProviderResult[] results = super.applyBatch(operations);
+			sqlDB.setTransactionSuccessful();
+			successful = true;
+			return results;
+		} catch (SQLException e) {
+			throw new OperationApplicationException("Batch rolled back", e);
+		} finally {
+			endBatch(sqlDB, successful);
+		}
+	}
+
+	private void beginBatch(SQLiteDatabase sqlDB) {
+		sqlDB.beginTransaction();
+		mBatchChanges.set(new LinkedHashSet<Uri>());
+		mBatchCommitActions.set(new ArrayList<Runnable>());
+	}
+
+	private void endBatch(SQLiteDatabase sqlDB, boolean successful) {
+		Set<Uri> changes = mBatchChanges.get();
+		List<Runnable> commitActions = mBatchCommitActions.get();
+		mBatchChanges.remove();
+		mBatchCommitActions.remove();
+		sqlDB.endTransaction();
+		if (successful) {
+			for (Runnable action : commitActions) {
+				action.run();
+			}
+			for (Uri uri : changes) {
+				notifyChange(uri);
+			}
+		}
+	}
+
+	// runs action right away, or once the batch commits if called from within one
+	private void afterCommit(Runnable action) {
+		List<Runnable> commitActions = mBatchCommitActions.get();
+		if (commitActions != null) {
+			commitActions.add(action);
+		} else {
+			action.run();
+		}
+	}
+
+	// must be called once the save is committed, or from within a batch
+	private void addToHistory(final int typeId, final long id, final long date, final long packedValues) {
+		if (mDatabaseName != null) {
+			return;
+		}
+		afterCommit(new Runnable() {
+			@Override
+			public void run() {
+				WheelHistoryStore.getInstance().onSnapshotInserted(typeId, id, date, packedValues);
+			}
+		});
+	}
+
+	// must be called once the change is committed, or from within a batch
+	private void invalidateHistory(final Collection<Integer> typeIds) {
+		if (mDatabaseName != null) {
+			return;
+		}
+		afterCommit(new Runnable() {
+			@Override
+			public void run() {
+				for (Integer typeId : typeIds) {
+					WheelHistoryStore.getInstance().invalidate(typeId);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Notify the observers of the saved values of the given wheel types only. 
+	 * The lists of all saved values and the dashboard summary are notified as well since they hold rows of every type.
+	 */
+	private void notifySnapshotsChanged(Collection<Integer> typeIds) {
+		if (typeIds.isEmpty()) {
+			return;
+		}
+		for (Integer typeId : typeIds) {
+			notifyChange(getProgressUri(typeId));
+			notifyChange(ContentUris.withAppendedId(CONTENT_ROLLUPS_URI, typeId));
+			notifyChange(ContentUris.withAppendedId(CONTENT_ITEM_VALUES_URI, typeId));
+		}
+		notifyChange(CONTENT_PROGRESS_URI);
+		notifyChange(CONTENT_WHEEL_SUMMARY_URI);
+		notifyChange(CONTENT_CHANGES_URI);
+	}
+
+	// every type list reads all types, the single type uris are below CONTENT_WHEEL_TYPES_SINGLE_URI
+	private void notifyTypesChanged() {
+		notifyChange(CONTENT_WHEEL_TYPES_SINGLE_URI);
+		notifyChange(CONTENT_WHEEL_TYPES_URI);
+		notifyChange(CONTENT_WHEEL_SUMMARY_URI);
+		notifyChange(CONTENT_CHANGES_URI);
+	}
+
+	// observers are notified once the debounce window ends, and not before the batch commits if called from within one.
+	// cached results are dropped right away and again once the batch commits, so none are cached from before the commit
+	private void notifyChange(Uri uri) {
+		mQueryCache.invalidate(uri);
+		Set<Uri> batchChanges = mBatchChanges.get();
+		if (batchChanges != null) {
+			batchChanges.add(uri);
+		} else {
+			mChangeNotifier.notifyChange(uri);
+		}
+	}
+
+	/**
+	 * Returns the query cache counters for {@link #METHOD_QUERY_CACHE_STATS}, 
+	 * in {@link #STATS_HITS}, {@link #STATS_MISSES} and {@link #STATS_EVICTIONS}, and compacts the saved wheels for {@link #METHOD_COMPACT}
+	 */
+	@Override
+	public Bundle call(String method, String arg, Bundle extras) {
+		if (METHOD_QUERY_CACHE_STATS.equals(method)) {
+			Bundle stats = new Bundle();
+			stats.putInt(STATS_HITS, mQueryCache.hitCount());
+			stats.putInt(STATS_MISSES, mQueryCache.missCount());
+			stats.putInt(STATS_EVICTIONS, mQueryCache.evictionCount());
+			return stats;
+		}
+		if (METHOD_COMPACT.equals(method)) {
+			HistoryCompactor.Result result = compactHistory(extras.getLong(COMPACT_OLDER_THAN),
+					extras.getString(QUERY_PARAMETER_PERIOD));
+			Bundle compacted = new Bundle();
+			compacted.putInt(COMPACT_ROWS_REMOVED, result.rowsRemoved);
+			compacted.putLong(COMPACT_BYTES_RECLAIMED, result.bytesReclaimed);
+			return compacted;
+		}
+		return super.call(method, arg, extras);
+	}
+
+	// a new wheel type gets a guid and the time of its creation as its last change, unless it comes from another device
+	private static void putSyncColumns(ContentValues values) {
+		if (values.getAsString(Contract.COLUMN_GUID) == null) {
+			values.put(Contract.COLUMN_GUID, UUID.randomUUID().toString());
+		}
+		if (!values.containsKey(Contract.COLUMN_MODIFIED)) {
+			values.put(Contract.COLUMN_MODIFIED, System.currentTimeMillis());
+		}
+	}
+
+	/**
+	 * Callers may still pass the item values as valueN columns, those are moved into packedValues. 
+	 * The valueN columns are always written as null so that they take no space in the row.
+	 */
+	private static void packSnapshotValues(ContentValues values) {
+		boolean packed = values.containsKey(Contract.COLUMN_PACKED_VALUES);
+		long packedValues = 0;
+		for (int i = 0; i < Contract.MAX_ITEMS_IN_WHEEL; i++) {
+			Integer value = values.getAsInteger(Contract.COLUMN_VALUE + i);
+			if (!packed && value != null) {
+				packedValues = PackedValuesCodec.put(packedValues, i, value);
+			}
+			values.putNull(Contract.COLUMN_VALUE + i);
+		}
+		if (!packed) {
+			values.put(Contract.COLUMN_PACKED_VALUES, packedValues);
+		}
+	}
+
 	private String addFirstToSelection(String columnIdString, String selection) {
 		String newSelection;
 		if (TextUtils.isEmpty(selection)) {
@@ -264,18 +1499,31 @@ public class WheelContentProvider extends ContentProvider {
 		return newSelection;
 	}
 
+	private String addFirstConditionToSelection(String condition, String selection) {
+		if (TextUtils.isEmpty(selection)) {
+			return condition;
+		}
+		return "(" + condition + ") and (" + selection + ")";
+	}
+
 	private String[] addFirstToSelectionArgs(String id, String[] arr) {
+		return addFirstToSelectionArgs(new String[] { id }, arr);
+	}
+
+	private String[] addFirstToSelectionArgs(String[] first, String[] arr) {
 		String[] retArgs;
 
 		if (arr == null) {
-			retArgs = new String[1];
+			retArgs = new String[first.length];
 		} else {
-			retArgs = new String[arr.length + 1];
-			for (int i = 1; i < retArgs.length; i++) {
-				retArgs[i] = arr[i - 1];
+			retArgs = new String[arr.length + first.length];
+			for (int i = first.length; i < retArgs.length; i++) {
+				retArgs[i] = arr[i - first.length];
 			}
 		}
-		retArgs[0] = id;
+		for (int i = 0; i < first.length; i++) {
+			retArgs[i] = first[i];
+		}
 		return retArgs;
 	}
 
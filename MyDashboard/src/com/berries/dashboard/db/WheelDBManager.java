@@ -23,33 +23,129 @@ THE SOFTWARE.
  */
 package com.berries.dashboard.db;
 
+import com.berries.dashboard.db.tables.ChangeLogTable;
+import com.berries.dashboard.db.tables.MigrationsTable;
+import com.berries.dashboard.db.tables.WheelItemValuesTable;
+import com.berries.dashboard.db.tables.WheelRollupsTable;
+import com.berries.dashboard.db.tables.WheelTypesSearchTable;
+import com.berries.dashboard.db.tables.WheelTypesSummaryView;
 import com.berries.dashboard.db.tables.WheelTypesTable;
 import com.berries.dashboard.db.tables.WheelValuesTable;
 
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
 
+/**
+ * Opens mydashboarddb. When write-ahead logging is available, reads go to a separate read-only connection 
+ * so that a save in progress does not block the loaders reading wheels and history.
+ */
 public class WheelDBManager extends SQLiteOpenHelper {
 
-	@SuppressWarnings("unused")
 	private static final String TAG = WheelDBManager.class.getSimpleName();
 	private static final String DATABASE_NAME = "mydashboarddb";
-	private static final int DATABASE_VERSION = 2;
+	private static final int DATABASE_VERSION = 13;
+
+	private boolean mWriteAheadLogging;
+	private SQLiteDatabase mReaderDatabase;
 
 	public WheelDBManager(Context context) {
-		super(context, DATABASE_NAME, null, DATABASE_VERSION);
+		this(context, DATABASE_NAME);
+	}
+
+	/**
+	 * @param context
+	 * @param name of a database other than mydashboarddb, e.g. a scratch database of the benchmarks
+	 */
+	public WheelDBManager(Context context, String name) {
+		super(context, name, null, DATABASE_VERSION);
+	}
+
+	@Override
+	public void onOpen(SQLiteDatabase database) {
+		super.onOpen(database);
+		if (!database.isReadOnly()) {
+			// SQLite leaves foreign keys unenforced unless asked for every connection, deleting a wheel type relies on the cascade
+			database.execSQL("PRAGMA foreign_keys = ON;");
+			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+				mWriteAheadLogging = enableWriteAheadLogging(database);
+			}
+		}
+	}
+
+	@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+	private static boolean enableWriteAheadLogging(SQLiteDatabase database) {
+		return database.enableWriteAheadLogging();
+	}
+
+	/**
+	 * @return SQLiteDatabase a read-only connection that can run alongside a write in progress, 
+	 * or the writable database if write-ahead logging is not available on this device
+	 */
+	public synchronized SQLiteDatabase getReaderDatabase() {
+		// opening the writable database first makes sure the schema is created/upgraded before anyone reads
+		SQLiteDatabase writer = getWritableDatabase();
+		if (!mWriteAheadLogging) {
+			return writer;
+		}
+		if (mReaderDatabase == null || !mReaderDatabase.isOpen()) {
+			mReaderDatabase = SQLiteDatabase.openDatabase(writer.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+		}
+		return mReaderDatabase;
+	}
+
+	@Override
+	public synchronized void close() {
+		if (mReaderDatabase != null) {
+			mReaderDatabase.close();
+			mReaderDatabase = null;
+		}
+		super.close();
 	}
 
 	@Override
 	public void onCreate(SQLiteDatabase database) {
+		// SQLiteOpenHelper already wraps this call in a transaction, the schema and default wheels are committed once
+		long start = SystemClock.uptimeMillis();
 		WheelValuesTable.onCreate(database);
 		WheelTypesTable.onCreate(database);
+		MigrationsTable.onCreate(database);
+		WheelItemValuesTable.onCreate(database);
+		WheelRollupsTable.onCreate(database);
+		WheelTypesSummaryView.onCreate(database);
+		WheelTypesSearchTable.onCreate(database);
+		ChangeLogTable.onCreate(database);
+		Log.i(TAG, "Created database in " + (SystemClock.uptimeMillis() - start) + " ms");
 	}
 
 	@Override
-	public void onUpgrade(SQLiteDatabase database, int arg1, int arg2) {
-		// First iteration - do nothing
+	public void onUpgrade(SQLiteDatabase database, int oldVersion, int newVersion) {
+		// SQLiteOpenHelper already wraps this call in a transaction, so a failing step leaves the old schema untouched
+		migrate(database, oldVersion, newVersion);
+	}
+
+	/**
+	 * Brings the schema from oldVersion to newVersion by applying every intermediate version step in order.
+	 * Each table decides what a given step means for it in its own onUpgrade.
+	 * @param database
+	 * @param oldVersion the version the database is currently at
+	 * @param newVersion the version to upgrade to
+	 */
+	public static void migrate(SQLiteDatabase database, int oldVersion, int newVersion) {
+		for (int version = oldVersion + 1; version <= newVersion; version++) {
+			WheelValuesTable.onUpgrade(database, version - 1, version);
+			WheelTypesTable.onUpgrade(database, version - 1, version);
+			MigrationsTable.onUpgrade(database, version - 1, version);
+			WheelItemValuesTable.onUpgrade(database, version - 1, version);
+			WheelRollupsTable.onUpgrade(database, version - 1, version);
+			WheelTypesSummaryView.onUpgrade(database, version - 1, version);
+			WheelTypesSearchTable.onUpgrade(database, version - 1, version);
+			ChangeLogTable.onUpgrade(database, version - 1, version);
+		}
 	}
 
 }
@@ -0,0 +1,232 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package com.berries.dashboard.db;
+
+import com.berries.dashboard.db.tables.Contract;
+import com.berries.dashboard.db.tables.PackedValuesCodec;
+
+/**
+ * In-memory copy of the saved values of one wheel type, oldest first. 
+ * Dates and ids are held in long arrays and the values in one byte array per item, all growing by doubling, 
+ * so lookups are binary searches over primitive arrays and reading a row allocates nothing. 
+ * Rows are addressed by index, see {@link #latest()}, {@link #asOf(long)}, {@link #rangeStart(long)} and {@link #rangeEnd(long)}.
+ * Instances are kept up to date by WheelContentProvider through {@link WheelHistoryStore}.
+ */
+public class WheelHistory {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final int mTypeId;
+	private int mSize;
+	// sorted by date, then by id
+	private long[] mDates;
+	private long[] mIds;
+	private final byte[][] mValues = new byte[Contract.MAX_ITEMS_IN_WHEEL][];
+
+	WheelHistory(int typeId, int capacity) {
+		mTypeId = typeId;
+		int initialCapacity = Math.max(capacity, INITIAL_CAPACITY);
+		mDates = new long[initialCapacity];
+		mIds = new long[initialCapacity];
+		for (int i = 0; i < mValues.length; i++) {
+			mValues[i] = new byte[initialCapacity];
+		}
+	}
+
+	/** @return int the wheel type id */
+	public int getTypeId() {
+		return mTypeId;
+	}
+
+	/** @return int the number of saved wheels */
+	public synchronized int size() {
+		return mSize;
+	}
+
+	/** @return long the time in milliseconds at which the row at index was saved */
+	public synchronized long getDate(int index) {
+		checkIndex(index);
+		return mDates[index];
+	}
+
+	/** @return long the WHEEL_PROGRESS id of the row at index */
+	public synchronized long getId(int index) {
+		checkIndex(index);
+		return mIds[index];
+	}
+
+	/** @return int the value of the item of the row at index, 0 if the row has no such item */
+	public synchronized int getValue(int index, int item) {
+		checkIndex(index);
+		return mValues[item][index];
+	}
+
+	/**
+	 * Copy the values of the row at index
+	 * @param index
+	 * @param values receives the values of the first count items
+	 * @param count
+	 */
+	public synchronized void getValues(int index, int[] values, int count) {
+		checkIndex(index);
+		for (int i = 0; i < count; i++) {
+			values[i] = mValues[i][index];
+		}
+	}
+
+	/** @return int index of the newest row, -1 if nothing was saved */
+	public synchronized int latest() {
+		return mSize - 1;
+	}
+
+	/** @return int index of the newest row saved at or before time, -1 if there is none */
+	public synchronized int asOf(long time) {
+		// the first row after time, minus one
+		return upperBound(time) - 1;
+	}
+
+	/** @return int index of the first row saved at or after from, {@link #size()} if there is none */
+	public synchronized int rangeStart(long from) {
+		return lowerBound(from);
+	}
+
+	/** @return int index after the last row saved before to, rows [rangeStart(from), rangeEnd(to)) are in the range */
+	public synchronized int rangeEnd(long to) {
+		return lowerBound(to);
+	}
+
+	/** @return int index of the row with the given date & id, -1 if there is none */
+	public synchronized int indexOf(long date, long id) {
+		int index = search(date, id);
+		return (index >= 0) ? index : -1;
+	}
+
+	/**
+	 * Add a saved wheel, rows that are already held are ignored
+	 * @param id WHEEL_PROGRESS id
+	 * @param date
+	 * @param packedValues see {@link PackedValuesCodec}
+	 */
+	synchronized void add(long id, long date, long packedValues) {
+		int index = search(date, id);
+		if (index >= 0) {
+			return;
+		}
+		index = -(index + 1);
+		if (mSize == mDates.length) {
+			grow();
+		}
+		// saves normally come in date order and are appended, older ones are moved in place
+		int moved = mSize - index;
+		if (moved > 0) {
+			System.arraycopy(mDates, index, mDates, index + 1, moved);
+			System.arraycopy(mIds, index, mIds, index + 1, moved);
+			for (byte[] column : mValues) {
+				System.arraycopy(column, index, column, index + 1, moved);
+			}
+		}
+		mDates[index] = date;
+		mIds[index] = id;
+		for (int i = 0; i < mValues.length; i++) {
+			mValues[i][index] = (byte) PackedValuesCodec.valueAt(packedValues, i);
+		}
+		mSize++;
+	}
+
+	private void grow() {
+		int capacity = mDates.length * 2;
+		long[] dates = new long[capacity];
+		long[] ids = new long[capacity];
+		System.arraycopy(mDates, 0, dates, 0, mSize);
+		System.arraycopy(mIds, 0, ids, 0, mSize);
+		mDates = dates;
+		mIds = ids;
+		for (int i = 0; i < mValues.length; i++) {
+			byte[] column = new byte[capacity];
+			System.arraycopy(mValues[i], 0, column, 0, mSize);
+			mValues[i] = column;
+		}
+	}
+
+	// index of the row, or -(insertion point) - 1 like Arrays.binarySearch
+	private int search(long date, long id) {
+		int low = 0;
+		int high = mSize - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int compare = compare(mDates[mid], mIds[mid], date, id);
+			if (compare < 0) {
+				low = mid + 1;
+			} else if (compare > 0) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+
+	// first index with a date >= time
+	private int lowerBound(long time) {
+		int low = 0;
+		int high = mSize;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (mDates[mid] < time) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	// first index with a date > time
+	private int upperBound(long time) {
+		int low = 0;
+		int high = mSize;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (mDates[mid] <= time) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private static int compare(long date1, long id1, long date2, long id2) {
+		if (date1 != date2) {
+			return (date1 < date2) ? -1 : 1;
+		}
+		return (id1 < id2) ? -1 : ((id1 == id2) ? 0 : 1);
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= mSize) {
+			throw new IndexOutOfBoundsException("Index " + index + " out of " + mSize + " saved wheels");
+		}
+	}
+}
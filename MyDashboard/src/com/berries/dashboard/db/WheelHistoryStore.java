@@ -0,0 +1,143 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package com.berries.dashboard.db;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.support.v4.util.LruCache;
+import android.util.SparseIntArray;
+
+import com.berries.dashboard.db.tables.Contract;
+
+/**
+ * Holds the {@link WheelHistory} of the wheel types viewed last. A history is read from the provider once 
+ * and then kept current by WheelContentProvider: new saves are added to it once committed, 
+ * any other change to the saved wheels of a type drops its history so that it is read again on next use.
+ */
+public class WheelHistoryStore {
+
+	// number of wheel types kept in memory
+	private static final int MAX_TYPES = 4;
+	// a load that keeps racing with writes gives up installing its result
+	private static final int MAX_LOAD_ATTEMPTS = 3;
+	private static final String[] PROJECTION = { Contract.COLUMN_ID, Contract.COLUMN_DATE, Contract.COLUMN_PACKED_VALUES };
+	private static final String SORT_ORDER = Contract.COLUMN_DATE + " ASC, " + Contract.COLUMN_ID + " ASC";
+
+	private static final WheelHistoryStore sInstance = new WheelHistoryStore();
+
+	private final LruCache<Integer, WheelHistory> mHistories = new LruCache<Integer, WheelHistory>(MAX_TYPES);
+	// moves forward on every change of a type, a history read before a change is not installed
+	private final SparseIntArray mGenerations = new SparseIntArray();
+	// moves forward on every change of a type other than a save
+	private final SparseIntArray mRewrites = new SparseIntArray();
+
+	public static WheelHistoryStore getInstance() {
+		return sInstance;
+	}
+
+	private WheelHistoryStore() {
+	}
+
+	/**
+	 * @param typeId
+	 * @return WheelHistory the history of the type if it is in memory, null otherwise
+	 */
+	public WheelHistory get(int typeId) {
+		return mHistories.get(typeId);
+	}
+
+	/**
+	 * Return the history of the type, reading it from the provider if it is not in memory. Must not be called on the main thread.
+	 * @param resolver
+	 * @param typeId
+	 * @return WheelHistory
+	 */
+	public WheelHistory load(ContentResolver resolver, int typeId) {
+		WheelHistory history = mHistories.get(typeId);
+		if (history != null) {
+			return history;
+		}
+		for (int attempt = 0; attempt < MAX_LOAD_ATTEMPTS; attempt++) {
+			int generation = getGeneration(typeId);
+			history = read(resolver, typeId);
+			synchronized (this) {
+				if (generation == getGeneration(typeId)) {
+					mHistories.put(typeId, history);
+					return history;
+				}
+			}
+		}
+		// the type kept changing while it was read, good for this caller but not kept
+		return history;
+	}
+
+	/**
+	 * @param typeId
+	 * @return int a count that moves forward whenever saved wheels of the type are deleted or changed. 
+	 * While it stays the same the saved wheels of the type only had new saves added
+	 */
+	public synchronized int getRewriteCount(int typeId) {
+		return mRewrites.get(typeId);
+	}
+
+	/** Called by the provider once a save was committed */
+	synchronized void onSnapshotInserted(int typeId, long id, long date, long packedValues) {
+		bumpGeneration(typeId);
+		WheelHistory history = mHistories.get(typeId);
+		if (history != null) {
+			history.add(id, date, packedValues);
+		}
+	}
+
+	/** Called by the provider once a change other than a save was committed */
+	synchronized void invalidate(int typeId) {
+		bumpGeneration(typeId);
+		mRewrites.put(typeId, mRewrites.get(typeId) + 1);
+		mHistories.remove(typeId);
+	}
+
+	private synchronized int getGeneration(int typeId) {
+		return mGenerations.get(typeId);
+	}
+
+	private void bumpGeneration(int typeId) {
+		mGenerations.put(typeId, mGenerations.get(typeId) + 1);
+	}
+
+	private static WheelHistory read(ContentResolver resolver, int typeId) {
+		Cursor cursor = resolver.query(WheelContentProvider.getProgressUri(typeId), PROJECTION, null, null, SORT_ORDER);
+		if (cursor == null) {
+			return new WheelHistory(typeId, 0);
+		}
+		try {
+			WheelHistory history = new WheelHistory(typeId, cursor.getCount());
+			while (cursor.moveToNext()) {
+				history.add(cursor.getLong(0), cursor.getLong(1), cursor.getLong(2));
+			}
+			return history;
+		} finally {
+			cursor.close();
+		}
+	}
+}
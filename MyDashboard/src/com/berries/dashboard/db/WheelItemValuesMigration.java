@@ -0,0 +1,90 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package com.berries.dashboard.db;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import com.berries.dashboard.db.tables.Contract;
+import com.berries.dashboard.db.tables.MigrationsTable;
+import com.berries.dashboard.db.tables.WheelItemValuesTable;
+
+/**
+ * Copies the WHEEL_PROGRESS rows that were saved before WHEEL_ITEM_VALUES existed into it. 
+ * The work is split into small transactions so the database stays available to the UI while the copy runs, 
+ * and the position reached is stored in MIGRATIONS so a killed process continues where it stopped.
+ */
+public class WheelItemValuesMigration implements Runnable {
+
+	private static final String TAG = WheelItemValuesMigration.class.getSimpleName();
+	private static final int CHUNK_SIZE = 500;
+	// give readers a chance between chunks
+	private static final long PAUSE_BETWEEN_CHUNKS_MS = 20;
+
+	private final WheelDBManager mDatabase;
+
+	public WheelItemValuesMigration(WheelDBManager database) {
+		mDatabase = database;
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (migrateChunk(mDatabase.getWritableDatabase(), CHUNK_SIZE)) {
+				Thread.sleep(PAUSE_BETWEEN_CHUNKS_MS);
+			}
+		} catch (InterruptedException e) {
+			// will continue from the last chunk next time
+		}
+	}
+
+	/**
+	 * Copy the next chunk of wide rows
+	 * @param database
+	 * @param chunkSize max number of ids to walk over
+	 * @return true if there are more rows left to copy
+	 */
+	public static boolean migrateChunk(SQLiteDatabase database, int chunkSize) {
+		database.beginTransaction();
+		try {
+			long[] progress = MigrationsTable.getProgress(database, WheelItemValuesTable.MIGRATION_NAME);
+			if (progress == null || progress[0] >= progress[1]) {
+				return false;
+			}
+			long chunkEnd = Math.min(progress[0] + chunkSize, progress[1]);
+			WheelItemValuesTable.copyFromWideRows(database, Contract.COLUMN_ID + " > ? and " + Contract.COLUMN_ID + " <= ?",
+					new String[] { String.valueOf(progress[0]), String.valueOf(chunkEnd) });
+			MigrationsTable.setLastId(database, WheelItemValuesTable.MIGRATION_NAME, chunkEnd);
+			database.setTransactionSuccessful();
+			if (chunkEnd >= progress[1]) {
+				Log.i(TAG, "Copied " + progress[1] + " saved wheels into " + WheelItemValuesTable.TABLE_NAME);
+				return false;
+			}
+			return true;
+		} finally {
+			database.endTransaction();
+		}
+	}
+
+}
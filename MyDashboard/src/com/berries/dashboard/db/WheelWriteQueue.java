@@ -0,0 +1,258 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package com.berries.dashboard.db;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.RemoteException;
+import android.util.Log;
+
+/**
+ * Write-behind queue for the writes made from the UI. Writes are queued and return right away, 
+ * a single writer thread applies them in batches through {@link WheelContentProvider#applyBatch(ArrayList)}, 
+ * so each batch is one transaction. When a batch fails its writes are applied again one at a time, 
+ * so that a bad write does not take the others of its batch down with it. 
+ * A write that is still queued is replaced by a newer write with the same coalesce key, both callbacks are called 
+ * with the result of the newer one. Callbacks are called on the main thread. 
+ * Call {@link #flush()} to wait for everything queued to be written and {@link #shutdown()} when the app is done with the queue, 
+ * the writer thread then writes what is left and stops.
+ */
+public class WheelWriteQueue {
+
+	/** Called on the main thread once a queued write was applied or failed */
+	public interface Callback {
+		/**
+		 * @param result the result of the operation, null if the operation failed
+		 */
+		void onWriteComplete(ContentProviderResult result);
+	}
+
+	private static final String TAG = WheelWriteQueue.class.getSimpleName();
+	// keeps a single transaction short enough not to hold off the readers
+	private static final int MAX_BATCH_SIZE = 50;
+
+	private static WheelWriteQueue sInstance;
+
+	private final ContentResolver mResolver;
+	private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+	private final Object mLock = new Object();
+	// in the order queued, writes without a coalesce key get a key of their own
+	private final LinkedHashMap<Object, Write> mPending = new LinkedHashMap<Object, Write>();
+	private int mInFlight;
+	private boolean mShutdown;
+	private Thread mWriter;
+
+	/**
+	 * @param context
+	 * @return WheelWriteQueue the queue shared by the application, a new one if the previous one was shut down
+	 */
+	public static synchronized WheelWriteQueue getInstance(Context context) {
+		if (sInstance == null) {
+			sInstance = new WheelWriteQueue(context.getApplicationContext().getContentResolver());
+		}
+		return sInstance;
+	}
+
+	/**
+	 * A queue of its own, writing through the given resolver instead of the one of the application. 
+	 * Use {@link #getInstance(Context)} for the writes made from the UI.
+	 * @param resolver
+	 */
+	public WheelWriteQueue(ContentResolver resolver) {
+		mResolver = resolver;
+	}
+
+	/**
+	 * Queue a write, returns without waiting for it
+	 * @param operation an operation on one of the {@link WheelContentProvider} uris
+	 * @param coalesceKey replaces a queued write with the same key, null to never replace 
+	 * @param callback may be null
+	 */
+	public void enqueue(ContentProviderOperation operation, Object coalesceKey, Callback callback) {
+		if (operation == null) {
+			throw new IllegalArgumentException("Cannot queue a null operation");
+		}
+		synchronized (mLock) {
+			if (mShutdown) {
+				throw new IllegalStateException("Write queue was shut down");
+			}
+			Object key = (coalesceKey == null) ? new Object() : coalesceKey;
+			Write write = new Write(operation, callback);
+			Write replaced = mPending.get(key);
+			if (replaced != null) {
+				write.callbacks.addAll(0, replaced.callbacks);
+			}
+			// keeps the position of the replaced write
+			mPending.put(key, write);
+			if (mWriter == null) {
+				mWriter = new Thread(mWriterLoop, TAG);
+				mWriter.start();
+			}
+			mLock.notifyAll();
+		}
+	}
+
+	/**
+	 * Blocks until all writes queued so far are applied. 
+	 * When called on the main thread the callbacks of those writes are delivered after this returns.
+	 */
+	public void flush() {
+		synchronized (mLock) {
+			while (!mPending.isEmpty() || (mInFlight > 0)) {
+				try {
+					mLock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stops the writer thread once it has written everything queued, returns without waiting for it. 
+	 * The next {@link #getInstance(Context)} creates a new queue.
+	 */
+	public void shutdown() {
+		synchronized (WheelWriteQueue.class) {
+			if (sInstance == this) {
+				sInstance = null;
+			}
+		}
+		synchronized (mLock) {
+			mShutdown = true;
+			mLock.notifyAll();
+		}
+	}
+
+	private final Runnable mWriterLoop = new Runnable() {
+		@Override
+		public void run() {
+			Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+			while (true) {
+				List<Write> batch;
+				synchronized (mLock) {
+					while (mPending.isEmpty() && !mShutdown) {
+						try {
+							mLock.wait();
+						} catch (InterruptedException e) {
+							// only stops once the queue is empty
+						}
+					}
+					if (mPending.isEmpty()) {
+						mWriter = null;
+						mLock.notifyAll();
+						return;
+					}
+					batch = takeBatch();
+					mInFlight = batch.size();
+				}
+				apply(batch);
+				synchronized (mLock) {
+					mInFlight = 0;
+					mLock.notifyAll();
+				}
+			}
+		}
+	};
+
+	// called with mLock held
+	private List<Write> takeBatch() {
+		List<Write> batch = new ArrayList<Write>(Math.min(mPending.size(), MAX_BATCH_SIZE));
+		Iterator<Write> iterator = mPending.values().iterator();
+		while (iterator.hasNext() && (batch.size() < MAX_BATCH_SIZE)) {
+			batch.add(iterator.next());
+			iterator.remove();
+		}
+		return batch;
+	}
+
+	private void apply(final List<Write> batch) {
+		ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>(batch.size());
+		for (Write write : batch) {
+			operations.add(write.operation);
+		}
+		ContentProviderResult[] results = applyBatch(operations, (batch.size() == 1) ? "queued operation on " + operations.get(0).getUri()
+				: batch.size() + " queued operations");
+		if ((results == null) && (batch.size() > 1)) {
+			// the whole batch was rolled back, applying the writes one by one leaves only the bad ones unwritten
+			results = new ContentProviderResult[batch.size()];
+			for (int i = 0; i < batch.size(); i++) {
+				ArrayList<ContentProviderOperation> single = new ArrayList<ContentProviderOperation>(1);
+				single.add(operations.get(i));
+				ContentProviderResult[] result = applyBatch(single, "queued operation on " + operations.get(i).getUri());
+				results[i] = (result == null) ? null : result[0];
+			}
+		}
+		final ContentProviderResult[] batchResults = results;
+		mMainHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 0; i < batch.size(); i++) {
+					ContentProviderResult result = (batchResults == null) ? null : batchResults[i];
+					for (Callback callback : batch.get(i).callbacks) {
+						callback.onWriteComplete(result);
+					}
+				}
+			}
+		});
+	}
+
+	/** @return ContentProviderResult[] null if the operations failed and were rolled back, the failure is logged */
+	private ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations, String description) {
+		try {
+			return mResolver.applyBatch(WheelContentProvider.AUTHORITY, operations);
+		} catch (RemoteException e) {
+			Log.e(TAG, "Failed to write " + description, e);
+		} catch (OperationApplicationException e) {
+			Log.e(TAG, "Failed to write " + description, e);
+		} catch (RuntimeException e) {
+			Log.e(TAG, "Failed to write " + description, e);
+		}
+		return null;
+	}
+
+	private static class Write {
+		final ContentProviderOperation operation;
+		final List<Callback> callbacks = new ArrayList<Callback>(1);
+
+		Write(ContentProviderOperation operation, Callback callback) {
+			this.operation = operation;
+			if (callback != null) {
+				callbacks.add(callback);
+			}
+		}
+	}
+}
@@ -0,0 +1,191 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package com.berries.dashboard.db.tables;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Definition of CHANGE_LOG, one row for every insert, update and delete of WHEEL_PROGRESS and WHEEL_TYPES. 
+ * The table has the following columns
+ * <p>seq, tableName, operation, rowId, typeId, guid</p>
+ * seq is an autoincrement key, so it grows with every change and is never reused, not even once older rows are pruned. 
+ * The rows are written by triggers, in the same transaction as the change itself, including the rows removed through ON DELETE CASCADE. 
+ * guid (since version 13) is the one of the changed row, so a delete can still be told to other devices.
+ * <p>
+ * Consumers keep their position, the seq of the last change they applied, in MIGRATIONS under {@link #CONSUMER_PREFIX} and their name. 
+ * Changes are only logged while there is a consumer, and the ones every consumer has applied are pruned.
+ * </p>
+ */
+public class ChangeLogTable {
+
+	public static final String TABLE_NAME = "CHANGE_LOG";
+
+	public static final int OPERATION_INSERT = 1;
+	public static final int OPERATION_UPDATE = 2;
+	public static final int OPERATION_DELETE = 3;
+
+	/** Prefix of the MIGRATIONS names holding the position of a consumer */
+	public static final String CONSUMER_PREFIX = "changes:";
+	// all names starting with the prefix, ';' follows ':', written as a range so the primary key index is used
+	private static final String CONSUMERS_SELECTION = Contract.COLUMN_NAME + " >= '" + CONSUMER_PREFIX + "' and " + Contract.COLUMN_NAME
+			+ " < 'changes;'";
+
+	private static final String DATABASE_CREATE_START = "create table " + TABLE_NAME + " ("
+			+ Contract.COLUMN_SEQ + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+			+ Contract.COLUMN_TABLE + " TEXT NOT NULL, "
+			+ Contract.COLUMN_OPERATION + " INTEGER NOT NULL, "
+			+ Contract.COLUMN_ROW_ID + " INTEGER NOT NULL, "
+			+ Contract.COLUMN_TYPE_ID + " INTEGER NOT NULL";
+	private static final String DATABASE_CREATE = DATABASE_CREATE_START + ", " + Contract.COLUMN_GUID + " TEXT);";
+	// the table as version 12 created it, the guid column was added in version 13
+	private static final String DATABASE_CREATE_VERSION_12 = DATABASE_CREATE_START + ");";
+
+	private static final String[] PROJECTION = { Contract.COLUMN_SEQ, Contract.COLUMN_TABLE, Contract.COLUMN_OPERATION,
+			Contract.COLUMN_ROW_ID, Contract.COLUMN_TYPE_ID, Contract.COLUMN_GUID };
+	private static final String[] EVENTS = { "insert", "update", "delete" };
+	private static final int[] OPERATIONS = { OPERATION_INSERT, OPERATION_UPDATE, OPERATION_DELETE };
+
+	public static void onCreate(SQLiteDatabase database) {
+		database.execSQL(DATABASE_CREATE);
+		createTriggers(database, WheelValuesTable.TABLE_NAME, Contract.COLUMN_TYPE_ID, true);
+		createTriggers(database, WheelTypesTable.TABLE_NAME, Contract.COLUMN_ID, true);
+	}
+
+	/**
+	 * Upgrades the table by a single version step, newVersion is always oldVersion + 1
+	 * @see com.berries.dashboard.db.WheelDBManager#migrate(SQLiteDatabase, int, int)
+	 */
+	public static void onUpgrade(SQLiteDatabase database, int oldVersion, int newVersion) {
+		switch (newVersion) {
+		case 12:
+			// the tables get their guid in the next step, the triggers could not be compiled before
+			database.execSQL(DATABASE_CREATE_VERSION_12);
+			createTriggers(database, WheelValuesTable.TABLE_NAME, Contract.COLUMN_TYPE_ID, false);
+			createTriggers(database, WheelTypesTable.TABLE_NAME, Contract.COLUMN_ID, false);
+			break;
+		case 13:
+			database.execSQL("alter table " + TABLE_NAME + " add column " + Contract.COLUMN_GUID + " TEXT");
+			// already dropped by WheelValuesTable before the guids were filled in
+			dropTriggers(database);
+			createTriggers(database, WheelValuesTable.TABLE_NAME, Contract.COLUMN_TYPE_ID, true);
+			createTriggers(database, WheelTypesTable.TABLE_NAME, Contract.COLUMN_ID, true);
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * Drop the triggers logging the changes of WHEEL_PROGRESS and WHEEL_TYPES, 
+	 * for steps that rewrite every row and should not log them. The step must create them again.
+	 * @param database
+	 */
+	public static void dropTriggers(SQLiteDatabase database) {
+		for (String table : new String[] { WheelValuesTable.TABLE_NAME, WheelTypesTable.TABLE_NAME }) {
+			for (String event : EVENTS) {
+				database.execSQL("drop trigger if exists " + getTriggerName(table, event));
+			}
+		}
+	}
+
+	// withGuid is false only for the tables of version 12, which had no guid yet
+	private static void createTriggers(SQLiteDatabase database, String table, String typeIdColumn, boolean withGuid) {
+		for (int i = 0; i < EVENTS.length; i++) {
+			String row = (OPERATIONS[i] == OPERATION_DELETE) ? "old." : "new.";
+			database.execSQL("create trigger " + getTriggerName(table, EVENTS[i]) + " after " + EVENTS[i]
+					+ " on " + table + " when exists (select 1 from " + MigrationsTable.TABLE_NAME + " where " + CONSUMERS_SELECTION
+					+ ") begin insert into " + TABLE_NAME + " (" + Contract.COLUMN_TABLE + ", " + Contract.COLUMN_OPERATION + ", "
+					+ Contract.COLUMN_ROW_ID + ", " + Contract.COLUMN_TYPE_ID + (withGuid ? ", " + Contract.COLUMN_GUID : "")
+					+ ") values ('" + table + "', " + OPERATIONS[i] + ", " + row + Contract.COLUMN_ID + ", " + row + typeIdColumn
+					+ (withGuid ? ", " + row + Contract.COLUMN_GUID : "") + "); end;");
+		}
+	}
+
+	private static String getTriggerName(String table, String event) {
+		return TABLE_NAME + "_" + table + "_" + event.toUpperCase();
+	}
+
+	/** @return long the seq of the latest change ever logged, 0 if there was none */
+	public static long getLastSeq(SQLiteDatabase database) {
+		return DatabaseUtils.longForQuery(database, "select ifnull((select seq from sqlite_sequence where name = '" + TABLE_NAME
+				+ "'), 0)", null);
+	}
+
+	/**
+	 * The changes logged after the given seq, oldest first
+	 * @param since seq of the last change the caller has applied
+	 * @param limit max number of rows, null for all
+	 */
+	public static Cursor query(SQLiteDatabase database, long since, String limit) {
+		return database.query(TABLE_NAME, PROJECTION, Contract.COLUMN_SEQ + " > ?", new String[] { String.valueOf(since) }, null, null,
+				Contract.COLUMN_SEQ + " ASC", limit);
+	}
+
+	/**
+	 * Start logging changes for a consumer, or move an existing one, to the latest change. 
+	 * The consumer should read the tables it follows after this, then apply the changes since the returned seq.
+	 * @return long the seq the consumer starts at
+	 */
+	public static long registerConsumer(SQLiteDatabase database, String name) {
+		long lastSeq = getLastSeq(database);
+		MigrationsTable.start(database, CONSUMER_PREFIX + name, 0);
+		MigrationsTable.setLastId(database, CONSUMER_PREFIX + name, lastSeq);
+		return lastSeq;
+	}
+
+	/**
+	 * Record that the consumer has applied all changes up to and including seq, and prune the changes every consumer has applied
+	 * @return int 1, or 0 if the consumer is not registered
+	 */
+	public static int setConsumerSeq(SQLiteDatabase database, String name, long seq) {
+		ContentValues values = new ContentValues();
+		values.put(Contract.COLUMN_LAST_ID, seq);
+		int updated = MigrationsTable.update(database, CONSUMER_PREFIX + name, values);
+		prune(database);
+		return updated;
+	}
+
+	/** Stop logging changes for a consumer, the changes only it had left to apply are pruned */
+	public static int unregisterConsumer(SQLiteDatabase database, String name) {
+		int deleted = database.delete(MigrationsTable.TABLE_NAME, Contract.COLUMN_NAME + " = ?", new String[] { CONSUMER_PREFIX + name });
+		prune(database);
+		return deleted;
+	}
+
+	/** @return Cursor the seq of the last change the consumer applied, empty if it is not registered */
+	public static Cursor queryConsumer(SQLiteDatabase database, String name) {
+		return database.query(MigrationsTable.TABLE_NAME, new String[] { Contract.COLUMN_LAST_ID + " as " + Contract.COLUMN_SEQ },
+				Contract.COLUMN_NAME + " = ?", new String[] { CONSUMER_PREFIX + name }, null, null, null);
+	}
+
+	/** Delete the changes that every consumer has applied, all of them if there is no consumer left */
+	public static void prune(SQLiteDatabase database) {
+		database.execSQL("delete from " + TABLE_NAME + " where " + Contract.COLUMN_SEQ + " <= ifnull((select min(" + Contract.COLUMN_LAST_ID
+				+ ") from " + MigrationsTable.TABLE_NAME + " where " + CONSUMERS_SELECTION + "), (select max(" + Contract.COLUMN_SEQ
+				+ ") from " + TABLE_NAME + "))");
+	}
+}
@@ -31,21 +31,55 @@ public class Contract {
 
 	public static final int MAX_ITEMS_IN_WHEEL = 8;	
 	public static final int MIN_ITEMS_IN_WHEEL = 2;
+	/** Dates are stored in milliseconds, older rows holding a smaller value were stored in seconds (1e11 ms is in 1973) */
+	public static final long MIN_DATE_IN_MILLIS = 100000000000L;
+	/** SQL default for date columns, current time in milliseconds */
+	public static final String DEFAULT_DATE_NOW = "(strftime('%s','now') * 1000)";
 	public static final String COLUMN_ID = "_id";
 	public static final String COLUMN_TITLE = "title";
 	public static final String COLUMN_TYPE_ID = "typeId";
 	public static final String COLUMN_ITEM0 = "item0";
 	public static final String COLUMN_ITEM = "item";
+	public static final String COLUMN_ITEMS = "items";
 	public static final String COLUMN_VALUE0 = "value0";
 	public static final String COLUMN_VALUE = "value";
 	public static final String COLUMN_DATE = "date";
 	public static final String COLUMN_COUNT = "count";
+	public static final String COLUMN_PACKED_VALUES = "packedValues";
+	public static final String COLUMN_REPEAT_COUNT = "repeatCount";
+	public static final String COLUMN_END_DATE = "endDate";
+	public static final String COLUMN_SNAPSHOT_ID = "snapshotId";
+	public static final String COLUMN_ITEM_INDEX = "itemIndex";
+	public static final String COLUMN_NAME = "name";
+	public static final String COLUMN_LAST_ID = "lastId";
+	public static final String COLUMN_END_ID = "endId";
+	public static final String COLUMN_PERIOD = "period";
+	public static final String COLUMN_BUCKET = "bucket";
+	public static final String COLUMN_SUM = "sum";
+	public static final String COLUMN_MIN = "min";
+	public static final String COLUMN_MAX = "max";
+	public static final String COLUMN_AVERAGE = "average";
+	public static final String COLUMN_SNAPSHOT_COUNT = "snapshotCount";
+	public static final String COLUMN_LATEST_DATE = "latestDate";
+	public static final String COLUMN_LATEST_VALUES = "latestValues";
+	public static final String COLUMN_SEQ = "seq";
+	public static final String COLUMN_TABLE = "tableName";
+	public static final String COLUMN_OPERATION = "operation";
+	public static final String COLUMN_ROW_ID = "rowId";
+	public static final String COLUMN_GUID = "guid";
+	public static final String COLUMN_MODIFIED = "modified";
+	/** SQL expression for a new random guid, the app itself uses java.util.UUID */
+	public static final String NEW_GUID = "lower(hex(randomblob(16)))";
 	public static final int COLUMN_IDX_ID = 0;
 	public static final int COLUMN_IDX_TITLE = 1;
 	public static final int COLUMN_IDX_TYPE_ID = COLUMN_IDX_TITLE;	
 	public static final int COLUMN_IDX_ITEM0 = 2;
 	public static final int COLUMN_IDX_VAL0 = COLUMN_IDX_ITEM0;
 	public static final int COLUMN_IDX_DATE = 10;
-	public static final int COLUMN_IDX_COUNT = 11;	
+	public static final int COLUMN_IDX_COUNT = 11;
+	public static final int COLUMN_IDX_PACKED_VALUES = 11;
+	public static final int COLUMN_IDX_SNAPSHOT_COUNT = 12;
+	public static final int COLUMN_IDX_LATEST_DATE = 13;
+	public static final int COLUMN_IDX_LATEST_VALUES = 14;	
 
 }
@@ -0,0 +1,110 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+package com.berries.dashboard.db.tables;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Definition of MIGRATIONS. Keeps track of data migrations that run in the background after a schema upgrade.
+ * The table has the following columns
+ * <p>name, lastId, endId</p>
+ * A migration is complete once lastId has reached endId
+ */
+public class MigrationsTable {
+
+	public static final String TABLE_NAME = "MIGRATIONS";
+
+	private static final String DATABASE_CREATE = "create table " + TABLE_NAME + " (" + Contract.COLUMN_NAME + " TEXT PRIMARY KEY, "
+			+ Contract.COLUMN_LAST_ID + " INTEGER NOT NULL DEFAULT 0, " + Contract.COLUMN_END_ID + " INTEGER NOT NULL DEFAULT 0);";
+
+	public static void onCreate(SQLiteDatabase database) {
+		database.execSQL(DATABASE_CREATE);
+	}
+
+	/**
+	 * Upgrades the table by a single version step, newVersion is always oldVersion + 1
+	 * @see com.berries.dashboard.db.WheelDBManager#migrate(SQLiteDatabase, int, int)
+	 */
+	public static void onUpgrade(SQLiteDatabase database, int oldVersion, int newVersion) {
+		switch (newVersion) {
+		case 4:
+			onCreate(database);
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * Register a migration that has to walk over all ids up to and including endId
+	 */
+	public static void start(SQLiteDatabase database, String name, long endId) {
+		database.execSQL("insert or replace into " + TABLE_NAME + " (" + Contract.COLUMN_NAME + ", " + Contract.COLUMN_LAST_ID + ", "
+				+ Contract.COLUMN_END_ID + ") values (?, 0, ?)", new Object[] { name, endId });
+	}
+
+	/** Record that the migration has processed all ids up to and including lastId */
+	public static void setLastId(SQLiteDatabase database, String name, long lastId) {
+		database.execSQL("update " + TABLE_NAME + " set " + Contract.COLUMN_LAST_ID + " = ? where " + Contract.COLUMN_NAME + " = ?",
+				new Object[] { lastId, name });
+	}
+
+	/**
+	 * Update the lastId and/or endId of a migration
+	 * @return int number of rows updated, 0 if the migration was never started
+	 */
+	public static int update(SQLiteDatabase database, String name, ContentValues values) {
+		return database.update(TABLE_NAME, values, Contract.COLUMN_NAME + " = ?", new String[] { name });
+	}
+
+	/** @return Cursor the lastId and endId of the given migration, empty if it was never started */
+	public static Cursor query(SQLiteDatabase database, String name) {
+		return database.query(TABLE_NAME, new String[] { Contract.COLUMN_LAST_ID, Contract.COLUMN_END_ID },
+				Contract.COLUMN_NAME + " = ?", new String[] { name }, null, null, null);
+	}
+
+	/**
+	 * @return long[] {lastId, endId} of the given migration or null if it was never started
+	 */
+	public static long[] getProgress(SQLiteDatabase database, String name) {
+		Cursor cursor = query(database, name);
+		try {
+			if (cursor.moveToFirst()) {
+				return new long[] { cursor.getLong(0), cursor.getLong(1) };
+			}
+			return null;
+		} finally {
+			cursor.close();
+		}
+	}
+
+	/** @return true if the migration was never needed or has processed all of its ids */
+	public static boolean isComplete(SQLiteDatabase database, String name) {
+		long[] progress = getProgress(database, name);
+		return progress == null || progress[0] >= progress[1];
+	}
+
+}
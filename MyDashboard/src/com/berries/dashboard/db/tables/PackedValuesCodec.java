@@ -0,0 +1,123 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+package com.berries.dashboard.db.tables;
+
+import com.berries.dashboard.model.Wheel;
+
+/**
+ * Encodes the item values of a saved wheel into the single packedValues column of WHEEL_PROGRESS.
+ * <p>
+ * An item value is always 1 to 10, so each item takes 4 bits, item 0 in the lowest bits. 
+ * A value of 0 marks an item that the wheel does not have, so the number of items can be read back from the packed value.
+ * </p>
+ */
+public class PackedValuesCodec {
+
+	public static final int BITS_PER_VALUE = 4;
+	private static final int VALUE_MASK = (1 << BITS_PER_VALUE) - 1;
+	private static final int MIN_VALUE = 1;
+	private static final int MAX_VALUE = 10;
+
+	/**
+	 * @param wheel
+	 * @return long the values of all wheel items packed together
+	 */
+	public static long pack(Wheel wheel) {
+		long packed = 0;
+		for (int i = 0; i < wheel.getNumOfItems(); i++) {
+			packed = put(packed, i, wheel.getItemAt(i).getValue());
+		}
+		return packed;
+	}
+
+	/**
+	 * @param values item values, each between 1 and 10
+	 * @param count number of values to pack, at most Contract.MAX_ITEMS_IN_WHEEL
+	 * @return long the values packed together
+	 */
+	public static long pack(int[] values, int count) {
+		long packed = 0;
+		for (int i = 0; i < count; i++) {
+			packed = put(packed, i, values[i]);
+		}
+		return packed;
+	}
+
+	/** @return long the packed value with the value of the given item replaced */
+	public static long put(long packed, int index, int value) {
+		if (value < MIN_VALUE || value > MAX_VALUE) {
+			throw new IllegalArgumentException("The value should be between " + MIN_VALUE + " and " + MAX_VALUE + ". The value given is " + value);
+		}
+		if (index < 0 || index >= Contract.MAX_ITEMS_IN_WHEEL) {
+			throw new IllegalArgumentException("Wheel cannot have more than " + Contract.MAX_ITEMS_IN_WHEEL + " items");
+		}
+		int shift = index * BITS_PER_VALUE;
+		return (packed & ~((long) VALUE_MASK << shift)) | ((long) value << shift);
+	}
+
+	/** @return int the value of the item at the given index, or 0 if the item was not saved */
+	public static int valueAt(long packed, int index) {
+		return (int) (packed >>> (index * BITS_PER_VALUE)) & VALUE_MASK;
+	}
+
+	/** @return int the number of item values held by the packed value */
+	public static int count(long packed) {
+		int count = 0;
+		while (count < Contract.MAX_ITEMS_IN_WHEEL && valueAt(packed, count) != 0) {
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Unpack the first count values into the given array
+	 * @param packed
+	 * @param values array to fill, must hold at least count values
+	 * @param count
+	 */
+	public static void unpack(long packed, int[] values, int count) {
+		for (int i = 0; i < count; i++) {
+			values[i] = valueAt(packed, i);
+		}
+	}
+
+	/** Set the values of the wheel items to the values held by the packed value */
+	public static void applyTo(long packed, Wheel wheel) {
+		for (int i = 0; i < wheel.getNumOfItems(); i++) {
+			int value = valueAt(packed, i);
+			if (value != 0) {
+				wheel.getItemAt(i).setValue(value);
+			}
+		}
+	}
+
+	/** @return String SQL expression reading the value of the item at the given index out of the packed column */
+	public static String sqlValueAt(String packedColumn, int index) {
+		return "((" + packedColumn + " >> " + (index * BITS_PER_VALUE) + ") & " + VALUE_MASK + ")";
+	}
+
+	// don't want anyone to create an object of this class
+	private PackedValuesCodec() {
+	}
+}
@@ -0,0 +1,158 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+package com.berries.dashboard.db.tables;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.text.TextUtils;
+
+/**
+ * Definition of WHEEL_ITEM_VALUES, the normalized layout of WHEEL_PROGRESS with one row per item of a saved wheel.
+ * The table has the following columns
+ * <p>snapshotId(foreign key), typeId, itemIndex, value, date</p>
+ * Rows are written alongside the wide WHEEL_PROGRESS rows, which stay the primary storage
+ */
+public class WheelItemValuesTable {
+
+	public static final String TABLE_NAME = "WHEEL_ITEM_VALUES";
+	/** Name used in MIGRATIONS for copying the rows that were saved before this table existed */
+	public static final String MIGRATION_NAME = TABLE_NAME;
+
+	private static final String DATABASE_CREATE = "create table " + TABLE_NAME + " ("
+			+ Contract.COLUMN_SNAPSHOT_ID + " INTEGER NOT NULL, "
+			+ Contract.COLUMN_TYPE_ID + " INTEGER NOT NULL, "
+			+ Contract.COLUMN_ITEM_INDEX + " INTEGER NOT NULL, "
+			+ Contract.COLUMN_VALUE + " INTEGER NOT NULL, "
+			+ Contract.COLUMN_DATE + " INTEGER NOT NULL, "
+			+ "PRIMARY KEY(" + Contract.COLUMN_SNAPSHOT_ID + ", " + Contract.COLUMN_ITEM_INDEX + "), "
+			+ "FOREIGN KEY(" + Contract.COLUMN_SNAPSHOT_ID + ") REFERENCES " + WheelValuesTable.TABLE_NAME + "(" + Contract.COLUMN_ID + ") ON DELETE CASCADE);";
+
+	// per item time-series reads filter on typeId & itemIndex and sort by date
+	public static final String INDEX_TYPE_ITEM_DATE = "IDX_" + TABLE_NAME + "_TYPE_ITEM_DATE";
+	private static final String DATABASE_CREATE_INDEX = "create index if not exists " + INDEX_TYPE_ITEM_DATE + " on " + TABLE_NAME
+			+ " (" + Contract.COLUMN_TYPE_ID + ", " + Contract.COLUMN_ITEM_INDEX + ", " + Contract.COLUMN_DATE + ");";
+
+	/** Inserts or replaces the row of a single item, see {@link #insertPacked(SQLiteStatement, long, int, long, long)} */
+	public static final String INSERT_SQL = "insert or replace into " + TABLE_NAME + " (" + Contract.COLUMN_SNAPSHOT_ID + ", "
+			+ Contract.COLUMN_TYPE_ID + ", " + Contract.COLUMN_ITEM_INDEX + ", " + Contract.COLUMN_VALUE + ", " + Contract.COLUMN_DATE
+			+ ") values (?, ?, ?, ?, ?)";
+
+	public static void onCreate(SQLiteDatabase database) {
+		database.execSQL(DATABASE_CREATE);
+		database.execSQL(DATABASE_CREATE_INDEX);
+		// a fresh database has no wide rows to copy over
+		MigrationsTable.start(database, MIGRATION_NAME, 0);
+	}
+
+	/**
+	 * Upgrades the table by a single version step, newVersion is always oldVersion + 1
+	 * @see com.berries.dashboard.db.WheelDBManager#migrate(SQLiteDatabase, int, int)
+	 */
+	public static void onUpgrade(SQLiteDatabase database, int oldVersion, int newVersion) {
+		switch (newVersion) {
+		case 4:
+			database.execSQL(DATABASE_CREATE);
+			database.execSQL(DATABASE_CREATE_INDEX);
+			// rows saved from now on are written to both layouts, the older ones are copied in chunks by WheelItemValuesMigration
+			long endId = DatabaseUtils.longForQuery(database, "select ifnull(max(" + Contract.COLUMN_ID + "), 0) from "
+					+ WheelValuesTable.TABLE_NAME, null);
+			MigrationsTable.start(database, MIGRATION_NAME, endId);
+			break;
+		case 7:
+			WheelValuesTable.convertDatesToMillis(database, TABLE_NAME);
+			break;
+		case 8:
+			// WHEEL_PROGRESS dropped the rows of deleted wheel types while it was rebuilt
+			database.delete(TABLE_NAME, Contract.COLUMN_SNAPSHOT_ID + " not in (" + selectWideRowIds(null) + ")", null);
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * Copy the values of the WHEEL_PROGRESS rows matching the given selection into this table, replacing the rows those saved wheels 
+	 * already have. Only the items held by each row's packedValues are copied, the rows of items it no longer holds are deleted.
+	 * @param database
+	 * @param selection selection on WHEEL_PROGRESS, null for all rows
+	 * @param selectionArgs
+	 */
+	public static void copyFromWideRows(SQLiteDatabase database, String selection, String[] selectionArgs) {
+		String rowFilter = selectWideRowIds(selection);
+		database.execSQL("delete from " + TABLE_NAME + " where " + Contract.COLUMN_SNAPSHOT_ID + " in (" + rowFilter + ")",
+				(selectionArgs == null) ? new Object[0] : selectionArgs);
+		StringBuilder sqlBuilder = new StringBuilder("insert or replace into ");
+		sqlBuilder.append(TABLE_NAME).append(" (").append(Contract.COLUMN_SNAPSHOT_ID).append(", ").append(Contract.COLUMN_TYPE_ID)
+				.append(", ").append(Contract.COLUMN_ITEM_INDEX).append(", ").append(Contract.COLUMN_VALUE).append(", ")
+				.append(Contract.COLUMN_DATE).append(") ");
+		Object[] bindArgs = new Object[selectionArgs == null ? 0 : selectionArgs.length * Contract.MAX_ITEMS_IN_WHEEL];
+		for (int i = 0; i < Contract.MAX_ITEMS_IN_WHEEL; i++) {
+			if (i > 0) {
+				sqlBuilder.append(" union all ");
+			}
+			String value = PackedValuesCodec.sqlValueAt(Contract.COLUMN_PACKED_VALUES, i);
+			sqlBuilder.append("select ").append(Contract.COLUMN_ID).append(", ").append(Contract.COLUMN_TYPE_ID).append(", ")
+					.append(i).append(", ").append(value).append(", ").append(Contract.COLUMN_DATE)
+					.append(" from ").append(WheelValuesTable.TABLE_NAME)
+					.append(" where ").append(value).append(" > 0")
+					.append(" and ").append(Contract.COLUMN_ID).append(" in (").append(rowFilter).append(")");
+			for (int arg = 0; selectionArgs != null && arg < selectionArgs.length; arg++) {
+				bindArgs[i * selectionArgs.length + arg] = selectionArgs[arg];
+			}
+		}
+		database.execSQL(sqlBuilder.toString(), bindArgs);
+	}
+
+	/**
+	 * Insert the rows of a single saved wheel, one for each item held by packedValues
+	 * @param statement compiled from {@link #INSERT_SQL}
+	 * @param snapshotId the WHEEL_PROGRESS row id
+	 * @param typeId
+	 * @param date
+	 * @param packedValues see {@link PackedValuesCodec}
+	 */
+	public static void insertPacked(SQLiteStatement statement, long snapshotId, int typeId, long date, long packedValues) {
+		for (int i = 0; i < Contract.MAX_ITEMS_IN_WHEEL; i++) {
+			int value = PackedValuesCodec.valueAt(packedValues, i);
+			if (value != 0) {
+				statement.bindLong(1, snapshotId);
+				statement.bindLong(2, typeId);
+				statement.bindLong(3, i);
+				statement.bindLong(4, value);
+				statement.bindLong(5, date);
+				statement.executeInsert();
+			}
+		}
+	}
+
+	private static String selectWideRowIds(String selection) {
+		String ids = "select " + Contract.COLUMN_ID + " from " + WheelValuesTable.TABLE_NAME;
+		if (!TextUtils.isEmpty(selection)) {
+			ids = ids + " where " + selection;
+		}
+		return ids;
+	}
+
+}
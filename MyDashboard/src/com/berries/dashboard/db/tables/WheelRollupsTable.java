@@ -0,0 +1,425 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+package com.berries.dashboard.db.tables;
+
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * Definition of WHEEL_ROLLUPS. Holds the sum, count, min and max of every item of a wheel type per day, week and month,
+ * so that long range summaries read one row per bucket instead of every saved wheel.
+ * The table has the following columns
+ * <p>typeId, period, bucket, itemIndex, sum, count, min, max</p>
+ * bucket is the local time in milliseconds at which the day, week or month starts.
+ * The rows are kept up to date by WheelContentProvider whenever WHEEL_PROGRESS changes.
+ */
+public class WheelRollupsTable {
+
+	public static final String TABLE_NAME = "WHEEL_ROLLUPS";
+
+	public static final int PERIOD_DAY = 0;
+	public static final int PERIOD_WEEK = 1;
+	public static final int PERIOD_MONTH = 2;
+	private static final int[] PERIODS = { PERIOD_DAY, PERIOD_WEEK, PERIOD_MONTH };
+
+	private static final String DATABASE_CREATE = "create table " + TABLE_NAME + " ("
+			+ Contract.COLUMN_TYPE_ID + " INTEGER NOT NULL, "
+			+ Contract.COLUMN_PERIOD + " INTEGER NOT NULL, "
+			+ Contract.COLUMN_BUCKET + " INTEGER NOT NULL, "
+			+ Contract.COLUMN_ITEM_INDEX + " INTEGER NOT NULL, "
+			+ Contract.COLUMN_SUM + " INTEGER NOT NULL DEFAULT 0, "
+			+ Contract.COLUMN_COUNT + " INTEGER NOT NULL DEFAULT 0, "
+			+ Contract.COLUMN_MIN + " INTEGER, "
+			+ Contract.COLUMN_MAX + " INTEGER, "
+			+ "PRIMARY KEY(" + Contract.COLUMN_TYPE_ID + ", " + Contract.COLUMN_PERIOD + ", " + Contract.COLUMN_BUCKET + ", "
+			+ Contract.COLUMN_ITEM_INDEX + "));";
+
+	private static final String KEY_SELECTION = Contract.COLUMN_TYPE_ID + " = ? and " + Contract.COLUMN_PERIOD + " = ? and "
+			+ Contract.COLUMN_BUCKET + " = ? and " + Contract.COLUMN_ITEM_INDEX + " = ?";
+	/** Creates a bucket if it does not exist yet, see {@link #add(SQLiteStatement, SQLiteStatement, int, long, long, int)} */
+	public static final String INSERT_BUCKET_SQL = "insert or ignore into " + TABLE_NAME + " (" + Contract.COLUMN_TYPE_ID + ", "
+			+ Contract.COLUMN_PERIOD + ", " + Contract.COLUMN_BUCKET + ", " + Contract.COLUMN_ITEM_INDEX + ", " + Contract.COLUMN_SUM + ", "
+			+ Contract.COLUMN_COUNT + ", " + Contract.COLUMN_MIN + ", " + Contract.COLUMN_MAX + ") values (?, ?, ?, ?, 0, 0, ?, ?)";
+	/** Adds a value to an existing bucket, see {@link #add(SQLiteStatement, SQLiteStatement, int, long, long, int)} */
+	public static final String ADD_TO_BUCKET_SQL = "update " + TABLE_NAME + " set "
+			+ Contract.COLUMN_SUM + " = " + Contract.COLUMN_SUM + " + ?, "
+			+ Contract.COLUMN_COUNT + " = " + Contract.COLUMN_COUNT + " + ?, "
+			+ Contract.COLUMN_MIN + " = min(" + Contract.COLUMN_MIN + ", ?), "
+			+ Contract.COLUMN_MAX + " = max(" + Contract.COLUMN_MAX + ", ?) where " + KEY_SELECTION;
+	private static final String SUBTRACT_FROM_BUCKET_SQL = "update " + TABLE_NAME + " set "
+			+ Contract.COLUMN_SUM + " = " + Contract.COLUMN_SUM + " - ?, "
+			+ Contract.COLUMN_COUNT + " = " + Contract.COLUMN_COUNT + " - ? where " + KEY_SELECTION;
+	private static final String[] ROW_PROJECTION = { Contract.COLUMN_TYPE_ID, Contract.COLUMN_DATE, Contract.COLUMN_PACKED_VALUES,
+			Contract.COLUMN_REPEAT_COUNT };
+
+	/**
+	 * The values of saved wheels about to be deleted or changed, summed up per bucket. 
+	 * Collected with {@link WheelRollupsTable#collect(SQLiteDatabase, String, String[])} before WHEEL_PROGRESS changes 
+	 * and taken out of the buckets with {@link WheelRollupsTable#remove(SQLiteDatabase, Removal)} afterwards.
+	 */
+	public static class Removal {
+		// key: typeId, period, bucket, item index. value: sum, count, min, max of the removed values
+		private final Map<String, long[]> mBuckets = new HashMap<String, long[]>();
+		private final Set<Integer> mTypeIds = new HashSet<Integer>();
+		private final Calendar mCalendar = Calendar.getInstance();
+
+		private void add(int typeId, long date, long packedValues, int repeatCount) {
+			mTypeIds.add(typeId);
+			for (int period : PERIODS) {
+				long bucket = getBucketStart(mCalendar, period, date);
+				for (int i = 0; i < Contract.MAX_ITEMS_IN_WHEEL; i++) {
+					int value = PackedValuesCodec.valueAt(packedValues, i);
+					if (value == 0) {
+						continue;
+					}
+					String key = typeId + ":" + period + ":" + bucket + ":" + i;
+					long[] aggregate = mBuckets.get(key);
+					if (aggregate == null) {
+						aggregate = new long[] { 0, 0, value, value };
+						mBuckets.put(key, aggregate);
+					}
+					aggregate[0] += (long) value * repeatCount;
+					aggregate[1] += repeatCount;
+					aggregate[2] = Math.min(aggregate[2], value);
+					aggregate[3] = Math.max(aggregate[3], value);
+				}
+			}
+		}
+
+		/** @return Set the wheel types of the collected saved wheels */
+		public Set<Integer> getTypeIds() {
+			return mTypeIds;
+		}
+	}
+
+	public static void onCreate(SQLiteDatabase database) {
+		database.execSQL(DATABASE_CREATE);
+	}
+
+	/**
+	 * Upgrades the table by a single version step, newVersion is always oldVersion + 1
+	 * @see com.berries.dashboard.db.WheelDBManager#migrate(SQLiteDatabase, int, int)
+	 */
+	public static void onUpgrade(SQLiteDatabase database, int oldVersion, int newVersion) {
+		switch (newVersion) {
+		case 6:
+			onCreate(database);
+			break;
+		case 7:
+			// rows that were stored in seconds were put in buckets back in 1970, they are rebuilt by step 11
+			break;
+		case 8:
+			deleteOrphans(database);
+			break;
+		case 11:
+			// rebuilding reads repeatCount, added to WHEEL_PROGRESS in this step
+			rebuildAll(database);
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * Add a saved wheel to the day, week and month buckets it falls in
+	 * @param database
+	 * @param typeId
+	 * @param date time in milliseconds at which the values were saved
+	 * @param packedValues see {@link PackedValuesCodec}
+	 * @param repeatCount number of saves of these values, see WheelValuesTable
+	 */
+	public static void add(SQLiteDatabase database, int typeId, long date, long packedValues, int repeatCount) {
+		SQLiteStatement insertBucket = database.compileStatement(INSERT_BUCKET_SQL);
+		SQLiteStatement addToBucket = database.compileStatement(ADD_TO_BUCKET_SQL);
+		try {
+			add(insertBucket, addToBucket, typeId, date, packedValues, repeatCount);
+		} finally {
+			insertBucket.close();
+			addToBucket.close();
+		}
+	}
+
+	/**
+	 * Add a saved wheel to the day, week and month buckets it falls in, using statements compiled by the caller
+	 * @param insertBucket compiled from {@link #INSERT_BUCKET_SQL}
+	 * @param addToBucket compiled from {@link #ADD_TO_BUCKET_SQL}
+	 * @param typeId
+	 * @param date time in milliseconds at which the values were saved
+	 * @param packedValues see {@link PackedValuesCodec}
+	 * @param repeatCount number of saves of these values, see WheelValuesTable
+	 */
+	public static void add(SQLiteStatement insertBucket, SQLiteStatement addToBucket, int typeId, long date, long packedValues,
+			int repeatCount) {
+		Calendar calendar = Calendar.getInstance();
+		for (int period : PERIODS) {
+			long bucket = getBucketStart(calendar, period, date);
+			for (int i = 0; i < Contract.MAX_ITEMS_IN_WHEEL; i++) {
+				int value = PackedValuesCodec.valueAt(packedValues, i);
+				if (value != 0) {
+					insertBucket.bindLong(1, typeId);
+					insertBucket.bindLong(2, period);
+					insertBucket.bindLong(3, bucket);
+					insertBucket.bindLong(4, i);
+					insertBucket.bindLong(5, value);
+					insertBucket.bindLong(6, value);
+					insertBucket.executeInsert();
+					addToBucket.bindLong(1, (long) value * repeatCount);
+					addToBucket.bindLong(2, repeatCount);
+					addToBucket.bindLong(3, value);
+					addToBucket.bindLong(4, value);
+					addToBucket.bindLong(5, typeId);
+					addToBucket.bindLong(6, period);
+					addToBucket.bindLong(7, bucket);
+					addToBucket.bindLong(8, i);
+					addToBucket.execute();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Add the saved wheels of WHEEL_PROGRESS matching selection to their buckets, e.g. the new values of updated rows
+	 * @param database
+	 * @param selection on WHEEL_PROGRESS
+	 * @param selectionArgs
+	 */
+	public static void addRows(SQLiteDatabase database, String selection, String[] selectionArgs) {
+		SQLiteStatement insertBucket = database.compileStatement(INSERT_BUCKET_SQL);
+		SQLiteStatement addToBucket = database.compileStatement(ADD_TO_BUCKET_SQL);
+		Cursor cursor = database.query(WheelValuesTable.TABLE_NAME, ROW_PROJECTION, selection, selectionArgs, null, null, null);
+		try {
+			while (cursor.moveToNext()) {
+				add(insertBucket, addToBucket, cursor.getInt(0), cursor.getLong(1), cursor.getLong(2), cursor.getInt(3));
+			}
+		} finally {
+			cursor.close();
+			insertBucket.close();
+			addToBucket.close();
+		}
+	}
+
+	/**
+	 * @param database
+	 * @param selection on WHEEL_PROGRESS
+	 * @param selectionArgs
+	 * @return Removal the values of the saved wheels matching selection, read before they are deleted or changed
+	 */
+	public static Removal collect(SQLiteDatabase database, String selection, String[] selectionArgs) {
+		Removal removal = new Removal();
+		Cursor cursor = database.query(WheelValuesTable.TABLE_NAME, ROW_PROJECTION, selection, selectionArgs, null, null, null);
+		try {
+			while (cursor.moveToNext()) {
+				removal.add(cursor.getInt(0), cursor.getLong(1), cursor.getLong(2), cursor.getInt(3));
+			}
+		} finally {
+			cursor.close();
+		}
+		return removal;
+	}
+
+	/**
+	 * Take collected saved wheels out of their buckets, once WHEEL_PROGRESS has changed and the new values of updated rows 
+	 * were added. Sum and count are subtracted, min and max cannot be, so a bucket is only recalculated from the saved wheels 
+	 * in its range when a removed value was its min or max. A bucket left empty is deleted.
+	 * @param database
+	 * @param removal see {@link #collect(SQLiteDatabase, String, String[])}
+	 */
+	public static void remove(SQLiteDatabase database, Removal removal) {
+		SQLiteStatement subtract = database.compileStatement(SUBTRACT_FROM_BUCKET_SQL);
+		Calendar calendar = Calendar.getInstance();
+		try {
+			for (Map.Entry<String, long[]> entry : removal.mBuckets.entrySet()) {
+				String[] key = entry.getKey().split(":");
+				long[] removed = entry.getValue();
+				subtract.bindLong(1, removed[0]);
+				subtract.bindLong(2, removed[1]);
+				for (int arg = 0; arg < key.length; arg++) {
+					subtract.bindString(3 + arg, key[arg]);
+				}
+				subtract.execute();
+				Cursor cursor = database.query(TABLE_NAME, new String[] { Contract.COLUMN_COUNT, Contract.COLUMN_MIN, Contract.COLUMN_MAX },
+						KEY_SELECTION, key, null, null, null);
+				try {
+					if (!cursor.moveToFirst()) {
+						continue;
+					}
+					if (cursor.getLong(0) <= 0) {
+						database.delete(TABLE_NAME, KEY_SELECTION, key);
+					} else if (removed[2] <= cursor.getLong(1) || removed[3] >= cursor.getLong(2)) {
+						recalculate(database, calendar, key);
+					}
+				} finally {
+					cursor.close();
+				}
+			}
+		} finally {
+			subtract.close();
+		}
+	}
+
+	// sum, count, min and max of a single bucket from the saved wheels dated within it
+	private static void recalculate(SQLiteDatabase database, Calendar calendar, String[] key) {
+		int period = Integer.parseInt(key[1]);
+		long bucket = Long.parseLong(key[2]);
+		String value = PackedValuesCodec.sqlValueAt(Contract.COLUMN_PACKED_VALUES, Integer.parseInt(key[3]));
+		Cursor cursor = database.rawQuery("select sum(v * r), sum(r), min(v), max(v) from (select " + value + " as v, "
+				+ Contract.COLUMN_REPEAT_COUNT + " as r from " + WheelValuesTable.TABLE_NAME + " where " + Contract.COLUMN_TYPE_ID
+				+ " = ? and " + Contract.COLUMN_DATE + " >= ? and " + Contract.COLUMN_DATE + " < ?) where v > 0",
+				new String[] { key[0], key[2], String.valueOf(getBucketEnd(calendar, period, bucket)) });
+		try {
+			if (!cursor.moveToFirst() || cursor.isNull(1)) {
+				database.delete(TABLE_NAME, KEY_SELECTION, key);
+				return;
+			}
+			database.execSQL("update " + TABLE_NAME + " set " + Contract.COLUMN_SUM + " = ?, " + Contract.COLUMN_COUNT + " = ?, "
+					+ Contract.COLUMN_MIN + " = ?, " + Contract.COLUMN_MAX + " = ? where " + KEY_SELECTION, new Object[] {
+					cursor.getLong(0), cursor.getLong(1), cursor.getLong(2), cursor.getLong(3), key[0], key[1], key[2], key[3] });
+		} finally {
+			cursor.close();
+		}
+	}
+
+	/**
+	 * Recalculate all buckets of the given wheel type from WHEEL_PROGRESS, used when the rollups are built for existing rows. 
+	 * A compacted row counts repeatCount times in the bucket of its date.
+	 */
+	public static void rebuild(SQLiteDatabase database, int typeId) {
+		String[] typeIdArg = { String.valueOf(typeId) };
+		database.delete(TABLE_NAME, Contract.COLUMN_TYPE_ID + " = ?", typeIdArg);
+
+		// key: period, bucket, item index. value: sum, count, min, max
+		Map<String, long[]> buckets = new HashMap<String, long[]>();
+		Calendar calendar = Calendar.getInstance();
+		Cursor cursor = database.query(WheelValuesTable.TABLE_NAME, new String[] { Contract.COLUMN_DATE, Contract.COLUMN_PACKED_VALUES,
+				Contract.COLUMN_REPEAT_COUNT }, Contract.COLUMN_TYPE_ID + " = ?", typeIdArg, null, null, null);
+		try {
+			while (cursor.moveToNext()) {
+				long date = cursor.getLong(0);
+				long packedValues = cursor.getLong(1);
+				int repeatCount = cursor.getInt(2);
+				for (int period : PERIODS) {
+					long bucket = getBucketStart(calendar, period, date);
+					for (int i = 0; i < Contract.MAX_ITEMS_IN_WHEEL; i++) {
+						int value = PackedValuesCodec.valueAt(packedValues, i);
+						if (value == 0) {
+							continue;
+						}
+						String key = period + ":" + bucket + ":" + i;
+						long[] aggregate = buckets.get(key);
+						if (aggregate == null) {
+							aggregate = new long[] { 0, 0, value, value };
+							buckets.put(key, aggregate);
+						}
+						aggregate[0] += (long) value * repeatCount;
+						aggregate[1] += repeatCount;
+						aggregate[2] = Math.min(aggregate[2], value);
+						aggregate[3] = Math.max(aggregate[3], value);
+					}
+				}
+			}
+		} finally {
+			cursor.close();
+		}
+
+		for (Map.Entry<String, long[]> entry : buckets.entrySet()) {
+			String[] key = entry.getKey().split(":");
+			long[] aggregate = entry.getValue();
+			database.execSQL(INSERT_BUCKET_SQL, new Object[] { typeId, key[0], key[1], key[2], aggregate[2], aggregate[3] });
+			database.execSQL(ADD_TO_BUCKET_SQL, new Object[] { aggregate[0], aggregate[1], aggregate[2], aggregate[3], typeId, key[0], key[1], key[2] });
+		}
+	}
+
+	/** Recalculate the buckets of all wheel types from WHEEL_PROGRESS */
+	public static void rebuildAll(SQLiteDatabase database) {
+		database.delete(TABLE_NAME, null, null);
+		Cursor cursor = database.query(true, WheelValuesTable.TABLE_NAME, new String[] { Contract.COLUMN_TYPE_ID }, null, null, null,
+				null, null, null);
+		try {
+			while (cursor.moveToNext()) {
+				rebuild(database, cursor.getInt(0));
+			}
+		} finally {
+			cursor.close();
+		}
+	}
+
+	/** Remove the buckets of wheel types that no longer exist */
+	public static void deleteOrphans(SQLiteDatabase database) {
+		database.delete(TABLE_NAME, Contract.COLUMN_TYPE_ID + " not in (select " + Contract.COLUMN_ID + " from "
+				+ WheelTypesTable.TABLE_NAME + ")", null);
+	}
+
+	/**
+	 * @param calendar used for the calculation, its time is overwritten
+	 * @param period one of PERIOD_DAY, PERIOD_WEEK, PERIOD_MONTH
+	 * @param time in milliseconds
+	 * @return long the local time in milliseconds at which the period containing time starts
+	 */
+	public static long getBucketStart(Calendar calendar, int period, long time) {
+		calendar.setTimeInMillis(time);
+		calendar.set(Calendar.HOUR_OF_DAY, 0);
+		calendar.set(Calendar.MINUTE, 0);
+		calendar.set(Calendar.SECOND, 0);
+		calendar.set(Calendar.MILLISECOND, 0);
+		switch (period) {
+		case PERIOD_WEEK:
+			calendar.set(Calendar.DAY_OF_WEEK, calendar.getFirstDayOfWeek());
+			if (calendar.getTimeInMillis() > time) {
+				calendar.add(Calendar.WEEK_OF_YEAR, -1);
+			}
+			break;
+		case PERIOD_MONTH:
+			calendar.set(Calendar.DAY_OF_MONTH, 1);
+			break;
+		default:
+			break;
+		}
+		return calendar.getTimeInMillis();
+	}
+
+	// the local time in milliseconds at which the period following the one starting at bucket starts
+	private static long getBucketEnd(Calendar calendar, int period, long bucket) {
+		calendar.setTimeInMillis(bucket);
+		switch (period) {
+		case PERIOD_WEEK:
+			calendar.add(Calendar.WEEK_OF_YEAR, 1);
+			break;
+		case PERIOD_MONTH:
+			calendar.add(Calendar.MONTH, 1);
+			break;
+		default:
+			calendar.add(Calendar.DAY_OF_MONTH, 1);
+			break;
+		}
+		return calendar.getTimeInMillis();
+	}
+
+}
@@ -0,0 +1,123 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+package com.berries.dashboard.db.tables;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Definition of WHEEL_TYPES_SEARCH, a full-text index (FTS3) over the titles and item names of WHEEL_TYPES. 
+ * The table has the following columns
+ * <p>title, items</p>
+ * and its docid is the _id of the wheel type. items holds item0..item7 separated by spaces.
+ * The rows are kept in sync with WHEEL_TYPES by triggers, so every write to WHEEL_TYPES updates the index in the same transaction.
+ */
+public class WheelTypesSearchTable {
+
+	public static final String TABLE_NAME = "WHEEL_TYPES_SEARCH";
+
+	/** Selection on the _id of WHEEL_TYPES or WHEEL_TYPES_SUMMARY, matching the types found by the query bound to it */
+	public static final String MATCH_SELECTION = Contract.COLUMN_ID + " in (select docid from " + TABLE_NAME + " where "
+			+ TABLE_NAME + " match ?)";
+
+	private static final String DATABASE_CREATE = "create virtual table " + TABLE_NAME + " using fts3("
+			+ Contract.COLUMN_TITLE + ", " + Contract.COLUMN_ITEMS + ");";
+
+	private static final String TRIGGER_INSERT = "WHEEL_TYPES_SEARCH_INSERT";
+	private static final String TRIGGER_UPDATE = "WHEEL_TYPES_SEARCH_UPDATE";
+	private static final String TRIGGER_DELETE = "WHEEL_TYPES_SEARCH_DELETE";
+	// characters that have a meaning in a match query
+	private static final String QUERY_OPERATORS = "[\"*():^-]";
+
+	public static void onCreate(SQLiteDatabase database) {
+		database.execSQL(DATABASE_CREATE);
+		database.execSQL("create trigger " + TRIGGER_INSERT + " after insert on " + WheelTypesTable.TABLE_NAME + " begin "
+				+ getInsert("new") + " end;");
+		database.execSQL("create trigger " + TRIGGER_UPDATE + " after update on " + WheelTypesTable.TABLE_NAME + " begin "
+				+ getDelete("old") + " " + getInsert("new") + " end;");
+		database.execSQL("create trigger " + TRIGGER_DELETE + " after delete on " + WheelTypesTable.TABLE_NAME + " begin "
+				+ getDelete("old") + " end;");
+		// the wheel types that exist before the triggers
+		database.execSQL("insert into " + TABLE_NAME + " (docid, " + Contract.COLUMN_TITLE + ", " + Contract.COLUMN_ITEMS + ") select "
+				+ Contract.COLUMN_ID + ", " + Contract.COLUMN_TITLE + ", " + getItems("") + " from " + WheelTypesTable.TABLE_NAME);
+	}
+
+	/**
+	 * Upgrades the table by a single version step, newVersion is always oldVersion + 1
+	 * @see com.berries.dashboard.db.WheelDBManager#migrate(SQLiteDatabase, int, int)
+	 */
+	public static void onUpgrade(SQLiteDatabase database, int oldVersion, int newVersion) {
+		switch (newVersion) {
+		case 10:
+			onCreate(database);
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * Turns the text typed by the user into a match query finding the wheel types that have a word starting with every word typed
+	 * @param text
+	 * @return String the query to bind to {@link #MATCH_SELECTION}, null if the text has no words
+	 */
+	public static String toPrefixQuery(String text) {
+		if (text == null) {
+			return null;
+		}
+		StringBuilder query = new StringBuilder();
+		for (String word : text.replaceAll(QUERY_OPERATORS, " ").trim().split("\\s+")) {
+			if (word.length() == 0) {
+				continue;
+			}
+			// operators are upper case, the index folds the case of the words anyway
+			if (word.equals("OR") || word.equals("AND") || word.equals("NOT") || word.startsWith("NEAR")) {
+				word = word.toLowerCase();
+			}
+			query.append(query.length() == 0 ? "" : " ").append(word).append('*');
+		}
+		return (query.length() == 0) ? null : query.toString();
+	}
+
+	// the statement adding the row of the wheel type held by the new or old trigger row
+	private static String getInsert(String row) {
+		return "insert into " + TABLE_NAME + " (docid, " + Contract.COLUMN_TITLE + ", " + Contract.COLUMN_ITEMS + ") values ("
+				+ row + "." + Contract.COLUMN_ID + ", " + row + "." + Contract.COLUMN_TITLE + ", " + getItems(row + ".") + ");";
+	}
+
+	private static String getDelete(String row) {
+		return "delete from " + TABLE_NAME + " where docid = " + row + "." + Contract.COLUMN_ID + ";";
+	}
+
+	// item0..item7 of a row joined by spaces, missing items are left out
+	private static String getItems(String prefix) {
+		StringBuilder items = new StringBuilder("trim(");
+		for (int i = 0; i < Contract.MAX_ITEMS_IN_WHEEL; i++) {
+			if (i > 0) {
+				items.append(" || ' ' || ");
+			}
+			items.append("ifnull(").append(prefix).append(Contract.COLUMN_ITEM).append(i).append(", '')");
+		}
+		return items.append(")").toString();
+	}
+}
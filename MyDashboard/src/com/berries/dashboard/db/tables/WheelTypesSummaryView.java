@@ -0,0 +1,75 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+package com.berries.dashboard.db.tables;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Definition of the WHEEL_TYPES_SUMMARY view. Has the columns of WHEEL_TYPES in the same order followed by
+ * <p>snapshotCount, latestDate, latestValues</p>
+ * holding the number of saved wheels of the type and the date & packed values of the latest one (null if none was saved).
+ * Both lookups are answered by the (typeId, date) index of WHEEL_PROGRESS. 
+ * Compacted rows count for every save they stand for and their latest date is the one of the last save.
+ */
+public class WheelTypesSummaryView {
+
+	public static final String VIEW_NAME = "WHEEL_TYPES_SUMMARY";
+
+	public static void onCreate(SQLiteDatabase database) {
+		StringBuilder typeColumns = new StringBuilder("t." + Contract.COLUMN_ID + ", t." + Contract.COLUMN_TITLE);
+		for (int i = 0; i < Contract.MAX_ITEMS_IN_WHEEL; i++) {
+			typeColumns.append(", t.").append(Contract.COLUMN_ITEM).append(i);
+		}
+		typeColumns.append(", t.").append(Contract.COLUMN_DATE).append(", t.").append(Contract.COLUMN_COUNT);
+
+		String latestId = "(select " + Contract.COLUMN_ID + " from " + WheelValuesTable.TABLE_NAME + " where " + Contract.COLUMN_TYPE_ID
+				+ " = t." + Contract.COLUMN_ID + " order by " + Contract.COLUMN_DATE + " desc, " + Contract.COLUMN_ID + " desc limit 1)";
+		database.execSQL("create view " + VIEW_NAME + " as select " + typeColumns + ", "
+				+ "(select ifnull(sum(" + Contract.COLUMN_REPEAT_COUNT + "), 0) from " + WheelValuesTable.TABLE_NAME + " where " + Contract.COLUMN_TYPE_ID + " = t." + Contract.COLUMN_ID
+				+ ") as " + Contract.COLUMN_SNAPSHOT_COUNT + ", "
+				+ "ifnull(l." + Contract.COLUMN_END_DATE + ", l." + Contract.COLUMN_DATE + ") as " + Contract.COLUMN_LATEST_DATE + ", "
+				+ "l." + Contract.COLUMN_PACKED_VALUES + " as " + Contract.COLUMN_LATEST_VALUES
+				+ " from " + WheelTypesTable.TABLE_NAME + " t left join " + WheelValuesTable.TABLE_NAME + " l on l." + Contract.COLUMN_ID
+				+ " = " + latestId);
+	}
+
+	/**
+	 * Upgrades the view by a single version step, newVersion is always oldVersion + 1
+	 * @see com.berries.dashboard.db.WheelDBManager#migrate(SQLiteDatabase, int, int)
+	 */
+	public static void onUpgrade(SQLiteDatabase database, int oldVersion, int newVersion) {
+		switch (newVersion) {
+		case 9:
+			// created by step 11 instead, once the columns it reads exist
+			break;
+		case 11:
+			database.execSQL("drop view if exists " + VIEW_NAME);
+			onCreate(database);
+			break;
+		default:
+			break;
+		}
+	}
+
+}
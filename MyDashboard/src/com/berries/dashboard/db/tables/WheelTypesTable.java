@@ -24,10 +24,14 @@ THE SOFTWARE.
 package com.berries.dashboard.db.tables;
 
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 
 /**
  * Definition of WHEEL_TYPES_TABLE. The table has the following columns
- * <p>_id, title, item0, item1, item2, item3, item4, item5, item6, item7, date, count</p>
+ * <p>_id, title, item0, item1, item2, item3, item4, item5, item6, item7, date, count, guid, modified</p>
+ * guid identifies the wheel type across devices and modified is the time in milliseconds of its last change, 
+ * which decides between two edits made on different devices, see com.berries.dashboard.sync.SyncRecord. 
+ * The default wheels have the same guid on every device.
  */
 public class WheelTypesTable {
 
@@ -37,23 +41,25 @@ public class WheelTypesTable {
 	// Database creation SQL statement
 	private static final String DATABASE_CREATE_START = "create table " + TABLE_NAME;
 	private static final String DATABASE_CREATE_MID = " (" + Contract.COLUMN_ID  + " integer primary key autoincrement, "+ Contract.COLUMN_TITLE+ " TEXT NOT NULL, ";
-	private static final String DATABASE_CREATE_END = Contract.COLUMN_DATE		+ " INTEGER NOT NULL DEFAULT (strftime('%s','now')), "+ Contract.COLUMN_COUNT  +" INTEGER NOT NULL DEFAULT 8);";
+	private static final String DATABASE_CREATE_END = Contract.COLUMN_DATE		+ " INTEGER NOT NULL DEFAULT " + Contract.DEFAULT_DATE_NOW + ", "+ Contract.COLUMN_COUNT  +" INTEGER NOT NULL DEFAULT 8, "
+			+ Contract.COLUMN_GUID + " TEXT, " + Contract.COLUMN_MODIFIED + " INTEGER NOT NULL DEFAULT 0);";
+	public static final String INDEX_GUID = "IDX_" + TABLE_NAME + "_GUID";
+	private static final String DATABASE_CREATE_INDEX_GUID = "create unique index if not exists " + INDEX_GUID + " on " + TABLE_NAME
+			+ " (" + Contract.COLUMN_GUID + ");";
+	private static final String DEFAULT_GUID_PREFIX = "default:";
 	
 
-	private static final String DB_INSERT_CMD =   "insert into "+ TABLE_NAME + " (title, item0, item1, item2, item3, item4, item5, item6, item7, count)" ;
-	
-	private static final String DATABASE_INSERT1 = DB_INSERT_CMD +
-			" VALUES ('Wheel of Life', 'Environment', 'Career', 'Money', 'Health', 'Friends&Family', 'Significant Other','Personal Growth','Recreation/Fun', 8);";
-	private static final String DATABASE_INSERT2 = "insert into "+ TABLE_NAME + " (title, item0, item1, item2, item3, item4, item5, item6, item7, count)" +
-			" VALUES ('Keeping Healthy', 'Healthy Eating', 'Drinking Water', 'Exercise', 'Meditation', 'Sleep Well', 'Me time/Hobbies','','', 6);";	
-	private static final String DATABASE_INSERT3 = "insert into "+ TABLE_NAME + " (title, item0, item1, item2, item3, item4, item5, item6, item7, count)" +
-			" VALUES ('My Mood Today', 'Happy', 'Optimistic', 'Motivated', 'Confident', 'Excited','Playful','Loved', 'Relaxed', 8);";
-	private static final String DATABASE_INSERT4 = DB_INSERT_CMD +
-			" VALUES ('Working Skills', 'Communication', 'Fast-Learning', 'Team Player', 'Creative Thinking', 'Problem Solving', 'Task Management', 'Motivation', 'Independence', 8);";
-	private static final String DATABASE_INSERT5 = DB_INSERT_CMD +
-			" VALUES ('Mobile Developer Skills', 'Android', 'Java', 'iOS', 'ObjectiveC', 'C/C++', 'Multithreading', 'Design Patterns', 'HTML5/CSS/Javascript', 8);";
-	private static final String DATABASE_INSERT6 = DB_INSERT_CMD +
-			" VALUES ('Mobile App Health', 'OO Design', 'Short and Clear Code','Documentation', 'Input Validation','Thread Happy', 'Performance', 'Memory Usage',  'Battery Consumption', 8);";
+	private static final String DB_INSERT_CMD =   "insert into "+ TABLE_NAME + " (title, item0, item1, item2, item3, item4, item5, item6, item7, count, guid)" ;
+	private static final String DATABASE_INSERT_DEFAULT = DB_INSERT_CMD + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?);";
+
+	// the wheels a new database starts with: title, item0..item7 and count
+	private static final String[][] DEFAULT_WHEELS = {
+			{ "Wheel of Life", "Environment", "Career", "Money", "Health", "Friends&Family", "Significant Other", "Personal Growth", "Recreation/Fun", "8" },
+			{ "Keeping Healthy", "Healthy Eating", "Drinking Water", "Exercise", "Meditation", "Sleep Well", "Me time/Hobbies", "", "", "6" },
+			{ "My Mood Today", "Happy", "Optimistic", "Motivated", "Confident", "Excited", "Playful", "Loved", "Relaxed", "8" },
+			{ "Working Skills", "Communication", "Fast-Learning", "Team Player", "Creative Thinking", "Problem Solving", "Task Management", "Motivation", "Independence", "8" },
+			{ "Mobile Developer Skills", "Android", "Java", "iOS", "ObjectiveC", "C/C++", "Multithreading", "Design Patterns", "HTML5/CSS/Javascript", "8" },
+			{ "Mobile App Health", "OO Design", "Short and Clear Code", "Documentation", "Input Validation", "Thread Happy", "Performance", "Memory Usage", "Battery Consumption", "8" } };
 		
 
 	public static void onCreate(SQLiteDatabase database) {
@@ -65,18 +71,58 @@ public class WheelTypesTable {
 			sqlBuilder.append(" TEXT, ");
 		}
 		sqlBuilder.append(DATABASE_CREATE_END);
-		database.execSQL(sqlBuilder.toString());				
-		database.execSQL(DATABASE_INSERT1);
-		database.execSQL(DATABASE_INSERT2);
-		database.execSQL(DATABASE_INSERT3);	
-		database.execSQL(DATABASE_INSERT4);	
-		database.execSQL(DATABASE_INSERT5);
-		database.execSQL(DATABASE_INSERT6);
+		database.execSQL(sqlBuilder.toString());
+		database.execSQL(DATABASE_CREATE_INDEX_GUID);
+		insertDefaultWheels(database);
+	}
+
+	// one statement compiled once and bound for every wheel, onCreate already runs in the transaction of SQLiteOpenHelper
+	private static void insertDefaultWheels(SQLiteDatabase database) {
+		SQLiteStatement insert = database.compileStatement(DATABASE_INSERT_DEFAULT);
+		try {
+			for (int wheel = 0; wheel < DEFAULT_WHEELS.length; wheel++) {
+				for (int i = 0; i < DEFAULT_WHEELS[wheel].length; i++) {
+					// count is stored as a number through the INTEGER affinity of its column
+					insert.bindString(i + 1, DEFAULT_WHEELS[wheel][i]);
+				}
+				insert.bindString(DEFAULT_WHEELS[wheel].length + 1, DEFAULT_GUID_PREFIX + wheel);
+				insert.executeInsert();
+			}
+		} finally {
+			insert.close();
+		}
 	}
 
 
+	/**
+	 * Upgrades the table by a single version step, newVersion is always oldVersion + 1
+	 * @see com.berries.dashboard.db.WheelDBManager#migrate(SQLiteDatabase, int, int)
+	 */
 	public static void onUpgrade(SQLiteDatabase database, int oldVersion, int newVersion) {
-		// no need to do anything at the moment because we are not upgrading
+		switch (newVersion) {
+		case 7:
+			WheelValuesTable.convertDatesToMillis(database, TABLE_NAME);
+			break;
+		case 13:
+			addSyncColumns(database);
+			break;
+		default:
+			break;
+		}
+	}
+
+	// existing wheel types get a random guid, except for the first one titled as each default wheel which gets the shared guid
+	private static void addSyncColumns(SQLiteDatabase database) {
+		database.execSQL("alter table " + TABLE_NAME + " add column " + Contract.COLUMN_GUID + " TEXT");
+		database.execSQL("alter table " + TABLE_NAME + " add column " + Contract.COLUMN_MODIFIED + " INTEGER NOT NULL DEFAULT 0");
+		database.execSQL("update " + TABLE_NAME + " set " + Contract.COLUMN_GUID + " = " + Contract.NEW_GUID + ", "
+				+ Contract.COLUMN_MODIFIED + " = " + Contract.COLUMN_DATE);
+		for (int wheel = 0; wheel < DEFAULT_WHEELS.length; wheel++) {
+			database.execSQL("update " + TABLE_NAME + " set " + Contract.COLUMN_GUID + " = ? where " + Contract.COLUMN_ID + " = (select min("
+					+ Contract.COLUMN_ID + ") from " + TABLE_NAME + " where " + Contract.COLUMN_TITLE + " = ?)",
+					new Object[] { DEFAULT_GUID_PREFIX + wheel, DEFAULT_WHEELS[wheel][0] });
+		}
+		database.execSQL(DATABASE_CREATE_INDEX_GUID);
 	}
 
 }
@@ -23,11 +23,19 @@ THE SOFTWARE.
 */
 package com.berries.dashboard.db.tables;
 
+import java.util.UUID;
+
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 
 /**
  * Definition of WHEEL_PROGRESS. The table has the following columns
- * <p>_id, typeId(foreign key), value0, value1, value2, value3, value5, value6, value7, value8, date</p>
+ * <p>_id, typeId(foreign key), value0, value1, value2, value3, value5, value6, value7, value8, date, packedValues, repeatCount, endDate, guid</p>
+ * Since version 5 the item values are stored in packedValues (see {@link PackedValuesCodec}) and the valueN columns are left empty. 
+ * Since version 11 a row may stand for several saves compacted together (see com.berries.dashboard.db.HistoryCompactor): 
+ * repeatCount is the number of saves, date the time of the first and endDate the time of the last one, null for a single save. 
+ * Counts and averages over saved wheels have to be weighted by repeatCount. 
+ * Since version 13 every row has a unique guid identifying it across devices, see com.berries.dashboard.sync.SyncEngine.
  */
 public class WheelValuesTable {
 
@@ -35,15 +43,107 @@ public class WheelValuesTable {
 	public static final String TABLE_NAME = "WHEEL_PROGRESS";
 	
 	// Database creation SQL statement
-	private static final String DATABASE_CREATE_START = "create table " + TABLE_NAME;
+	private static final String DATABASE_CREATE_START = "create table ";
 	private static final String DATABASE_CREATE_MID = " (" + Contract.COLUMN_ID     + " integer primary key autoincrement, "
 	                                                       + Contract.COLUMN_TYPE_ID+ " INTEGER NOT NULL, ";
-	private static final String DATABASE_CREATE_END =        Contract.COLUMN_DATE	+ " INTEGER NOT NULL DEFAULT (strftime('%s','now'))," 
-			                                               +"FOREIGN KEY("+Contract.COLUMN_TYPE_ID+") REFERENCES "+WheelTypesTable.TABLE_NAME+"("+Contract.COLUMN_ID+") );";
+	private static final String DATABASE_CREATE_END =        Contract.COLUMN_DATE	+ " INTEGER NOT NULL DEFAULT " + Contract.DEFAULT_DATE_NOW + ","
+			                                               + Contract.COLUMN_PACKED_VALUES + " INTEGER, "
+			                                               +"FOREIGN KEY("+Contract.COLUMN_TYPE_ID+") REFERENCES "+WheelTypesTable.TABLE_NAME+"("+Contract.COLUMN_ID+") ON DELETE CASCADE );";
+
+	// Every history query filters on typeId and sorts by date, so both go into one index
+	public static final String INDEX_TYPE_DATE = "IDX_" + TABLE_NAME + "_TYPE_DATE";
+	private static final String DATABASE_CREATE_INDEX_TYPE_DATE = "create index if not exists " + INDEX_TYPE_DATE + " on " + TABLE_NAME
+			                                               + " (" + Contract.COLUMN_TYPE_ID + ", " + Contract.COLUMN_DATE + ");";
+	public static final String INDEX_GUID = "IDX_" + TABLE_NAME + "_GUID";
+
+	/** Inserts a saved wheel with its values in packedValues, see {@link #insert(SQLiteStatement, int, long, long, int, Long)} */
+	public static final String INSERT_PACKED_SQL = buildInsertPackedSql();
 
 
 	public static void onCreate(SQLiteDatabase database) {
+		createTable(database, TABLE_NAME);
+		addRepeatColumns(database);
+		addGuidColumn(database);
+		database.execSQL(DATABASE_CREATE_INDEX_TYPE_DATE);
+	}
+
+	// added after the table layout of version 8, so that rebuilding the table in that step keeps working
+	private static void addRepeatColumns(SQLiteDatabase database) {
+		database.execSQL("alter table " + TABLE_NAME + " add column " + Contract.COLUMN_REPEAT_COUNT + " INTEGER NOT NULL DEFAULT 1");
+		database.execSQL("alter table " + TABLE_NAME + " add column " + Contract.COLUMN_END_DATE + " INTEGER");
+	}
+
+	private static void addGuidColumn(SQLiteDatabase database) {
+		database.execSQL("alter table " + TABLE_NAME + " add column " + Contract.COLUMN_GUID + " TEXT");
+		database.execSQL("create unique index if not exists " + INDEX_GUID + " on " + TABLE_NAME + " (" + Contract.COLUMN_GUID + ");");
+	}
+
+	private static String buildInsertPackedSql() {
+		StringBuilder sqlBuilder = new StringBuilder("insert into ");
+		sqlBuilder.append(TABLE_NAME).append(" (").append(Contract.COLUMN_TYPE_ID).append(", ").append(Contract.COLUMN_DATE)
+				.append(", ").append(Contract.COLUMN_PACKED_VALUES).append(", ").append(Contract.COLUMN_REPEAT_COUNT)
+				.append(", ").append(Contract.COLUMN_END_DATE).append(", ").append(Contract.COLUMN_GUID);
+		for (int i = 0; i < Contract.MAX_ITEMS_IN_WHEEL; i++) {
+			sqlBuilder.append(", ").append(Contract.COLUMN_VALUE).append(i);
+		}
+		// the valueN columns default to 10, they are written as null so that they take no space in the row
+		sqlBuilder.append(") values (?, ?, ?, ?, ?, ?");
+		for (int i = 0; i < Contract.MAX_ITEMS_IN_WHEEL; i++) {
+			sqlBuilder.append(", null");
+		}
+		sqlBuilder.append(")");
+		return sqlBuilder.toString();
+	}
+
+	/**
+	 * Insert a saved wheel
+	 * @param statement compiled from {@link #INSERT_PACKED_SQL}
+	 * @param typeId
+	 * @param date time in milliseconds at which the values were saved
+	 * @param packedValues see {@link PackedValuesCodec}
+	 * @return long the id of the new row
+	 */
+	public static long insert(SQLiteStatement statement, int typeId, long date, long packedValues) {
+		return insert(statement, typeId, date, packedValues, 1, null);
+	}
+
+	/**
+	 * Insert a row standing for repeatCount saves of the same values
+	 * @param statement compiled from {@link #INSERT_PACKED_SQL}
+	 * @param typeId
+	 * @param date time in milliseconds of the first save
+	 * @param packedValues see {@link PackedValuesCodec}
+	 * @param repeatCount number of saves, at least 1
+	 * @param endDate time in milliseconds of the last save, null for a single save
+	 * @return long the id of the new row
+	 */
+	public static long insert(SQLiteStatement statement, int typeId, long date, long packedValues, int repeatCount, Long endDate) {
+		return insert(statement, typeId, date, packedValues, repeatCount, endDate, null);
+	}
+
+	/**
+	 * Insert a row standing for repeatCount saves of the same values, keeping the guid it has on another device
+	 * @param guid null for a new row
+	 * @see #insert(SQLiteStatement, int, long, long, int, Long)
+	 */
+	public static long insert(SQLiteStatement statement, int typeId, long date, long packedValues, int repeatCount, Long endDate,
+			String guid) {
+		statement.bindLong(1, typeId);
+		statement.bindLong(2, date);
+		statement.bindLong(3, packedValues);
+		statement.bindLong(4, repeatCount);
+		if (endDate == null) {
+			statement.bindNull(5);
+		} else {
+			statement.bindLong(5, endDate);
+		}
+		statement.bindString(6, (guid == null) ? UUID.randomUUID().toString() : guid);
+		return statement.executeInsert();
+	}
+
+	private static void createTable(SQLiteDatabase database, String tableName) {
 		StringBuilder sqlBuilder = new StringBuilder(DATABASE_CREATE_START);
+		sqlBuilder.append(tableName);
 		sqlBuilder.append(DATABASE_CREATE_MID);
 		for (int i = 0; i < Contract.MAX_ITEMS_IN_WHEEL; i++) {
 			sqlBuilder.append(Contract.COLUMN_VALUE);
@@ -54,8 +154,85 @@ public class WheelValuesTable {
 		database.execSQL(sqlBuilder.toString());		
 	}
 
+	/**
+	 * Upgrades the table by a single version step, newVersion is always oldVersion + 1
+	 * @see com.berries.dashboard.db.WheelDBManager#migrate(SQLiteDatabase, int, int)
+	 */
 	public static void onUpgrade(SQLiteDatabase database, int oldVersion, int newVersion) {
-		// no need to do anything at the moment because we are not upgrading
+		switch (newVersion) {
+		case 3:
+			// existing installs only had the implicit _id index
+			database.execSQL(DATABASE_CREATE_INDEX_TYPE_DATE);
+			break;
+		case 5:
+			database.execSQL("alter table " + TABLE_NAME + " add column " + Contract.COLUMN_PACKED_VALUES + " INTEGER");
+			packExistingRows(database);
+			break;
+		case 7:
+			convertDatesToMillis(database, TABLE_NAME);
+			break;
+		case 8:
+			addCascadingDelete(database);
+			break;
+		case 11:
+			addRepeatColumns(database);
+			break;
+		case 13:
+			// filling in the guids is not a change to sync, ChangeLogTable creates the triggers again at the end of this step. 
+			// WheelTypesTable fills in its guids after this as well
+			ChangeLogTable.dropTriggers(database);
+			addGuidColumn(database);
+			database.execSQL("update " + TABLE_NAME + " set " + Contract.COLUMN_GUID + " = " + Contract.NEW_GUID);
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * SQLite cannot change the foreign key of an existing table, so the table is rebuilt with ON DELETE CASCADE. 
+	 * Rows of wheel types that no longer exist are dropped on the way, they could not be reached anyway.
+	 */
+	private static void addCascadingDelete(SQLiteDatabase database) {
+		String newTableName = TABLE_NAME + "_NEW";
+		createTable(database, newTableName);
+		StringBuilder columns = new StringBuilder(Contract.COLUMN_ID + ", " + Contract.COLUMN_TYPE_ID);
+		for (int i = 0; i < Contract.MAX_ITEMS_IN_WHEEL; i++) {
+			columns.append(", ").append(Contract.COLUMN_VALUE).append(i);
+		}
+		columns.append(", ").append(Contract.COLUMN_DATE).append(", ").append(Contract.COLUMN_PACKED_VALUES);
+		database.execSQL("insert into " + newTableName + " (" + columns + ") select " + columns + " from " + TABLE_NAME
+				+ " where " + Contract.COLUMN_TYPE_ID + " in (select " + Contract.COLUMN_ID + " from " + WheelTypesTable.TABLE_NAME + ")");
+		database.execSQL("drop table " + TABLE_NAME);
+		database.execSQL("alter table " + newTableName + " rename to " + TABLE_NAME);
+		database.execSQL(DATABASE_CREATE_INDEX_TYPE_DATE);
+	}
+
+	/**
+	 * Rows saved with the column default were stored in seconds while the app always wrote milliseconds, 
+	 * this moves all dates of the given table to milliseconds
+	 */
+	public static void convertDatesToMillis(SQLiteDatabase database, String tableName) {
+		database.execSQL("update " + tableName + " set " + Contract.COLUMN_DATE + " = " + Contract.COLUMN_DATE + " * 1000 where "
+				+ Contract.COLUMN_DATE + " < " + Contract.MIN_DATE_IN_MILLIS);
+	}
+
+	// move the valueN columns of existing rows into packedValues, only the items that the row's wheel type has are kept
+	private static void packExistingRows(SQLiteDatabase database) {
+		StringBuilder packed = new StringBuilder("(select ");
+		StringBuilder clearValues = new StringBuilder();
+		for (int i = 0; i < Contract.MAX_ITEMS_IN_WHEEL; i++) {
+			if (i > 0) {
+				packed.append(" | ");
+			}
+			packed.append("((case when t.").append(Contract.COLUMN_COUNT).append(" > ").append(i)
+					.append(" then ifnull(").append(Contract.COLUMN_VALUE).append(i).append(", 0) else 0 end) << ")
+					.append(i * PackedValuesCodec.BITS_PER_VALUE).append(")");
+			clearValues.append(", ").append(Contract.COLUMN_VALUE).append(i).append(" = null");
+		}
+		packed.append(" from ").append(WheelTypesTable.TABLE_NAME).append(" t where t.").append(Contract.COLUMN_ID)
+				.append(" = ").append(TABLE_NAME).append(".").append(Contract.COLUMN_TYPE_ID).append(")");
+		database.execSQL("update " + TABLE_NAME + " set " + Contract.COLUMN_PACKED_VALUES + " = " + packed + clearValues);
 	}
 
 }
@@ -0,0 +1,109 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+package com.berries.dashboard.debug;
+
+import java.util.ArrayList;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.berries.dashboard.db.WheelContentProvider;
+import com.berries.dashboard.db.tables.Contract;
+import com.berries.dashboard.db.tables.PackedValuesCodec;
+
+/**
+ * Compares loading saved wheels one insert at a time, each in a transaction of its own, with loading them through 
+ * {@link ContentResolver#bulkInsert(android.net.Uri, ContentValues[])} and {@link ContentResolver#applyBatch(String, ArrayList)}, 
+ * a single transaction each. Runs against a scratch database, filter the log by the BatchBenchmark tag.
+ */
+class BatchBenchmark implements Runnable {
+
+	static final String NAME = "batch";
+
+	private static final String TAG = BatchBenchmark.class.getSimpleName();
+	private static final String DATABASE_NAME = "benchmark_batch";
+	private static final int ROWS = 2000;
+	// one of the default wheels of a new database
+	private static final int TYPE_ID = 1;
+
+	private final Context mContext;
+
+	BatchBenchmark(Context context) {
+		mContext = context;
+	}
+
+	@Override
+	public void run() {
+		ScratchDatabase database = new ScratchDatabase(mContext, DATABASE_NAME);
+		try {
+			ContentResolver resolver = database.getContentResolver();
+			long date = System.currentTimeMillis() - 3 * ROWS * 1000L;
+
+			ContentValues[] rows = createRows(date, ROWS);
+			long start = System.nanoTime();
+			for (ContentValues row : rows) {
+				resolver.insert(WheelContentProvider.CONTENT_PROGRESS_SINGLE_URI, row);
+			}
+			Log.i(TAG, "insert per row " + Timing.rate(ROWS, System.nanoTime() - start));
+
+			rows = createRows(date + ROWS * 1000L, ROWS);
+			start = System.nanoTime();
+			int inserted = resolver.bulkInsert(WheelContentProvider.CONTENT_PROGRESS_SINGLE_URI, rows);
+			Log.i(TAG, "bulkInsert " + Timing.rate(inserted, System.nanoTime() - start));
+
+			rows = createRows(date + 2 * ROWS * 1000L, ROWS);
+			ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>(ROWS);
+			for (ContentValues row : rows) {
+				operations.add(ContentProviderOperation.newInsert(WheelContentProvider.CONTENT_PROGRESS_SINGLE_URI).withValues(row).build());
+			}
+			start = System.nanoTime();
+			int applied = resolver.applyBatch(WheelContentProvider.AUTHORITY, operations).length;
+			Log.i(TAG, "applyBatch " + Timing.rate(applied, System.nanoTime() - start));
+		} catch (RemoteException e) {
+			Log.e(TAG, "Batch failed", e);
+		} catch (OperationApplicationException e) {
+			Log.e(TAG, "Batch failed", e);
+		} finally {
+			database.close();
+		}
+	}
+
+	// the rows are built before the clock starts, one second apart
+	private static ContentValues[] createRows(long date, int count) {
+		long packedValues = PackedValuesCodec.pack(new int[] { 3, 5, 7, 9, 2, 4, 6, 8 }, Contract.MAX_ITEMS_IN_WHEEL);
+		ContentValues[] rows = new ContentValues[count];
+		for (int i = 0; i < count; i++) {
+			rows[i] = new ContentValues();
+			rows[i].put(Contract.COLUMN_TYPE_ID, TYPE_ID);
+			rows[i].put(Contract.COLUMN_DATE, date + i * 1000L);
+			rows[i].put(Contract.COLUMN_PACKED_VALUES, packedValues);
+		}
+		return rows;
+	}
+}
@@ -0,0 +1,105 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+package com.berries.dashboard.debug;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ApplicationInfo;
+import android.util.Log;
+
+/**
+ * Hidden entry point of the benchmarks, for debuggable builds only. The benchmarks run one after the other on a background thread 
+ * against scratch databases, each logs its results under its own tag. Run all of them with
+ * <pre>adb shell am broadcast -n com.berries.dashboard/.debug.BenchmarkReceiver</pre>
+ * or a single one by adding e.g. <code>--es run storage</code>. 
+ * The receiver requires the DUMP permission, which the shell has and other applications do not.
+ */
+public class BenchmarkReceiver extends BroadcastReceiver {
+
+	/** Name of the benchmark to run, all of them if missing */
+	public static final String EXTRA_RUN = "run";
+
+	private static final String TAG = BenchmarkReceiver.class.getSimpleName();
+
+	@Override
+	public void onReceive(Context context, Intent intent) {
+		if ((context.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) == 0) {
+			Log.w(TAG, "Benchmarks only run in debuggable builds");
+			return;
+		}
+		final Context appContext = context.getApplicationContext();
+		final String name = intent.getStringExtra(EXTRA_RUN);
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				List<Runnable> benchmarks = getBenchmarks(appContext, name);
+				if (benchmarks.isEmpty()) {
+					Log.w(TAG, "Unknown benchmark " + name);
+				}
+				for (Runnable benchmark : benchmarks) {
+					try {
+						benchmark.run();
+					} catch (RuntimeException e) {
+						Log.e(TAG, "Benchmark " + benchmark.getClass().getSimpleName() + " failed", e);
+					} catch (LinkageError e) {
+						// android.test.mock is not part of every system image
+						Log.e(TAG, "Benchmark " + benchmark.getClass().getSimpleName() + " cannot run on this device", e);
+					}
+				}
+				Log.i(TAG, "Done");
+			}
+		}, TAG).start();
+	}
+
+	// the benchmarks matching name, all of them if name is null
+	private static List<Runnable> getBenchmarks(Context context, String name) {
+		List<Runnable> benchmarks = new ArrayList<Runnable>();
+		if (name == null || StorageBenchmark.NAME.equals(name)) {
+			benchmarks.add(new StorageBenchmark(context));
+		}
+		if (name == null || BatchBenchmark.NAME.equals(name)) {
+			benchmarks.add(new BatchBenchmark(context));
+		}
+		if (name == null || ConcurrentReadBenchmark.NAME.equals(name)) {
+			benchmarks.add(new ConcurrentReadBenchmark(context));
+		}
+		if (name == null || SyncBenchmark.NAME.equals(name)) {
+			benchmarks.add(new SyncBenchmark(context));
+		}
+		if (name == null || MigrationCheck.NAME.equals(name)) {
+			benchmarks.add(new MigrationCheck(context));
+		}
+		if (name == null || DeleteBenchmark.NAME.equals(name)) {
+			benchmarks.add(new DeleteBenchmark(context));
+		}
+		if (name == null || InsertBenchmark.NAME.equals(name)) {
+			benchmarks.add(new InsertBenchmark(context));
+		}
+		return benchmarks;
+	}
+}
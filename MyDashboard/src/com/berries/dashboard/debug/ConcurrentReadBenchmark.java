@@ -0,0 +1,148 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+package com.berries.dashboard.debug;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.util.Log;
+
+import com.berries.dashboard.db.WheelContentProvider;
+import com.berries.dashboard.db.tables.Contract;
+import com.berries.dashboard.db.tables.PackedValuesCodec;
+
+/**
+ * Measures the latency of progress queries run from several threads at once, first on their own and then while 
+ * another thread keeps saving wheels, as the loaders of the dashboard do while a save is written. 
+ * Every query has its own selection argument so that none is served by the query cache. 
+ * Runs against a scratch database, filter the log by the ConcurrentReadBenchmark tag.
+ */
+class ConcurrentReadBenchmark implements Runnable {
+
+	static final String NAME = "concurrent";
+
+	private static final String TAG = ConcurrentReadBenchmark.class.getSimpleName();
+	private static final String DATABASE_NAME = "benchmark_concurrent";
+	private static final int ROWS = 5000;
+	private static final int READERS = 4;
+	private static final int QUERIES = 200;
+	private static final int PAGE_SIZE = 30;
+	// one of the default wheels of a new database
+	private static final int TYPE_ID = 1;
+
+	private final Context mContext;
+
+	ConcurrentReadBenchmark(Context context) {
+		mContext = context;
+	}
+
+	@Override
+	public void run() {
+		ScratchDatabase database = new ScratchDatabase(mContext, DATABASE_NAME);
+		try {
+			final WheelContentProvider provider = database.getProvider();
+			final long packedValues = PackedValuesCodec.pack(new int[] { 3, 5, 7, 9, 2, 4, 6, 8 }, Contract.MAX_ITEMS_IN_WHEEL);
+			final long date = System.currentTimeMillis() - 2 * ROWS * 1000L;
+			ContentValues[] rows = new ContentValues[ROWS];
+			for (int i = 0; i < ROWS; i++) {
+				rows[i] = new ContentValues();
+				rows[i].put(Contract.COLUMN_TYPE_ID, TYPE_ID);
+				rows[i].put(Contract.COLUMN_DATE, date + i * 1000L);
+				rows[i].put(Contract.COLUMN_PACKED_VALUES, packedValues);
+			}
+			database.getContentResolver().bulkInsert(WheelContentProvider.CONTENT_PROGRESS_SINGLE_URI, rows);
+
+			runReaders(database.getContentResolver(), 0, null);
+
+			final AtomicBoolean reading = new AtomicBoolean(true);
+			final int[] saves = new int[1];
+			Thread writer = new Thread("benchmark-writer") {
+				@Override
+				public void run() {
+					long saveDate = date + ROWS * 1000L;
+					while (reading.get()) {
+						provider.insertSnapshot(TYPE_ID, saveDate, packedValues);
+						saveDate += 1000L;
+						saves[0]++;
+					}
+				}
+			};
+			long start = System.nanoTime();
+			writer.start();
+			runReaders(database.getContentResolver(), READERS * QUERIES, "with a writer");
+			reading.set(false);
+			writer.join();
+			Log.i(TAG, "writer saved " + Timing.rate(saves[0], System.nanoTime() - start));
+		} catch (InterruptedException e) {
+			Log.e(TAG, "Interrupted", e);
+			Thread.currentThread().interrupt();
+		} finally {
+			database.close();
+		}
+	}
+
+	/**
+	 * Runs QUERIES page queries on each of READERS threads and logs their latency
+	 * @param argumentOffset added to the selection argument of every query, keeps the runs from sharing a query
+	 * @param label appended to the log line, null for the run without a writer
+	 */
+	private void runReaders(final ContentResolver resolver, final int argumentOffset, String label) throws InterruptedException {
+		final Uri uri = WheelContentProvider.getPageUri(WheelContentProvider.getProgressUri(TYPE_ID), PAGE_SIZE, null);
+		final long[] latencies = new long[READERS * QUERIES];
+		Thread[] readers = new Thread[READERS];
+		for (int r = 0; r < READERS; r++) {
+			final int first = r * QUERIES;
+			readers[r] = new Thread("benchmark-reader-" + r) {
+				@Override
+				public void run() {
+					for (int i = first; i < first + QUERIES; i++) {
+						long start = System.nanoTime();
+						// every row is after this date, the argument only makes the query unique
+						Cursor cursor = resolver.query(uri, null, Contract.COLUMN_DATE + " > ?",
+								new String[] { String.valueOf(argumentOffset + i) }, null);
+						if (cursor != null) {
+							cursor.getCount();
+							cursor.close();
+						}
+						latencies[i] = System.nanoTime() - start;
+					}
+				}
+			};
+		}
+		long start = System.nanoTime();
+		for (Thread reader : readers) {
+			reader.start();
+		}
+		for (Thread reader : readers) {
+			reader.join();
+		}
+		long nanos = System.nanoTime() - start;
+		Log.i(TAG, READERS + " readers" + (label == null ? "" : " " + label) + ": " + Timing.rate(latencies.length, nanos) + ", "
+				+ Timing.percentiles(latencies, latencies.length));
+	}
+}
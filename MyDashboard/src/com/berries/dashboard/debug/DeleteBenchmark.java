@@ -0,0 +1,168 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+package com.berries.dashboard.debug;
+
+import java.util.concurrent.CountDownLatch;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.berries.dashboard.adapters.WheelTypesConnector;
+import com.berries.dashboard.db.WheelContentProvider;
+import com.berries.dashboard.db.tables.Contract;
+import com.berries.dashboard.db.tables.PackedValuesCodec;
+
+/**
+ * Times deleting a wheel type with about 20000 saved wheels, through {@link WheelTypesConnector#deleteWheelType(Context, int)} 
+ * and through the two deletes it replaced, the saved values first and then the type. Both run with and without a change log 
+ * consumer registered, since the change log triggers fire once for every row the delete cascades to. 
+ * DashboardActivity.onClick still deletes on the main thread, so the deletes run there and the time the main thread is blocked 
+ * is logged with the number of frames it would miss. Every delete gets a scratch database of its own, 
+ * filter the log by the DeleteBenchmark tag.
+ */
+class DeleteBenchmark implements Runnable {
+
+	static final String NAME = "delete";
+
+	private static final String TAG = DeleteBenchmark.class.getSimpleName();
+	private static final String DATABASE_NAME = "benchmark_delete";
+	private static final String CONSUMER_NAME = "benchmark";
+	private static final int SNAPSHOTS = 20000;
+	private static final long FRAME_NANOS = 16666667L;
+	// one of the default wheels of a new database
+	private static final int TYPE_ID = 1;
+
+	private abstract static class Path {
+		final String name;
+
+		Path(String name) {
+			this.name = name;
+		}
+
+		abstract int delete(ScratchDatabase database);
+	}
+
+	private static final Path CASCADE = new Path("deleteWheelType") {
+		@Override
+		int delete(ScratchDatabase database) {
+			return WheelTypesConnector.deleteWheelType(database.getContext(), TYPE_ID);
+		}
+	};
+
+	private static final Path TWO_DELETES = new Path("values then type") {
+		@Override
+		int delete(ScratchDatabase database) {
+			String[] typeIdArg = { String.valueOf(TYPE_ID) };
+			ContentResolver resolver = database.getContentResolver();
+			resolver.delete(WheelContentProvider.CONTENT_PROGRESS_SINGLE_URI, Contract.COLUMN_TYPE_ID + " = ?", typeIdArg);
+			return resolver.delete(WheelContentProvider.CONTENT_WHEEL_TYPES_SINGLE_URI, Contract.COLUMN_ID + " = ?", typeIdArg);
+		}
+	};
+
+	private final Context mContext;
+	private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+	DeleteBenchmark(Context context) {
+		mContext = context;
+	}
+
+	@Override
+	public void run() {
+		try {
+			for (boolean consumer : new boolean[] { false, true }) {
+				for (Path path : new Path[] { CASCADE, TWO_DELETES }) {
+					measure(path, consumer);
+				}
+			}
+		} catch (InterruptedException e) {
+			Log.e(TAG, "Interrupted", e);
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void measure(final Path path, boolean consumer) throws InterruptedException {
+		final ScratchDatabase database = new ScratchDatabase(mContext, DATABASE_NAME);
+		try {
+			seed(database.getContentResolver());
+			if (consumer) {
+				// registered after seeding, so that only the delete is logged
+				database.getContentResolver().insert(WheelContentProvider.getChangeConsumerUri(CONSUMER_NAME), new ContentValues());
+			}
+			final long[] nanos = new long[1];
+			final int[] deleted = new int[1];
+			final CountDownLatch done = new CountDownLatch(1);
+			mMainHandler.post(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						long start = System.nanoTime();
+						deleted[0] = path.delete(database);
+						nanos[0] = System.nanoTime() - start;
+					} finally {
+						done.countDown();
+					}
+				}
+			});
+			done.await();
+			Log.i(TAG, path.name + (consumer ? " with" : " without") + " a change log consumer: main thread blocked for "
+					+ Timing.micros(nanos[0]) + ", " + (nanos[0] / FRAME_NANOS) + " frames missed, " + deleted[0] + " wheel types deleted, "
+					+ countRows(database.getContentResolver(), WheelContentProvider.getProgressUri(TYPE_ID)) + " saved wheels left, "
+					+ (consumer ? countRows(database.getContentResolver(), WheelContentProvider.CONTENT_CHANGES_URI) : 0) + " changes logged");
+		} finally {
+			database.close();
+		}
+	}
+
+	private static void seed(ContentResolver resolver) {
+		long packedValues = PackedValuesCodec.pack(new int[] { 3, 5, 7, 9, 2, 4, 6, 8 }, Contract.MAX_ITEMS_IN_WHEEL);
+		// an hour apart, a little over two years of history
+		long date = System.currentTimeMillis() - SNAPSHOTS * 3600000L;
+		ContentValues[] rows = new ContentValues[SNAPSHOTS];
+		for (int i = 0; i < SNAPSHOTS; i++) {
+			rows[i] = new ContentValues();
+			rows[i].put(Contract.COLUMN_TYPE_ID, TYPE_ID);
+			rows[i].put(Contract.COLUMN_DATE, date + i * 3600000L);
+			rows[i].put(Contract.COLUMN_PACKED_VALUES, packedValues);
+		}
+		resolver.bulkInsert(WheelContentProvider.CONTENT_PROGRESS_SINGLE_URI, rows);
+	}
+
+	private static int countRows(ContentResolver resolver, Uri uri) {
+		Cursor cursor = resolver.query(uri, null, null, null, null);
+		if (cursor == null) {
+			return -1;
+		}
+		try {
+			return cursor.getCount();
+		} finally {
+			cursor.close();
+		}
+	}
+}
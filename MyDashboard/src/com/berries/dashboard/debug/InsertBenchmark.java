@@ -0,0 +1,118 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+package com.berries.dashboard.debug;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.os.Debug;
+import android.util.Log;
+
+import com.berries.dashboard.db.WheelContentProvider;
+import com.berries.dashboard.db.tables.Contract;
+import com.berries.dashboard.db.tables.PackedValuesCodec;
+
+/**
+ * Compares the cost of a single save through the typed {@link WheelContentProvider#insertSnapshot(int, long, long)} 
+ * with a save through {@link WheelContentProvider#insert(android.net.Uri, ContentValues)}, ContentValues built as a caller would. 
+ * Logs the time and the number and size of the objects allocated per save, each save being its own transaction. 
+ * Allocation counting is only supported by some runtimes, it logs 0 elsewhere. 
+ * Runs against a scratch database, filter the log by the InsertBenchmark tag.
+ */
+class InsertBenchmark implements Runnable {
+
+	static final String NAME = "insert";
+
+	private static final String TAG = InsertBenchmark.class.getSimpleName();
+	private static final String DATABASE_NAME = "benchmark_insert";
+	private static final int WARM_UP = 100;
+	private static final int SAVES = 2000;
+	// one of the default wheels of a new database
+	private static final int TYPE_ID = 1;
+
+	private abstract static class Path {
+		final String name;
+
+		Path(String name) {
+			this.name = name;
+		}
+
+		abstract void save(WheelContentProvider provider, long date, long packedValues);
+	}
+
+	private static final Path TYPED = new Path("typed") {
+		@Override
+		void save(WheelContentProvider provider, long date, long packedValues) {
+			provider.insertSnapshot(TYPE_ID, date, packedValues);
+		}
+	};
+
+	private static final Path CONTENT_VALUES = new Path("ContentValues") {
+		@Override
+		void save(WheelContentProvider provider, long date, long packedValues) {
+			ContentValues values = new ContentValues();
+			values.put(Contract.COLUMN_TYPE_ID, TYPE_ID);
+			values.put(Contract.COLUMN_DATE, date);
+			values.put(Contract.COLUMN_PACKED_VALUES, packedValues);
+			provider.insert(WheelContentProvider.CONTENT_PROGRESS_SINGLE_URI, values);
+		}
+	};
+
+	private final Context mContext;
+
+	InsertBenchmark(Context context) {
+		mContext = context;
+	}
+
+	@Override
+	public void run() {
+		ScratchDatabase database = new ScratchDatabase(mContext, DATABASE_NAME);
+		try {
+			WheelContentProvider provider = database.getProvider();
+			long packedValues = PackedValuesCodec.pack(new int[] { 3, 5, 7, 9, 2, 4, 6, 8 }, Contract.MAX_ITEMS_IN_WHEEL);
+			long date = System.currentTimeMillis() - 2 * (WARM_UP + SAVES) * 1000L;
+			// compiles the cached statements and warms up the JIT for both paths
+			for (int i = 0; i < WARM_UP; i++) {
+				TYPED.save(provider, date++, packedValues);
+				CONTENT_VALUES.save(provider, date++, packedValues);
+			}
+			for (Path path : new Path[] { TYPED, CONTENT_VALUES }) {
+				Debug.resetThreadAllocCount();
+				Debug.resetThreadAllocSize();
+				Debug.startAllocCounting();
+				long start = System.nanoTime();
+				for (int i = 0; i < SAVES; i++) {
+					path.save(provider, date++, packedValues);
+				}
+				long nanos = System.nanoTime() - start;
+				Debug.stopAllocCounting();
+				int allocations = Debug.getThreadAllocCount();
+				int bytes = Debug.getThreadAllocSize();
+				Log.i(TAG, path.name + " " + Timing.rate(SAVES, nanos) + ", " + Timing.micros(nanos / SAVES) + " per save, "
+						+ (allocations / SAVES) + " objects and " + (bytes / SAVES) + " bytes allocated per save");
+			}
+		} finally {
+			database.close();
+		}
+	}
+}
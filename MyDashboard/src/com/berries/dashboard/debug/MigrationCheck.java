@@ -0,0 +1,326 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+package com.berries.dashboard.debug;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.berries.dashboard.db.WheelDBManager;
+import com.berries.dashboard.db.WheelItemValuesMigration;
+import com.berries.dashboard.db.tables.ChangeLogTable;
+import com.berries.dashboard.db.tables.Contract;
+import com.berries.dashboard.db.tables.PackedValuesCodec;
+import com.berries.dashboard.db.tables.WheelItemValuesTable;
+import com.berries.dashboard.db.tables.WheelTypesTable;
+import com.berries.dashboard.db.tables.WheelValuesTable;
+
+/**
+ * Builds a scratch database with the schema of version 2, the first released one, and saved wheels dated in seconds 
+ * as that version stored them. Upgrades it with {@link WheelDBManager#migrate(SQLiteDatabase, int, int)} to the current version, 
+ * then copies the item values as {@link WheelItemValuesMigration} does after an upgrade. Logs the time of both and checks 
+ * that no saved wheel was lost or changed and that the schema matches the one of a new install. 
+ * Filter the log by the MigrationCheck tag.
+ */
+class MigrationCheck implements Runnable {
+
+	static final String NAME = "migrate";
+
+	private static final String TAG = MigrationCheck.class.getSimpleName();
+	private static final String DATABASE_NAME = "benchmark_migrate";
+	private static final String FRESH_DATABASE_NAME = "benchmark_migrate_fresh";
+	private static final int OLD_VERSION = 2;
+	private static final int NEW_VERSION = 13;
+	private static final int SNAPSHOTS = 3000;
+	// June 2013 in seconds, an hour between saves
+	private static final long FIRST_DATE_SECONDS = 1370000000L;
+	private static final long SECONDS_BETWEEN_SAVES = 3600L;
+	private static final int CHUNK_SIZE = 500;
+	// a broken step usually breaks every row, the first ones are enough to tell
+	private static final int MAX_LOGGED_FAILURES = 20;
+
+	// the schema of version 2, frozen here because the table classes only know how to create the current one
+	private static final String[] VERSION_2_SCHEMA = {
+			"create table WHEEL_PROGRESS (_id integer primary key autoincrement, typeId INTEGER NOT NULL, "
+					+ "value0 INTEGER DEFAULT 10, value1 INTEGER DEFAULT 10, value2 INTEGER DEFAULT 10, value3 INTEGER DEFAULT 10, "
+					+ "value4 INTEGER DEFAULT 10, value5 INTEGER DEFAULT 10, value6 INTEGER DEFAULT 10, value7 INTEGER DEFAULT 10, "
+					+ "date INTEGER NOT NULL DEFAULT (strftime('%s','now')),FOREIGN KEY(typeId) REFERENCES WHEEL_TYPES(_id) );",
+			"create table WHEEL_TYPES (_id integer primary key autoincrement, title TEXT NOT NULL, "
+					+ "item0 TEXT, item1 TEXT, item2 TEXT, item3 TEXT, item4 TEXT, item5 TEXT, item6 TEXT, item7 TEXT, "
+					+ "date INTEGER NOT NULL DEFAULT (strftime('%s','now')), count INTEGER NOT NULL DEFAULT 8);",
+			"insert into WHEEL_TYPES (title, item0, item1, item2, item3, item4, item5, item6, item7, count) VALUES "
+					+ "('Wheel of Life', 'Environment', 'Career', 'Money', 'Health', 'Friends&Family', 'Significant Other','Personal Growth','Recreation/Fun', 8);",
+			"insert into WHEEL_TYPES (title, item0, item1, item2, item3, item4, item5, item6, item7, count) VALUES "
+					+ "('Keeping Healthy', 'Healthy Eating', 'Drinking Water', 'Exercise', 'Meditation', 'Sleep Well', 'Me time/Hobbies','','', 6);",
+			"insert into WHEEL_TYPES (title, item0, item1, item2, item3, item4, item5, item6, item7, count) VALUES "
+					+ "('My Mood Today', 'Happy', 'Optimistic', 'Motivated', 'Confident', 'Excited','Playful','Loved', 'Relaxed', 8);",
+			"insert into WHEEL_TYPES (title, item0, item1, item2, item3, item4, item5, item6, item7, count) VALUES "
+					+ "('Working Skills', 'Communication', 'Fast-Learning', 'Team Player', 'Creative Thinking', 'Problem Solving', 'Task Management', 'Motivation', 'Independence', 8);",
+			"insert into WHEEL_TYPES (title, item0, item1, item2, item3, item4, item5, item6, item7, count) VALUES "
+					+ "('Mobile Developer Skills', 'Android', 'Java', 'iOS', 'ObjectiveC', 'C/C++', 'Multithreading', 'Design Patterns', 'HTML5/CSS/Javascript', 8);",
+			"insert into WHEEL_TYPES (title, item0, item1, item2, item3, item4, item5, item6, item7, count) VALUES "
+					+ "('Mobile App Health', 'OO Design', 'Short and Clear Code','Documentation', 'Input Validation','Thread Happy', 'Performance', 'Memory Usage',  'Battery Consumption', 8);" };
+	private static final int DEFAULT_WHEELS = 6;
+
+	private final Context mContext;
+	private final List<String> mFailures = new ArrayList<String>();
+	private int mFailureCount;
+
+	MigrationCheck(Context context) {
+		mContext = context;
+	}
+
+	@Override
+	public void run() {
+		mFailures.clear();
+		mFailureCount = 0;
+		mContext.deleteDatabase(DATABASE_NAME);
+		SQLiteDatabase database = mContext.openOrCreateDatabase(DATABASE_NAME, Context.MODE_PRIVATE, null);
+		try {
+			createVersion2(database);
+
+			long start = System.nanoTime();
+			// in a transaction as SQLiteOpenHelper.onUpgrade is
+			database.beginTransaction();
+			try {
+				WheelDBManager.migrate(database, OLD_VERSION, NEW_VERSION);
+				database.setTransactionSuccessful();
+			} finally {
+				database.endTransaction();
+			}
+			Log.i(TAG, "migrate(" + OLD_VERSION + ", " + NEW_VERSION + ") " + Timing.rate(SNAPSHOTS, System.nanoTime() - start));
+
+			start = System.nanoTime();
+			while (WheelItemValuesMigration.migrateChunk(database, CHUNK_SIZE)) {
+				// copies the next chunk
+			}
+			Log.i(TAG, "item values copied " + Timing.rate(SNAPSHOTS, System.nanoTime() - start));
+
+			checkIndex(database);
+			checkSnapshots(database);
+			checkGuids(database, WheelValuesTable.TABLE_NAME);
+			checkGuids(database, WheelTypesTable.TABLE_NAME);
+			checkEmpty(database, "select count(*) from " + ChangeLogTable.TABLE_NAME, "change log entries");
+			checkIntegrity(database);
+			checkSchema(database);
+		} finally {
+			database.close();
+			mContext.deleteDatabase(DATABASE_NAME);
+		}
+		if (mFailureCount == 0) {
+			Log.i(TAG, "Passed");
+		} else {
+			for (String failure : mFailures) {
+				Log.e(TAG, failure);
+			}
+			Log.e(TAG, "Failed " + mFailureCount + " checks");
+		}
+	}
+
+	private void fail(String failure) {
+		if (mFailureCount++ < MAX_LOGGED_FAILURES) {
+			mFailures.add(failure);
+		}
+	}
+
+	private static void createVersion2(SQLiteDatabase database) {
+		database.beginTransaction();
+		try {
+			for (String sql : VERSION_2_SCHEMA) {
+				database.execSQL(sql);
+			}
+			SQLiteStatement insert = database.compileStatement("insert into WHEEL_PROGRESS (typeId, value0, value1, value2, value3, "
+					+ "value4, value5, value6, value7, date) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+			try {
+				int[] values = new int[Contract.MAX_ITEMS_IN_WHEEL];
+				for (int i = 0; i < SNAPSHOTS; i++) {
+					fillValues(i, values);
+					insert.bindLong(1, getTypeId(i));
+					for (int item = 0; item < values.length; item++) {
+						insert.bindLong(2 + item, values[item]);
+					}
+					insert.bindLong(2 + values.length, FIRST_DATE_SECONDS + i * SECONDS_BETWEEN_SAVES);
+					insert.executeInsert();
+				}
+			} finally {
+				insert.close();
+			}
+			database.setTransactionSuccessful();
+		} finally {
+			database.endTransaction();
+		}
+	}
+
+	// the nth saved wheel, cycling through the default wheels
+	private static int getTypeId(int snapshot) {
+		return snapshot % DEFAULT_WHEELS + 1;
+	}
+
+	private static void fillValues(int snapshot, int[] values) {
+		for (int item = 0; item < values.length; item++) {
+			values[item] = (snapshot + item) % 10 + 1;
+		}
+	}
+
+	private void checkIndex(SQLiteDatabase database) {
+		long count = DatabaseUtils.longForQuery(database, "select count(*) from sqlite_master where type = 'index' and name = ?",
+				new String[] { WheelValuesTable.INDEX_TYPE_DATE });
+		if (count != 1) {
+			fail("Index " + WheelValuesTable.INDEX_TYPE_DATE + " is missing");
+		}
+	}
+
+	// every saved wheel is still there with its date in milliseconds, its values packed and copied into WHEEL_ITEM_VALUES
+	private void checkSnapshots(SQLiteDatabase database) {
+		Cursor cursor = database.rawQuery("select p." + Contract.COLUMN_ID + ", p." + Contract.COLUMN_TYPE_ID + ", p." + Contract.COLUMN_DATE
+				+ ", p." + Contract.COLUMN_PACKED_VALUES + ", t." + Contract.COLUMN_COUNT + " from " + WheelValuesTable.TABLE_NAME + " p join "
+				+ WheelTypesTable.TABLE_NAME + " t on t." + Contract.COLUMN_ID + " = p." + Contract.COLUMN_TYPE_ID + " order by p."
+				+ Contract.COLUMN_ID, null);
+		int[] values = new int[Contract.MAX_ITEMS_IN_WHEEL];
+		long itemValues = 0;
+		try {
+			if (cursor.getCount() != SNAPSHOTS) {
+				fail(cursor.getCount() + " saved wheels left of " + SNAPSHOTS);
+			}
+			while (cursor.moveToNext()) {
+				int snapshot = (int) cursor.getLong(0) - 1;
+				int count = cursor.getInt(4);
+				fillValues(snapshot, values);
+				if (cursor.getInt(1) != getTypeId(snapshot)) {
+					fail("Saved wheel " + cursor.getLong(0) + " moved to wheel type " + cursor.getInt(1));
+				}
+				long date = (FIRST_DATE_SECONDS + snapshot * SECONDS_BETWEEN_SAVES) * 1000L;
+				if (cursor.getLong(2) != date) {
+					fail("Saved wheel " + cursor.getLong(0) + " is dated " + cursor.getLong(2) + " instead of " + date);
+				}
+				long packedValues = PackedValuesCodec.pack(values, count);
+				if (cursor.isNull(3) || cursor.getLong(3) != packedValues) {
+					fail("Saved wheel " + cursor.getLong(0) + " has packed values " + cursor.getString(3) + " instead of "
+							+ PackedValuesCodec.pack(values, count));
+				}
+				itemValues += count;
+			}
+		} finally {
+			cursor.close();
+		}
+		long copied = DatabaseUtils.longForQuery(database, "select count(*) from " + WheelItemValuesTable.TABLE_NAME, null);
+		if (copied != itemValues) {
+			fail(copied + " rows in " + WheelItemValuesTable.TABLE_NAME + " instead of " + itemValues);
+		}
+		checkEmpty(database, "select count(*) from " + WheelTypesTable.TABLE_NAME + " where " + Contract.COLUMN_DATE + " < "
+				+ Contract.MIN_DATE_IN_MILLIS, "wheel types dated in seconds");
+	}
+
+	private void checkGuids(SQLiteDatabase database, String tableName) {
+		checkEmpty(database, "select count(*) from " + tableName + " where " + Contract.COLUMN_GUID + " is null", "rows of " + tableName
+				+ " without a guid");
+		checkEmpty(database, "select count(*) - count(distinct " + Contract.COLUMN_GUID + ") from " + tableName, "duplicate guids in "
+				+ tableName);
+	}
+
+	private void checkEmpty(SQLiteDatabase database, String countSql, String what) {
+		long count = DatabaseUtils.longForQuery(database, countSql, null);
+		if (count != 0) {
+			fail(count + " " + what);
+		}
+	}
+
+	private void checkIntegrity(SQLiteDatabase database) {
+		String integrity = DatabaseUtils.stringForQuery(database, "PRAGMA integrity_check", null);
+		if (!"ok".equals(integrity)) {
+			fail("integrity_check: " + integrity);
+		}
+		// SQLite before 3.7.16 ignores this pragma and returns no rows
+		Cursor cursor = database.rawQuery("PRAGMA foreign_key_check", null);
+		try {
+			while (cursor.moveToNext()) {
+				fail("foreign_key_check: row " + cursor.getLong(1) + " of " + cursor.getString(0) + " references a missing "
+						+ cursor.getString(2));
+			}
+		} finally {
+			cursor.close();
+		}
+	}
+
+	// the tables, views, indexes and triggers, with their columns, must be the same as those of a new install
+	private void checkSchema(SQLiteDatabase database) {
+		mContext.deleteDatabase(FRESH_DATABASE_NAME);
+		WheelDBManager fresh = new WheelDBManager(mContext, FRESH_DATABASE_NAME);
+		TreeSet<String> expected;
+		try {
+			expected = describeSchema(fresh.getWritableDatabase());
+		} finally {
+			fresh.close();
+			mContext.deleteDatabase(FRESH_DATABASE_NAME);
+		}
+		TreeSet<String> actual = describeSchema(database);
+		for (String object : expected) {
+			if (!actual.contains(object)) {
+				fail("Missing after the upgrade: " + object);
+			}
+		}
+		for (String object : actual) {
+			if (!expected.contains(object)) {
+				fail("Not in a new install: " + object);
+			}
+		}
+	}
+
+	private static TreeSet<String> describeSchema(SQLiteDatabase database) {
+		TreeSet<String> schema = new TreeSet<String>();
+		Cursor objects = database.rawQuery("select type, name from sqlite_master where name not like 'sqlite_%' and name != 'android_metadata'",
+				null);
+		try {
+			while (objects.moveToNext()) {
+				String type = objects.getString(0);
+				String name = objects.getString(1);
+				if ("table".equals(type) || "view".equals(type)) {
+					TreeSet<String> columns = new TreeSet<String>();
+					Cursor info = database.rawQuery("PRAGMA table_info(" + name + ")", null);
+					try {
+						int nameColumn = info.getColumnIndexOrThrow("name");
+						while (info.moveToNext()) {
+							columns.add(info.getString(nameColumn));
+						}
+					} finally {
+						info.close();
+					}
+					schema.add(type + " " + name + " " + columns);
+				} else {
+					schema.add(type + " " + name);
+				}
+			}
+		} finally {
+			objects.close();
+		}
+		return schema;
+	}
+}
@@ -0,0 +1,88 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+package com.berries.dashboard.debug;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.ContentResolver;
+import android.test.mock.MockContentResolver;
+
+import com.berries.dashboard.db.WheelContentProvider;
+
+/**
+ * A WheelContentProvider over a database of its own, so that the benchmarks never touch the wheels of the user. 
+ * {@link #getContentResolver()} and the context of {@link #getContext()} route the provider authority to it. 
+ * {@link #close()} closes and deletes the database.
+ */
+class ScratchDatabase {
+
+	private final String mName;
+	private final MockContentResolver mResolver = new MockContentResolver();
+	private final Context mContext;
+	private final WheelContentProvider mProvider;
+
+	/**
+	 * Creates the database, a database of the same name left over by a previous run is deleted first
+	 * @param context
+	 * @param name of the database file
+	 */
+	ScratchDatabase(Context context, String name) {
+		mName = name;
+		mContext = new ContextWrapper(context.getApplicationContext()) {
+			@Override
+			public ContentResolver getContentResolver() {
+				return mResolver;
+			}
+
+			@Override
+			public Context getApplicationContext() {
+				return this;
+			}
+		};
+		mContext.deleteDatabase(name);
+		mProvider = new WheelContentProvider(name);
+		mProvider.attachInfo(mContext, null);
+		mResolver.addProvider(WheelContentProvider.AUTHORITY, mProvider);
+	}
+
+	/** @return Context whose content resolver and application context lead to this database */
+	Context getContext() {
+		return mContext;
+	}
+
+	/** @return ContentResolver routing the WheelContentProvider uris to this database, observers are never notified */
+	ContentResolver getContentResolver() {
+		return mResolver;
+	}
+
+	/** @return WheelContentProvider the provider, for calls that have no uri */
+	WheelContentProvider getProvider() {
+		return mProvider;
+	}
+
+	void close() {
+		mProvider.shutdown();
+		mContext.deleteDatabase(mName);
+	}
+}
@@ -0,0 +1,162 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+package com.berries.dashboard.debug;
+
+import java.io.File;
+import java.util.Random;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.berries.dashboard.db.WheelWriteQueue;
+import com.berries.dashboard.db.tables.Contract;
+import com.berries.dashboard.db.tables.PackedValuesCodec;
+import com.berries.dashboard.storage.JournalSnapshotStorage;
+import com.berries.dashboard.storage.SQLiteSnapshotStorage;
+import com.berries.dashboard.storage.SnapshotStorage;
+
+/**
+ * Compares the append and full-scan throughput of the two {@link SnapshotStorage} engines. 
+ * Appends are timed until the snapshots are written out: {@link WheelWriteQueue#flush()} for the SQLite table, 
+ * {@link JournalSnapshotStorage#flush()} for the journal. The journal is closed before the scan, so the scan includes 
+ * opening it and checking every record. Runs against a scratch database and journal directory, filter the log by the StorageBenchmark tag.
+ */
+class StorageBenchmark implements Runnable {
+
+	static final String NAME = "storage";
+
+	private static final String TAG = StorageBenchmark.class.getSimpleName();
+	private static final String DATABASE_NAME = "benchmark_storage";
+	private static final String JOURNAL_DIRECTORY = "benchmark_journal";
+	private static final int SNAPSHOTS = 5000;
+	// one of the default wheels of a new database
+	private static final int TYPE_ID = 1;
+
+	private final Context mContext;
+
+	StorageBenchmark(Context context) {
+		mContext = context;
+	}
+
+	@Override
+	public void run() {
+		long[] packedValues = createValues(SNAPSHOTS);
+
+		ScratchDatabase database = new ScratchDatabase(mContext, DATABASE_NAME);
+		final WheelWriteQueue queue = new WheelWriteQueue(database.getContentResolver());
+		try {
+			measure("SQLite", new SQLiteSnapshotStorage(database.getContext(), queue), packedValues, new Runnable() {
+				@Override
+				public void run() {
+					queue.flush();
+				}
+			}, null);
+		} finally {
+			queue.shutdown();
+			database.close();
+		}
+
+		File directory = new File(mContext.getCacheDir(), JOURNAL_DIRECTORY);
+		deleteFiles(directory);
+		final JournalSnapshotStorage journal = new JournalSnapshotStorage(directory);
+		try {
+			measure("journal", journal, packedValues, new Runnable() {
+				@Override
+				public void run() {
+					journal.flush();
+				}
+			}, new Runnable() {
+				@Override
+				public void run() {
+					journal.close();
+				}
+			});
+		} finally {
+			journal.close();
+			deleteFiles(directory);
+		}
+	}
+
+	/**
+	 * @param write waits until the snapshots appended are written out
+	 * @param beforeScan run between the appends and the scan, may be null
+	 */
+	private void measure(String engine, SnapshotStorage storage, long[] packedValues, Runnable write, Runnable beforeScan) {
+		long date = System.currentTimeMillis() - packedValues.length * 1000L;
+		long start = System.nanoTime();
+		for (long values : packedValues) {
+			storage.append(TYPE_ID, date, values, null);
+			date += 1000;
+		}
+		write.run();
+		long appendNanos = System.nanoTime() - start;
+
+		if (beforeScan != null) {
+			beforeScan.run();
+		}
+		final long[] checksum = new long[1];
+		start = System.nanoTime();
+		int scanned = storage.scan(TYPE_ID, new SnapshotStorage.Visitor() {
+			@Override
+			public void onSnapshot(long date, long packedValues) {
+				checksum[0] += packedValues;
+			}
+		});
+		long scanNanos = System.nanoTime() - start;
+
+		Log.i(TAG, engine + " append " + Timing.rate(packedValues.length, appendNanos) + ", scan " + Timing.rate(scanned, scanNanos));
+		if (scanned != packedValues.length || checksum[0] != sum(packedValues)) {
+			Log.e(TAG, engine + " read back " + scanned + " snapshots that do not match the " + packedValues.length + " appended");
+		}
+	}
+
+	// random values for a wheel of MAX_ITEMS_IN_WHEEL items, the same for both engines
+	private static long[] createValues(int count) {
+		Random random = new Random(count);
+		int[] values = new int[Contract.MAX_ITEMS_IN_WHEEL];
+		long[] packedValues = new long[count];
+		for (int i = 0; i < count; i++) {
+			for (int item = 0; item < values.length; item++) {
+				values[item] = 1 + random.nextInt(10);
+			}
+			packedValues[i] = PackedValuesCodec.pack(values, values.length);
+		}
+		return packedValues;
+	}
+
+	private static long sum(long[] values) {
+		long sum = 0;
+		for (long value : values) {
+			sum += value;
+		}
+		return sum;
+	}
+
+	private static void deleteFiles(File directory) {
+		File[] files = directory.listFiles();
+		for (int i = 0; files != null && i < files.length; i++) {
+			files[i].delete();
+		}
+	}
+}
@@ -0,0 +1,135 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+package com.berries.dashboard.debug;
+
+import java.io.IOException;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.berries.dashboard.db.WheelContentProvider;
+import com.berries.dashboard.db.tables.Contract;
+import com.berries.dashboard.db.tables.PackedValuesCodec;
+import com.berries.dashboard.sync.InProcessSyncServer;
+import com.berries.dashboard.sync.SyncEngine;
+
+/**
+ * Syncs two scratch devices through an {@link InProcessSyncServer}. Device A then saves wheels offline. 
+ * The benchmark logs how long A takes to push them and B to catch up, with the bytes each way, and checks 
+ * that B ends up with every save of A. Filter the log by the SyncBenchmark tag.
+ */
+class SyncBenchmark implements Runnable {
+
+	static final String NAME = "sync";
+
+	private static final String TAG = SyncBenchmark.class.getSimpleName();
+	private static final String DATABASE_NAME_A = "benchmark_sync_a";
+	private static final String DATABASE_NAME_B = "benchmark_sync_b";
+	private static final int OFFLINE_SAVES = 5000;
+	// one of the default wheels of a new database
+	private static final int TYPE_ID = 1;
+
+	private final Context mContext;
+
+	SyncBenchmark(Context context) {
+		mContext = context;
+	}
+
+	@Override
+	public void run() {
+		ScratchDatabase deviceA = new ScratchDatabase(mContext, DATABASE_NAME_A);
+		ScratchDatabase deviceB = new ScratchDatabase(mContext, DATABASE_NAME_B);
+		try {
+			InProcessSyncServer server = new InProcessSyncServer();
+			SyncEngine engineA = new SyncEngine(deviceA.getContentResolver(), server, "device-a");
+			SyncEngine engineB = new SyncEngine(deviceB.getContentResolver(), server, "device-b");
+			// the first syncs exchange the default wheels, they are not part of the measurement
+			engineA.sync();
+			engineB.sync();
+			engineA.sync();
+
+			saveOffline(deviceA.getContentResolver());
+
+			long bytesPushed = server.getBytesPushed();
+			long start = System.nanoTime();
+			SyncEngine.Result push = engineA.sync();
+			Log.i(TAG, "push " + Timing.rate(push.pushed, System.nanoTime() - start) + ", "
+					+ (server.getBytesPushed() - bytesPushed) + " bytes");
+
+			long bytesPulled = server.getBytesPulled();
+			start = System.nanoTime();
+			SyncEngine.Result pull = engineB.sync();
+			Log.i(TAG, "catch-up " + Timing.rate(pull.pulled, System.nanoTime() - start) + ", "
+					+ (server.getBytesPulled() - bytesPulled) + " bytes, " + pull.skipped + " skipped");
+
+			int countA = countSnapshots(deviceA.getContentResolver());
+			int countB = countSnapshots(deviceB.getContentResolver());
+			if (countA != countB) {
+				Log.e(TAG, "Device B has " + countB + " saves, device A " + countA);
+			} else {
+				Log.i(TAG, "Both devices have " + countA + " saves, the server " + server.getRecordCount() + " records");
+			}
+		} catch (IOException e) {
+			Log.e(TAG, "Sync failed", e);
+		} catch (RemoteException e) {
+			Log.e(TAG, "Sync failed", e);
+		} catch (OperationApplicationException e) {
+			Log.e(TAG, "Sync failed", e);
+		} finally {
+			deviceA.close();
+			deviceB.close();
+		}
+	}
+
+	private static void saveOffline(ContentResolver resolver) {
+		long packedValues = PackedValuesCodec.pack(new int[] { 3, 5, 7, 9, 2, 4, 6, 8 }, Contract.MAX_ITEMS_IN_WHEEL);
+		long date = System.currentTimeMillis() - OFFLINE_SAVES * 1000L;
+		ContentValues[] rows = new ContentValues[OFFLINE_SAVES];
+		for (int i = 0; i < OFFLINE_SAVES; i++) {
+			rows[i] = new ContentValues();
+			rows[i].put(Contract.COLUMN_TYPE_ID, TYPE_ID);
+			rows[i].put(Contract.COLUMN_DATE, date + i * 1000L);
+			rows[i].put(Contract.COLUMN_PACKED_VALUES, packedValues);
+		}
+		resolver.bulkInsert(WheelContentProvider.CONTENT_PROGRESS_SINGLE_URI, rows);
+	}
+
+	// saves of every wheel, the ids of the wheels differ between the devices
+	private static int countSnapshots(ContentResolver resolver) {
+		Cursor cursor = resolver.query(WheelContentProvider.CONTENT_PROGRESS_URI, new String[] { Contract.COLUMN_ID }, null, null, null);
+		if (cursor == null) {
+			return -1;
+		}
+		try {
+			return cursor.getCount();
+		} finally {
+			cursor.close();
+		}
+	}
+}
@@ -0,0 +1,65 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+package com.berries.dashboard.debug;
+
+import java.util.Arrays;
+
+/**
+ * Formatting of the measurements logged by the benchmarks
+ */
+final class Timing {
+
+	private static final long NANOS_PER_MILLI = 1000000L;
+	private static final long NANOS_PER_MICRO = 1000L;
+
+	/** @return String e.g. "5000 in 312 ms, 16025/s" */
+	static String rate(int count, long nanos) {
+		long millis = nanos / NANOS_PER_MILLI;
+		long perSecond = (nanos == 0) ? 0 : count * 1000L * NANOS_PER_MILLI / nanos;
+		return count + " in " + millis + " ms, " + perSecond + "/s";
+	}
+
+	/** @return String e.g. "42 us" */
+	static String micros(long nanos) {
+		return (nanos / NANOS_PER_MICRO) + " us";
+	}
+
+	/**
+	 * @param nanos durations, sorted in place
+	 * @param count number of durations in nanos
+	 * @return String the median, 95th percentile and max, e.g. "p50 120 us, p95 900 us, max 2100 us"
+	 */
+	static String percentiles(long[] nanos, int count) {
+		if (count == 0) {
+			return "no samples";
+		}
+		Arrays.sort(nanos, 0, count);
+		return "p50 " + micros(nanos[count / 2]) + ", p95 " + micros(nanos[Math.min(count - 1, count * 95 / 100)])
+				+ ", max " + micros(nanos[count - 1]);
+	}
+
+	// don't want anyone to create an object of this class
+	private Timing() {
+	}
+}
@@ -0,0 +1,65 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package com.berries.dashboard.loaders;
+
+import android.support.v4.app.LoaderManager;
+import android.support.v4.content.Loader;
+import android.widget.AbsListView;
+
+/**
+ * Asks the PagedCursorLoader behind a list or grid for the next page once the user scrolls close to the last loaded row
+ */
+public class LoadMoreScrollListener implements AbsListView.OnScrollListener {
+
+	// start fetching the next page while this many loaded rows are still below the visible ones
+	private static final int ROWS_AHEAD = 10;
+
+	private final LoaderManager mLoaderManager;
+	private final int mLoaderId;
+
+	/**
+	 * @param loaderManager the manager holding the loader
+	 * @param loaderId id of a PagedCursorLoader
+	 */
+	public LoadMoreScrollListener(LoaderManager loaderManager, int loaderId) {
+		mLoaderManager = loaderManager;
+		mLoaderId = loaderId;
+	}
+
+	@Override
+	public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+		if (totalItemCount == 0 || firstVisibleItem + visibleItemCount < totalItemCount - ROWS_AHEAD) {
+			return;
+		}
+		Loader<?> loader = mLoaderManager.getLoader(mLoaderId);
+		if (loader instanceof PagedCursorLoader) {
+			((PagedCursorLoader) loader).loadMore();
+		}
+	}
+
+	@Override
+	public void onScrollStateChanged(AbsListView view, int scrollState) {
+	}
+
+}
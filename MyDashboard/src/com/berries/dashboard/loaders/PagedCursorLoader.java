@@ -0,0 +1,290 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package com.berries.dashboard.loaders;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MergeCursor;
+import android.net.Uri;
+import android.support.v4.content.AsyncTaskLoader;
+
+import com.berries.dashboard.db.WheelContentProvider;
+
+/**
+ * <p>
+ * Loads a list uri of WheelContentProvider one page at a time. The first load fetches a single page, 
+ * every call to {@link #loadMore()} fetches the next page (using the key of the last row loaded) and delivers 
+ * a cursor over all pages loaded so far. When the content changes the pages currently loaded are fetched again, 
+ * or only the new rows are fetched if a subclass can tell them apart, see {@link #queryNewRows()}.
+ * </p>
+ * The loader owns the page cursors. The delivered cursor must be released with swapCursor and never closed by the caller.
+ */
+public class PagedCursorLoader extends AsyncTaskLoader<Cursor> {
+
+	/** Default number of rows in a page */
+	public static final int DEFAULT_PAGE_SIZE = 30;
+
+	private final ForceLoadContentObserver mObserver;
+	private final Uri mUri;
+	private final String[] mProjection;
+	private final String mSelection;
+	private final String[] mSelectionArgs;
+	private final int mPageSize;
+
+	private PageListCursor mPages;
+	// true while a page requested by loadMore is being fetched
+	private boolean mLoadingMore;
+	// true when the next load should fetch again all pages instead of appending a page
+	private volatile boolean mReload = true;
+
+	public PagedCursorLoader(Context context, Uri uri, String[] projection,
+			String selection, String[] selectionArgs) {
+		this(context, uri, projection, selection, selectionArgs, DEFAULT_PAGE_SIZE);
+	}
+
+	public PagedCursorLoader(Context context, Uri uri, String[] projection,
+			String selection, String[] selectionArgs, int pageSize) {
+		super(context);
+		mObserver = new ForceLoadContentObserver();
+		mUri = uri;
+		mProjection = projection;
+		mSelection = selection;
+		mSelectionArgs = selectionArgs;
+		mPageSize = pageSize;
+	}
+
+	/**
+	 * Fetch the next page if there is one. Called as the list scrolls towards its end, 
+	 * calls while a page is already being fetched are ignored.
+	 */
+	public void loadMore() {
+		PageListCursor pages = mPages;
+		if (pages == null || !pages.hasMore() || mReload || mLoadingMore || !isStarted()) {
+			return;
+		}
+		mLoadingMore = true;
+		forceLoad();
+	}
+
+	/** @return true if there are rows that have not been loaded yet */
+	public boolean hasMore() {
+		return mPages != null && mPages.hasMore();
+	}
+
+	@Override
+	public Cursor loadInBackground() {
+		PageListCursor previous = mPages;
+		List<Cursor> pages = new ArrayList<Cursor>();
+		String afterKey = null;
+		int pagesToLoad = 1;
+		if (mReload && previous != null && !previous.getPages().isEmpty()) {
+			Cursor newRows = queryNewRows();
+			if (newRows != null) {
+				return addNewRows(previous, newRows);
+			}
+		}
+		if (mReload || previous == null) {
+			onReload();
+			// keep what the user has already scrolled through, the first page may hold more or less rows than a page
+			pagesToLoad = (previous == null) ? 1 : Math.max(1, (previous.getCount() + mPageSize - 1) / mPageSize);
+		} else {
+			pages.addAll(previous.getPages());
+			afterKey = previous.getNextKey();
+		}
+
+		boolean hasMore = true;
+		for (int i = 0; i < pagesToLoad && hasMore; i++) {
+			Cursor page = queryPage(afterKey);
+			if (page == null) {
+				hasMore = false;
+				break;
+			}
+			if (pages.isEmpty()) {
+				// all pages share the same notification uri, one observer is enough
+				page.registerContentObserver(mObserver);
+				onFirstPageLoaded(page);
+			}
+			pages.add(page);
+			hasMore = (page.getCount() >= mPageSize);
+			if (hasMore) {
+				page.moveToLast();
+				afterKey = WheelContentProvider.getPageKey(mUri, page);
+			}
+		}
+		return new PageListCursor(pages, hasMore ? afterKey : null);
+	}
+
+	// the rows loaded stay as they are, the new rows become the first page
+	private PageListCursor addNewRows(PageListCursor previous, Cursor newRows) {
+		// getCount fills the cursor window on the background thread
+		if (newRows.getCount() == 0) {
+			newRows.close();
+			return previous;
+		}
+		List<Cursor> pages = new ArrayList<Cursor>(previous.getPages().size() + 1);
+		pages.add(newRows);
+		pages.addAll(previous.getPages());
+		return new PageListCursor(pages, previous.getNextKey());
+	}
+
+	/**
+	 * Called on the background thread when the content changed, before the pages loaded are fetched again. 
+	 * A list that only grows at its start can return the rows added since instead, the pages loaded are then kept as they are.
+	 * @return Cursor the rows to show before the rows loaded, with the columns of the pages, or null to fetch all pages again
+	 */
+	protected Cursor queryNewRows() {
+		return null;
+	}
+
+	/**
+	 * Called on the background thread before the first page is fetched on the first load, 
+	 * and before the pages loaded are fetched again when {@link #queryNewRows()} returned null
+	 */
+	protected void onReload() {
+	}
+
+	/**
+	 * Called on the background thread once the first page was fetched, before it is delivered. 
+	 * The page must be left positioned before its first row
+	 * @param page
+	 */
+	protected void onFirstPageLoaded(Cursor page) {
+	}
+
+	/** @return Uri the list uri passed to the constructor */
+	protected Uri getUri() {
+		return mUri;
+	}
+
+	private Cursor queryPage(String afterKey) {
+		Uri pageUri = WheelContentProvider.getPageUri(mUri, mPageSize, afterKey);
+		Cursor page = getContext().getContentResolver().query(pageUri, mProjection, mSelection, mSelectionArgs, null);
+		if (page != null) {
+			// make sure the cursor window is filled on the background thread
+			page.getCount();
+		}
+		return page;
+	}
+
+	@Override
+	public void deliverResult(Cursor cursor) {
+		PageListCursor pages = (PageListCursor) cursor;
+		if (isReset()) {
+			if (pages != null) {
+				releasePages(pages, mPages);
+			}
+			return;
+		}
+		PageListCursor oldPages = mPages;
+		mPages = pages;
+		mReload = false;
+		mLoadingMore = false;
+
+		if (isStarted()) {
+			super.deliverResult(pages);
+		}
+
+		if (oldPages != null && oldPages != pages) {
+			releasePages(oldPages, pages);
+		}
+	}
+
+	@Override
+	public void onContentChanged() {
+		mReload = true;
+		super.onContentChanged();
+	}
+
+	@Override
+	protected void onStartLoading() {
+		if (mPages != null) {
+			deliverResult(mPages);
+		}
+		if (takeContentChanged() || mPages == null) {
+			forceLoad();
+		}
+	}
+
+	@Override
+	protected void onStopLoading() {
+		cancelLoad();
+	}
+
+	@Override
+	public void onCanceled(Cursor cursor) {
+		mLoadingMore = false;
+		if (cursor != null) {
+			releasePages((PageListCursor) cursor, mPages);
+		}
+	}
+
+	@Override
+	protected void onReset() {
+		super.onReset();
+		onStopLoading();
+		if (mPages != null) {
+			releasePages(mPages, null);
+		}
+		mPages = null;
+		mReload = true;
+	}
+
+	// close the pages of the given cursor that are not part of the cursor still in use
+	private static void releasePages(PageListCursor release, PageListCursor inUse) {
+		for (Cursor page : release.getPages()) {
+			if ((inUse == null || !inUse.getPages().contains(page)) && !page.isClosed()) {
+				page.close();
+			}
+		}
+	}
+
+	/**
+	 * A cursor over all pages loaded so far. Pages are shared between the cursors delivered by the loader.
+	 */
+	private static class PageListCursor extends MergeCursor {
+		private final List<Cursor> mPageList;
+		private final String mNextKey;
+
+		PageListCursor(List<Cursor> pages, String nextKey) {
+			super(pages.toArray(new Cursor[pages.size()]));
+			mPageList = pages;
+			mNextKey = nextKey;
+		}
+
+		List<Cursor> getPages() {
+			return mPageList;
+		}
+
+		String getNextKey() {
+			return mNextKey;
+		}
+
+		boolean hasMore() {
+			return mNextKey != null;
+		}
+	}
+}
@@ -0,0 +1,149 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package com.berries.dashboard.loaders;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+
+import com.berries.dashboard.db.WheelContentProvider;
+import com.berries.dashboard.db.WheelHistoryStore;
+import com.berries.dashboard.db.tables.Contract;
+
+/**
+ * <p>
+ * Loads the saved wheels of a wheel type, newest first, one page at a time like {@link PagedCursorLoader}. 
+ * When a wheel is saved only the rows newer than the newest row loaded are fetched, and are shown before the rows 
+ * already loaded, which are kept as they are.
+ * </p>
+ * All pages are fetched again when saved wheels of the type were deleted or changed (see {@link WheelHistoryStore#getRewriteCount(int)}), 
+ * or when a row older than the newest row loaded was added, e.g. by a restore or a sync.
+ */
+public class ProgressCursorLoader extends PagedCursorLoader {
+
+	private static final String[] COUNT_PROJECTION = { "count(*)" };
+	private static final String NEW_ROWS_ORDER = Contract.COLUMN_DATE + " DESC, " + Contract.COLUMN_ID + " DESC";
+
+	// no newest row known, all pages are fetched again on the next change
+	private static final long UNKNOWN = Long.MIN_VALUE;
+
+	// what the rows loaded were read from, kept for the cursor delivered only
+	private static class State {
+		final int rewriteCount;
+		// number of rows up to the newest row loaded
+		final long rowCount;
+		// save time of the newest row loaded, -1 if no row was loaded
+		final long newest;
+
+		State(int rewriteCount, long rowCount, long newest) {
+			this.rewriteCount = rewriteCount;
+			this.rowCount = rowCount;
+			this.newest = newest;
+		}
+	}
+
+	private final int mTypeId;
+	private volatile State mState;
+	// set by the load running, becomes mState once its cursor is delivered
+	private volatile State mLoadState;
+
+	public ProgressCursorLoader(Context context, int typeId) {
+		super(context, WheelContentProvider.getProgressUri(typeId), null, null, null);
+		mTypeId = typeId;
+	}
+
+	@Override
+	protected void onReload() {
+		// read before the rows, a change in between shows up on the next load as a count that does not match
+		int rewriteCount = WheelHistoryStore.getInstance().getRewriteCount(mTypeId);
+		mLoadState = new State(rewriteCount, count(Long.MAX_VALUE), UNKNOWN);
+	}
+
+	@Override
+	protected void onFirstPageLoaded(Cursor page) {
+		State state = mLoadState;
+		if (state != null) {
+			mLoadState = new State(state.rewriteCount, state.rowCount, getNewest(page, -1));
+		}
+	}
+
+	@Override
+	protected Cursor queryNewRows() {
+		State state = mState;
+		int rewriteCount = WheelHistoryStore.getInstance().getRewriteCount(mTypeId);
+		if (state == null || state.newest == UNKNOWN || state.rewriteCount != rewriteCount
+				|| count(state.newest + 1) != state.rowCount) {
+			return null;
+		}
+		Cursor newRows = getContext().getContentResolver().query(
+				WheelContentProvider.getProgressRangeUri(mTypeId, state.newest + 1, Long.MAX_VALUE), null, null, null, NEW_ROWS_ORDER);
+		if (newRows != null) {
+			mLoadState = new State(rewriteCount, state.rowCount + newRows.getCount(), getNewest(newRows, state.newest));
+		}
+		return newRows;
+	}
+
+	// the rows are newest first, the cursor is not shared yet so it can be moved
+	private static long getNewest(Cursor rows, long none) {
+		long newest = rows.moveToFirst() ? rows.getLong(rows.getColumnIndexOrThrow(Contract.COLUMN_DATE)) : none;
+		rows.moveToPosition(-1);
+		return newest;
+	}
+
+	// number of rows saved before the given time
+	private long count(long to) {
+		ContentResolver resolver = getContext().getContentResolver();
+		Cursor cursor = resolver.query(WheelContentProvider.getProgressRangeUri(mTypeId, 0, to), COUNT_PROJECTION, null, null, null);
+		if (cursor == null) {
+			return -1;
+		}
+		try {
+			return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+		} finally {
+			cursor.close();
+		}
+	}
+
+	@Override
+	public void deliverResult(Cursor cursor) {
+		if (cursor != null && !isReset() && mLoadState != null) {
+			mState = mLoadState;
+		}
+		mLoadState = null;
+		super.deliverResult(cursor);
+	}
+
+	@Override
+	public void onCanceled(Cursor cursor) {
+		mLoadState = null;
+		super.onCanceled(cursor);
+	}
+
+	@Override
+	protected void onReset() {
+		super.onReset();
+		mState = null;
+		mLoadState = null;
+	}
+}
@@ -0,0 +1,83 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+package com.berries.dashboard.loaders;
+
+import android.content.Context;
+import android.support.v4.content.AsyncTaskLoader;
+
+import com.berries.dashboard.db.WheelHistory;
+import com.berries.dashboard.db.WheelHistoryStore;
+
+/**
+ * Loads the in-memory {@link WheelHistory} of a wheel type. The history is read from the database only the first time, 
+ * afterwards it is kept current by the provider and later loaders get it right away.
+ */
+public class WheelHistoryLoader extends AsyncTaskLoader<WheelHistory> {
+
+	private final int mTypeId;
+	private WheelHistory mHistory;
+
+	public WheelHistoryLoader(Context context, int typeId) {
+		super(context);
+		mTypeId = typeId;
+	}
+
+	@Override
+	public WheelHistory loadInBackground() {
+		return WheelHistoryStore.getInstance().load(getContext().getContentResolver(), mTypeId);
+	}
+
+	@Override
+	public void deliverResult(WheelHistory history) {
+		mHistory = history;
+		if (isStarted()) {
+			super.deliverResult(history);
+		}
+	}
+
+	@Override
+	protected void onStartLoading() {
+		if (mHistory == null) {
+			// already in memory when the screen is opened again
+			mHistory = WheelHistoryStore.getInstance().get(mTypeId);
+		}
+		if (mHistory != null) {
+			deliverResult(mHistory);
+		} else {
+			forceLoad();
+		}
+	}
+
+	@Override
+	protected void onStopLoading() {
+		cancelLoad();
+	}
+
+	@Override
+	protected void onReset() {
+		super.onReset();
+		onStopLoading();
+		mHistory = null;
+	}
+}
@@ -50,6 +50,10 @@ public class Wheel implements Parcelable {
 	private List<WheelItem> mItems;
 	private List<PieceAngles> mAngles; 
 	private long mTimestamp;
+	// summary of the values saved so far for this wheel type
+	private int mNumOfSavedValues;
+	private long mLastSavedTime;
+	private int[] mLastSavedValues;
 	
 	/**
 	 * Create a new Wheel with the given type id, title and items
@@ -109,6 +113,60 @@ public class Wheel implements Parcelable {
 		return mTimestamp;
 	}
 	
+	/** @return int the number of times values were saved for this wheel type */
+	public int getNumOfSavedValues(){
+		return mNumOfSavedValues;
+	}
+
+	/** @return long the timestamp of the last time values were saved for this wheel type, 0 if never saved */
+	public long getLastSavedTime(){
+		return mLastSavedTime;
+	}
+
+	/** @return int[] the values saved last for this wheel type, null if never saved */
+	public int[] getLastSavedValues(){
+		return mLastSavedValues;
+	}
+
+	/**
+	 * Set the saved values summary, as read from WheelTypesSummaryView 
+	 * @param numOfSavedValues
+	 * @param lastSavedTime
+	 * @param lastSavedValues null if values were never saved
+	 */
+	public void setSavedValuesSummary(int numOfSavedValues, long lastSavedTime, int[] lastSavedValues){
+		mNumOfSavedValues = numOfSavedValues;
+		mLastSavedTime = lastSavedTime;
+		mLastSavedValues = lastSavedValues;
+	}
+
+	/**
+	 * Record that the current item values were saved at the given time
+	 * @param time 
+	 */
+	public void addSavedValues(long time){
+		int[] values = new int[getNumOfItems()];
+		for (int i=0; i<values.length; i++){
+			values[i] = mItems.get(i).getValue();
+		}
+		setSavedValuesSummary(mNumOfSavedValues + 1, time, values);
+	}
+
+	/** 
+	 * Set the item values to the values saved last, nothing changes if values were never saved 
+	 * @return boolean true if values were applied
+	 */
+	public boolean applyLastSavedValues(){
+		if ( mLastSavedValues == null ){
+			return false;
+		}
+		int count = Math.min(mLastSavedValues.length, getNumOfItems());
+		for (int i=0; i<count; i++){
+			mItems.get(i).setValue(mLastSavedValues[i]);
+		}
+		return true;
+	}
+	
 	/** @param title The wheel title	 */	
 	public void setTitle(String title){
 		mTitle = title;
@@ -150,7 +208,9 @@ public class Wheel implements Parcelable {
 		for (WheelItem item:mItems){
 			copyOfItems.add(item.copy());
 		}		
-		return new Wheel(mTypeId, getTitle(), copyOfItems);		
+		Wheel copy = new Wheel(mTypeId, getTitle(), copyOfItems);
+		copy.setSavedValuesSummary(mNumOfSavedValues, mLastSavedTime, mLastSavedValues);
+		return copy;
 
 	}
 
@@ -186,6 +246,9 @@ public class Wheel implements Parcelable {
 	public void writeToParcel(Parcel dest, int flags) {
 		dest.writeInt(mTypeId);
 		dest.writeString(mTitle);
+		dest.writeInt(mNumOfSavedValues);
+		dest.writeLong(mLastSavedTime);
+		dest.writeIntArray(mLastSavedValues);
 		int count = 0;		
 		if ( mItems == null ){
 			dest.writeInt(count);
@@ -204,6 +267,9 @@ public class Wheel implements Parcelable {
 	private Wheel(Parcel in){
 		setTypeId(in.readInt());
 		setTitle(in.readString());
+		mNumOfSavedValues = in.readInt();
+		mLastSavedTime = in.readLong();
+		mLastSavedValues = in.createIntArray();
 		int count = in.readInt();
 		mItems = new ArrayList<WheelItem>(count);
 		for ( int i=0; i<count; i++){
@@ -0,0 +1,223 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+package com.berries.dashboard.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.SparseArray;
+
+/**
+ * Snapshots stored in one memory-mapped journal file per wheel type, as fixed size records appended one after the other. 
+ * Appending writes 24 bytes to mapped memory, there is no B-tree or rollback journal to maintain. 
+ * The pages are written to the file by the system, {@link #flush()} forces them out.
+ * <p>Record layout, big endian: date (8 bytes), packed values (8 bytes), record marker (4 bytes), 
+ * CRC32 of the previous 20 bytes (4 bytes).</p>
+ * When a journal is opened its records are checked in order, the file is truncated at the first record that is 
+ * torn or damaged, so a crash loses at most the records that were not yet written out. 
+ * Unlike {@link SQLiteSnapshotStorage} the snapshots are not seen by WheelContentProvider, 
+ * the rollups and summaries of the database do not include them.
+ */
+public class JournalSnapshotStorage implements SnapshotStorage {
+
+	/** Size in bytes of a single record */
+	public static final int RECORD_SIZE = 24;
+	private static final int CHECKED_SIZE = 20;
+	// "WHL1", tells a written record from the zeros at the end of the mapping
+	private static final int RECORD_MARKER = 0x57484C31;
+	private static final int INITIAL_CAPACITY = 256;
+	private static final String FILE_PREFIX = "wheel_";
+	private static final String FILE_SUFFIX = ".journal";
+
+	private final File mDirectory;
+	private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+	private final SparseArray<Journal> mJournals = new SparseArray<Journal>();
+
+	/**
+	 * @param directory where the journal files are kept, created if it does not exist
+	 */
+	public JournalSnapshotStorage(File directory) {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IllegalArgumentException("Cannot create journal directory " + directory);
+		}
+		mDirectory = directory;
+	}
+
+	@Override
+	public void append(int typeId, long date, long packedValues, Runnable onComplete) {
+		synchronized (this) {
+			getJournal(typeId).append(date, packedValues);
+		}
+		if (onComplete != null) {
+			mMainHandler.post(onComplete);
+		}
+	}
+
+	@Override
+	public synchronized int scan(int typeId, Visitor visitor) {
+		return getJournal(typeId).scan(visitor);
+	}
+
+	/** Write the mapped pages of all open journals out to their files */
+	public synchronized void flush() {
+		for (int i = 0; i < mJournals.size(); i++) {
+			mJournals.valueAt(i).force();
+		}
+	}
+
+	/** Flush and close all journals, they are opened again when used */
+	public synchronized void close() {
+		for (int i = 0; i < mJournals.size(); i++) {
+			mJournals.valueAt(i).close();
+		}
+		mJournals.clear();
+	}
+
+	private Journal getJournal(int typeId) {
+		Journal journal = mJournals.get(typeId);
+		if (journal == null) {
+			File file = new File(mDirectory, FILE_PREFIX + typeId + FILE_SUFFIX);
+			try {
+				journal = new Journal(file);
+			} catch (IOException e) {
+				throw new IllegalStateException("Cannot open journal " + file, e);
+			}
+			mJournals.put(typeId, journal);
+		}
+		return journal;
+	}
+
+	/**
+	 * A single journal file
+	 */
+	private static class Journal {
+		private final RandomAccessFile mFile;
+		private final FileChannel mChannel;
+		private MappedByteBuffer mBuffer;
+		private int mCapacity;
+		private int mCount;
+		private final CRC32 mCrc = new CRC32();
+		private final byte[] mChecked = new byte[CHECKED_SIZE];
+		private final ByteBuffer mCheckedBuffer = ByteBuffer.wrap(mChecked);
+
+		Journal(File file) throws IOException {
+			mFile = new RandomAccessFile(file, "rw");
+			mChannel = mFile.getChannel();
+			mCount = recover();
+			map(Math.max(INITIAL_CAPACITY, mCount * 2));
+		}
+
+		void append(long date, long packedValues) {
+			if (mCount == mCapacity) {
+				try {
+					map(mCapacity * 2);
+				} catch (IOException e) {
+					throw new IllegalStateException("Cannot grow journal", e);
+				}
+			}
+			int position = mCount * RECORD_SIZE;
+			mCheckedBuffer.clear();
+			mCheckedBuffer.putLong(date).putLong(packedValues).putInt(RECORD_MARKER);
+			mBuffer.position(position);
+			mBuffer.put(mChecked);
+			// the checksum goes last, a record torn before it is dropped on recovery
+			mBuffer.putInt(checksum());
+			mCount++;
+		}
+
+		int scan(Visitor visitor) {
+			for (int i = 0; i < mCount; i++) {
+				int position = i * RECORD_SIZE;
+				visitor.onSnapshot(mBuffer.getLong(position), mBuffer.getLong(position + 8));
+			}
+			return mCount;
+		}
+
+		void force() {
+			mBuffer.force();
+		}
+
+		void close() {
+			force();
+			try {
+				mFile.close();
+			} catch (IOException e) {
+				// nothing left to write
+			}
+		}
+
+		// counts the valid records at the start of the file and cuts off everything after them
+		private int recover() throws IOException {
+			long records = mChannel.size() / RECORD_SIZE;
+			ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+			int count = 0;
+			mChannel.position(0);
+			while (count < records) {
+				record.clear();
+				while (record.hasRemaining()) {
+					if (mChannel.read(record) <= 0) {
+						break;
+					}
+				}
+				if (record.hasRemaining()) {
+					break;
+				}
+				record.flip();
+				record.get(mChecked);
+				int crc = record.getInt();
+				mCheckedBuffer.clear();
+				if (mCheckedBuffer.getInt(16) != RECORD_MARKER || crc != checksum()) {
+					break;
+				}
+				count++;
+			}
+			// a later record that still looks valid must not come back once new records are appended before it
+			mChannel.truncate((long) count * RECORD_SIZE);
+			return count;
+		}
+
+		// grows the file and the mapping to capacity records, the new part of the file reads as zeros
+		private void map(int capacity) throws IOException {
+			if (mBuffer != null) {
+				mBuffer.force();
+			}
+			mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, (long) capacity * RECORD_SIZE);
+			mCapacity = capacity;
+		}
+
+		// CRC32 of the bytes in mChecked
+		private int checksum() {
+			mCrc.reset();
+			mCrc.update(mChecked, 0, CHECKED_SIZE);
+			return (int) mCrc.getValue();
+		}
+	}
+}
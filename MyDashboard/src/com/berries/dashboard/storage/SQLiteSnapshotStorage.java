@@ -0,0 +1,99 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+package com.berries.dashboard.storage;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+
+import com.berries.dashboard.db.WheelContentProvider;
+import com.berries.dashboard.db.WheelWriteQueue;
+import com.berries.dashboard.db.tables.Contract;
+
+/**
+ * Snapshots stored in the WHEEL_PROGRESS table through WheelContentProvider, which also keeps the item rows, 
+ * rollups and summaries up to date. Appends go through the {@link WheelWriteQueue}.
+ */
+public class SQLiteSnapshotStorage implements SnapshotStorage {
+
+	private static final String[] PROJECTION = { Contract.COLUMN_DATE, Contract.COLUMN_PACKED_VALUES };
+	private static final String SORT_ORDER = Contract.COLUMN_DATE + " ASC, " + Contract.COLUMN_ID + " ASC";
+
+	private final Context mContext;
+	private final WheelWriteQueue mQueue;
+
+	public SQLiteSnapshotStorage(Context context) {
+		this(context, null);
+	}
+
+	/**
+	 * @param context
+	 * @param queue where appends are queued, null for the queue shared by the application
+	 */
+	public SQLiteSnapshotStorage(Context context, WheelWriteQueue queue) {
+		mContext = context.getApplicationContext();
+		mQueue = queue;
+	}
+
+	@Override
+	public void append(int typeId, long date, long packedValues, final Runnable onComplete) {
+		ContentValues values = new ContentValues();
+		values.put(Contract.COLUMN_TYPE_ID, typeId);
+		values.put(Contract.COLUMN_PACKED_VALUES, packedValues);
+		values.put(Contract.COLUMN_DATE, date);
+		ContentProviderOperation operation = ContentProviderOperation
+				.newInsert(WheelContentProvider.CONTENT_PROGRESS_SINGLE_URI).withValues(values).build();
+		WheelWriteQueue.Callback callback = null;
+		if (onComplete != null) {
+			callback = new WheelWriteQueue.Callback() {
+				@Override
+				public void onWriteComplete(ContentProviderResult result) {
+					onComplete.run();
+				}
+			};
+		}
+		// every save is a snapshot of its own, a queued save is never replaced by the next one
+		WheelWriteQueue queue = (mQueue == null) ? WheelWriteQueue.getInstance(mContext) : mQueue;
+		queue.enqueue(operation, null, callback);
+	}
+
+	@Override
+	public int scan(int typeId, Visitor visitor) {
+		Cursor cursor = mContext.getContentResolver().query(WheelContentProvider.getProgressUri(typeId), PROJECTION, null, null,
+				SORT_ORDER);
+		if (cursor == null) {
+			return 0;
+		}
+		try {
+			while (cursor.moveToNext()) {
+				visitor.onSnapshot(cursor.getLong(0), cursor.getLong(1));
+			}
+			return cursor.getCount();
+		} finally {
+			cursor.close();
+		}
+	}
+}
@@ -0,0 +1,55 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+package com.berries.dashboard.storage;
+
+/**
+ * Storage of saved wheels (snapshots): the time they were saved and their packed values, see PackedValuesCodec. 
+ * Snapshots are only ever appended and read back in full per wheel type.
+ * @see SQLiteSnapshotStorage
+ * @see JournalSnapshotStorage
+ */
+public interface SnapshotStorage {
+
+	/** Receives the snapshots of a wheel type, oldest first */
+	public interface Visitor {
+		void onSnapshot(long date, long packedValues);
+	}
+
+	/**
+	 * Append a snapshot, may return before it is written
+	 * @param typeId the wheel type id
+	 * @param date time in milliseconds at which the values were saved
+	 * @param packedValues see PackedValuesCodec
+	 * @param onComplete run on the main thread once the snapshot is written, may be null
+	 */
+	void append(int typeId, long date, long packedValues, Runnable onComplete);
+
+	/**
+	 * Read all snapshots of a wheel type. Must not be called on the main thread.
+	 * @param typeId the wheel type id
+	 * @param visitor
+	 * @return int the number of snapshots read
+	 */
+	int scan(int typeId, Visitor visitor);
+}
@@ -0,0 +1,118 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+package com.berries.dashboard.sync;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A sync server kept in memory, to sync devices, or several databases in one process, without a network. 
+ * It keeps the latest version of every row, numbered in the order it was stored, and counts the bytes it exchanged 
+ * so that sync throughput can be measured locally.
+ */
+public class InProcessSyncServer implements SyncTransport {
+
+	private static class Version {
+		SyncRecord record;
+		String deviceId;
+		long seq;
+	}
+
+	private final Map<String, Version> mVersions = new HashMap<String, Version>();
+	private final TreeMap<Long, Version> mBySeq = new TreeMap<Long, Version>();
+	private long mSeq;
+	private long mBytesPushed;
+	private long mBytesPulled;
+
+	@Override
+	public synchronized void push(String deviceId, byte[] batch) throws IOException {
+		mBytesPushed += batch.length;
+		for (SyncRecord record : SyncBatch.read(batch)) {
+			Version current = mVersions.get(record.guid);
+			if (current != null && record.isSameVersion(current.record)) {
+				continue;
+			}
+			if (current != null && record.isType() && !record.isNewerThan(current.record)) {
+				// the device loses, numbering the kept version again sends it back to the device with its next pull
+				store(current.record, current.deviceId);
+				continue;
+			}
+			store(record, deviceId);
+		}
+	}
+
+	@Override
+	public synchronized Pull pull(String deviceId, long token) throws IOException {
+		SyncBatch batch = new SyncBatch();
+		long lastSeq = token;
+		boolean more = false;
+		for (Version version : mBySeq.tailMap(token + 1).values()) {
+			if (!version.deviceId.equals(deviceId)) {
+				version.record.seq = version.seq;
+				if (!batch.add(version.record.toJsonWithSeq())) {
+					more = true;
+					break;
+				}
+			}
+			lastSeq = version.seq;
+		}
+		if (batch.size() == 0) {
+			return new Pull(null, lastSeq, false);
+		}
+		byte[] bytes = batch.toBytes();
+		mBytesPulled += bytes.length;
+		return new Pull(bytes, lastSeq, more);
+	}
+
+	private void store(SyncRecord record, String deviceId) {
+		Version version = mVersions.get(record.guid);
+		if (version == null) {
+			version = new Version();
+			mVersions.put(record.guid, version);
+		} else {
+			mBySeq.remove(version.seq);
+		}
+		version.record = record;
+		version.deviceId = deviceId;
+		version.seq = ++mSeq;
+		mBySeq.put(version.seq, version);
+	}
+
+	/** @return int the number of rows kept, deleted ones included */
+	public synchronized int getRecordCount() {
+		return mVersions.size();
+	}
+
+	/** @return long compressed bytes received by push */
+	public synchronized long getBytesPushed() {
+		return mBytesPushed;
+	}
+
+	/** @return long compressed bytes sent by pull */
+	public synchronized long getBytesPulled() {
+		return mBytesPulled;
+	}
+}
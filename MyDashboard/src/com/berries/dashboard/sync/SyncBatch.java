@@ -0,0 +1,115 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+package com.berries.dashboard.sync;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+/**
+ * A batch of sync records as it goes over a {@link SyncTransport}: a gzip-compressed JSON array of records. 
+ * A batch holds at most {@link #MAX_RECORDS} records and {@link #MAX_BYTES} of JSON, so neither side has to hold 
+ * more than one batch in memory whatever the number of changes, e.g. after thousands of saves made offline.
+ */
+public class SyncBatch {
+
+	public static final int MAX_RECORDS = 500;
+	/** Max size of the JSON before compression */
+	public static final int MAX_BYTES = 64 * 1024;
+	private static final String CHARSET = "UTF-8";
+
+	private final StringBuilder mJson = new StringBuilder("[");
+	private int mCount;
+
+	/**
+	 * @param recordJson see {@link SyncRecord#toJson()}
+	 * @return false if the batch is full, the record was not added. The first record is always added
+	 */
+	public boolean add(String recordJson) {
+		if (mCount > 0 && (mCount == MAX_RECORDS || mJson.length() + recordJson.length() + 2 > MAX_BYTES)) {
+			return false;
+		}
+		if (mCount > 0) {
+			mJson.append(',');
+		}
+		mJson.append(recordJson);
+		mCount++;
+		return true;
+	}
+
+	public int size() {
+		return mCount;
+	}
+
+	/** @return byte[] the compressed batch */
+	public byte[] toBytes() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(mJson.length() / 4);
+		OutputStream output = new GZIPOutputStream(bytes);
+		try {
+			output.write(mJson.toString().getBytes(CHARSET));
+			output.write(']');
+		} finally {
+			output.close();
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * @param batch as returned by {@link #toBytes()}
+	 * @return List the records in the order they were added
+	 * @throws IOException if the batch is not valid
+	 */
+	public static List<SyncRecord> read(byte[] batch) throws IOException {
+		InputStream input = new GZIPInputStream(new ByteArrayInputStream(batch));
+		ByteArrayOutputStream json = new ByteArrayOutputStream(batch.length * 4);
+		try {
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = input.read(buffer)) != -1) {
+				json.write(buffer, 0, read);
+			}
+		} finally {
+			input.close();
+		}
+		try {
+			JSONArray array = new JSONArray(json.toString(CHARSET));
+			List<SyncRecord> records = new ArrayList<SyncRecord>(array.length());
+			for (int i = 0; i < array.length(); i++) {
+				records.add(SyncRecord.fromJson(array.getJSONObject(i)));
+			}
+			return records;
+		} catch (JSONException e) {
+			throw new IOException("Malformed sync batch: " + e.getMessage());
+		}
+	}
+}
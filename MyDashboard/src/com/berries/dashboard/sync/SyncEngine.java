@@ -0,0 +1,570 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+package com.berries.dashboard.sync;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.berries.dashboard.db.WheelContentProvider;
+import com.berries.dashboard.db.tables.ChangeLogTable;
+import com.berries.dashboard.db.tables.Contract;
+import com.berries.dashboard.db.tables.WheelTypesTable;
+
+/**
+ * Syncs the wheel types and saved wheels of this device with the other devices of the user through a {@link SyncTransport}.
+ * <p>
+ * A sync first pulls the records stored on the server since the sync token of the device, and writes each batch in a single 
+ * {@link WheelContentProvider#applyBatch(ArrayList)} together with the new token, kept in MIGRATIONS. It then pushes the rows 
+ * changed on the device since the last sync, read from the change log as the consumer "sync" (see ChangeLogTable), 
+ * and moves the consumer past them once the server has them. The first sync of a device pushes all of its rows. 
+ * Rows are told apart by their guid, a saved wheel refers to its wheel type by the guid of the type.
+ * </p>
+ * Between two versions of a wheel type the newer one wins, see {@link SyncRecord#isNewerThan(SyncRecord)}. A row deleted on 
+ * the device and not pushed yet is not written again by a pull, the server decides once it gets the delete.
+ */
+public class SyncEngine {
+
+	public static class Result {
+		/** records sent to the server */
+		public int pushed;
+		/** records written to the database */
+		public int pulled;
+		/** records pulled that were not written, because the device has a newer version or deleted the row */
+		public int skipped;
+	}
+
+	private static final String TAG = SyncEngine.class.getSimpleName();
+	private static final String CONSUMER_NAME = "sync";
+	private static final String TOKEN_NAME = "sync:token";
+	private static final String PREFERENCES_NAME = "sync";
+	private static final String KEY_DEVICE_ID = "deviceId";
+	// SQLite allows 999 arguments per statement
+	private static final int MAX_SELECTION_ARGS = 500;
+
+	private static final String[] TYPE_PROJECTION = buildTypeProjection();
+	private static final String[] SNAPSHOT_PROJECTION = { Contract.COLUMN_ID, Contract.COLUMN_TYPE_ID, Contract.COLUMN_DATE,
+			Contract.COLUMN_PACKED_VALUES, Contract.COLUMN_REPEAT_COUNT, Contract.COLUMN_END_DATE, Contract.COLUMN_GUID };
+
+	// a wheel type of the device, id is -1 until the insert of a pulled type is applied
+	private static class LocalType {
+		long id;
+		int insertIndex;
+		SyncRecord record;
+
+		LocalType(long id, int insertIndex, SyncRecord record) {
+			this.id = id;
+			this.insertIndex = insertIndex;
+			this.record = record;
+		}
+	}
+
+	// the last change of a row within a page of the change log
+	private static class Change {
+		int operation;
+		long rowId;
+		String guid;
+	}
+
+	private final ContentResolver mResolver;
+	private final SyncTransport mTransport;
+	private final String mDeviceId;
+	private final Uri mTokenUri = WheelContentProvider.getMigrationUri(TOKEN_NAME);
+	private final Uri mConsumerUri = WheelContentProvider.getChangeConsumerUri(CONSUMER_NAME);
+	// the versions written by the pull of the running sync, they show up in the change log but are not pushed back
+	private final Map<String, SyncRecord> mPulled = new HashMap<String, SyncRecord>();
+
+	/**
+	 * @param context
+	 * @param transport
+	 */
+	public SyncEngine(Context context, SyncTransport transport) {
+		this(context.getContentResolver(), transport, getDeviceId(context));
+	}
+
+	/**
+	 * @param resolver
+	 * @param transport
+	 * @param deviceId unique id of this device among the devices of the user
+	 */
+	public SyncEngine(ContentResolver resolver, SyncTransport transport, String deviceId) {
+		mResolver = resolver;
+		mTransport = transport;
+		mDeviceId = deviceId;
+	}
+
+	// a random id, created on the first sync of the device
+	private static synchronized String getDeviceId(Context context) {
+		SharedPreferences preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+		String deviceId = preferences.getString(KEY_DEVICE_ID, null);
+		if (deviceId == null) {
+			deviceId = UUID.randomUUID().toString();
+			preferences.edit().putString(KEY_DEVICE_ID, deviceId).commit();
+		}
+		return deviceId;
+	}
+
+	/**
+	 * Pull then push, must not be called on the main thread. 
+	 * A sync that fails half way keeps the batches it has written and pushed, the next one continues after them.
+	 */
+	public synchronized Result sync() throws IOException, RemoteException, OperationApplicationException {
+		Result result = new Result();
+		mPulled.clear();
+		try {
+			Long since = getConsumerSeq();
+			boolean first = (since == null);
+			Set<String> localDeletes;
+			if (first) {
+				// registered before the rows are read, so nothing written in between is missed
+				mResolver.insert(mConsumerUri, new ContentValues());
+				since = getConsumerSeq();
+				ContentValues token = new ContentValues();
+				token.put(Contract.COLUMN_END_ID, 0);
+				mResolver.insert(mTokenUri, token);
+				localDeletes = Collections.emptySet();
+			} else {
+				localDeletes = getPendingDeletes(since);
+			}
+			pull(localDeletes, result);
+			if (first) {
+				pushAll(result);
+			}
+			pushChanges(since, result);
+		} finally {
+			mPulled.clear();
+		}
+		Log.i(TAG, "Synced, pushed " + result.pushed + " pulled " + result.pulled + " skipped " + result.skipped);
+		return result;
+	}
+
+	private void pull(Set<String> localDeletes, Result result) throws IOException, RemoteException, OperationApplicationException {
+		long token = getToken();
+		Map<String, LocalType> types = getTypes();
+		// saved wheels pulled before their wheel type, which comes later when it was edited after them
+		List<SyncRecord> deferred = new ArrayList<SyncRecord>();
+		boolean more = true;
+		while (more) {
+			SyncTransport.Pull pull = mTransport.pull(mDeviceId, token);
+			List<SyncRecord> records = new ArrayList<SyncRecord>(deferred);
+			deferred.clear();
+			if (pull.batch != null) {
+				records.addAll(SyncBatch.read(pull.batch));
+			}
+			token = pull.token;
+			more = pull.more;
+			// the token is only moved past the deferred records, so a sync that stops here pulls them again
+			long checkpoint = token;
+			ArrayList<ContentProviderOperation> operations = toOperations(records, types, localDeletes, deferred, result);
+			for (SyncRecord record : deferred) {
+				checkpoint = Math.min(checkpoint, record.seq - 1);
+			}
+			operations.add(ContentProviderOperation.newUpdate(mTokenUri).withValue(Contract.COLUMN_LAST_ID, checkpoint).build());
+			ContentProviderResult[] results = mResolver.applyBatch(WheelContentProvider.AUTHORITY, operations);
+			for (LocalType type : types.values()) {
+				if (type.id < 0) {
+					type.id = ContentUris.parseId(results[type.insertIndex].uri);
+				}
+			}
+		}
+		if (!deferred.isEmpty()) {
+			Log.w(TAG, "Dropped " + deferred.size() + " saved wheels of unknown wheel types");
+			result.skipped += deferred.size();
+		}
+	}
+
+	// the wheel types go first so that the saved wheels of a new type can refer to its insert
+	private ArrayList<ContentProviderOperation> toOperations(List<SyncRecord> records, Map<String, LocalType> types,
+			Set<String> localDeletes, List<SyncRecord> deferred, Result result) {
+		ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+		List<SyncRecord> snapshots = new ArrayList<SyncRecord>();
+		for (SyncRecord record : records) {
+			if (!record.isType()) {
+				snapshots.add(record);
+				continue;
+			}
+			LocalType local = types.get(record.guid);
+			ContentProviderOperation operation = null;
+			if (record.deleted) {
+				if (local != null && record.isNewerThan(local.record)) {
+					operation = ContentProviderOperation.newDelete(
+							ContentUris.withAppendedId(WheelContentProvider.CONTENT_WHEEL_TYPES_SINGLE_URI, local.id)).build();
+					types.remove(record.guid);
+				}
+			} else if (localDeletes.contains(record.guid)) {
+				operation = null;
+			} else if (local == null) {
+				types.put(record.guid, new LocalType(-1, operations.size(), record));
+				operation = ContentProviderOperation.newInsert(WheelContentProvider.CONTENT_WHEEL_TYPES_SINGLE_URI)
+						.withValues(record.toValues()).build();
+			} else if (record.isNewerThan(local.record)) {
+				local.record = record;
+				operation = ContentProviderOperation.newUpdate(
+						ContentUris.withAppendedId(WheelContentProvider.CONTENT_WHEEL_TYPES_SINGLE_URI, local.id))
+						.withValues(record.toValues()).build();
+			}
+			addPulled(operations, operation, record, result);
+		}
+
+		Map<String, Long> snapshotIds = getSnapshotIds(snapshots);
+		for (SyncRecord record : snapshots) {
+			Long id = snapshotIds.get(record.guid);
+			ContentProviderOperation operation = null;
+			if (record.deleted) {
+				if (id != null) {
+					operation = ContentProviderOperation.newDelete(
+							ContentUris.withAppendedId(WheelContentProvider.CONTENT_PROGRESS_SINGLE_URI, id)).build();
+				}
+			} else if (localDeletes.contains(record.guid)) {
+				operation = null;
+			} else if (id != null) {
+				operation = ContentProviderOperation.newUpdate(
+						ContentUris.withAppendedId(WheelContentProvider.CONTENT_PROGRESS_SINGLE_URI, id))
+						.withValues(record.toValues()).build();
+			} else {
+				LocalType type = types.get(record.typeGuid);
+				if (type == null) {
+					deferred.add(record);
+					continue;
+				}
+				ContentProviderOperation.Builder insert = ContentProviderOperation
+						.newInsert(WheelContentProvider.CONTENT_PROGRESS_SINGLE_URI).withValues(record.toValues());
+				if (type.id < 0) {
+					insert.withValueBackReference(Contract.COLUMN_TYPE_ID, type.insertIndex);
+				} else {
+					insert.withValue(Contract.COLUMN_TYPE_ID, type.id);
+				}
+				operation = insert.build();
+			}
+			addPulled(operations, operation, record, result);
+		}
+		return operations;
+	}
+
+	private void addPulled(List<ContentProviderOperation> operations, ContentProviderOperation operation, SyncRecord record,
+			Result result) {
+		if (operation == null) {
+			result.skipped++;
+			return;
+		}
+		operations.add(operation);
+		mPulled.put(record.guid, record);
+		result.pulled++;
+	}
+
+	// first sync of the device, the rows it had before it registered for the change log
+	private void pushAll(Result result) throws IOException {
+		Map<Long, String> typeGuids = new HashMap<Long, String>();
+		List<SyncRecord> records = new ArrayList<SyncRecord>();
+		Cursor cursor = mResolver.query(WheelContentProvider.CONTENT_WHEEL_TYPES_URI, TYPE_PROJECTION, null, null, null);
+		try {
+			while (cursor.moveToNext()) {
+				typeGuids.put(cursor.getLong(0), cursor.getString(cursor.getColumnIndexOrThrow(Contract.COLUMN_GUID)));
+				records.add(SyncRecord.fromTypeRow(cursor));
+			}
+		} finally {
+			cursor.close();
+		}
+		SyncBatch batch = push(new SyncBatch(), records, result);
+
+		// walked in ranges of ids, so that one range at a time is in memory
+		long lastId = 0;
+		boolean more = true;
+		while (more) {
+			records.clear();
+			cursor = mResolver.query(WheelContentProvider.CONTENT_PROGRESS_URI, SNAPSHOT_PROJECTION,
+					Contract.COLUMN_ID + " > ? and " + Contract.COLUMN_ID + " <= ?",
+					new String[] { String.valueOf(lastId), String.valueOf(lastId + SyncBatch.MAX_RECORDS) }, Contract.COLUMN_ID + " ASC");
+			try {
+				while (cursor.moveToNext()) {
+					records.add(SyncRecord.fromSnapshotRow(cursor, typeGuids.get(cursor.getLong(1))));
+				}
+			} finally {
+				cursor.close();
+			}
+			lastId += SyncBatch.MAX_RECORDS;
+			more = !records.isEmpty() || lastId < getMaxSnapshotId();
+			batch = push(batch, records, result);
+		}
+		flush(batch);
+	}
+
+	// the rows changed since the consumer seq, one page of the change log at a time
+	private void pushChanges(long since, Result result) throws IOException {
+		Map<Long, String> typeGuids = getTypeGuids();
+		long seq = since;
+		while (true) {
+			Map<String, Change> changes = new LinkedHashMap<String, Change>();
+			Uri page = WheelContentProvider.getChangesUri(seq).buildUpon()
+					.appendQueryParameter(WheelContentProvider.QUERY_PARAMETER_PAGE_SIZE, String.valueOf(SyncBatch.MAX_RECORDS)).build();
+			Cursor cursor = mResolver.query(page, null, null, null, null);
+			try {
+				if (!cursor.moveToFirst()) {
+					break;
+				}
+				do {
+					seq = cursor.getLong(cursor.getColumnIndexOrThrow(Contract.COLUMN_SEQ));
+					String table = cursor.getString(cursor.getColumnIndexOrThrow(Contract.COLUMN_TABLE));
+					Change change = new Change();
+					change.operation = cursor.getInt(cursor.getColumnIndexOrThrow(Contract.COLUMN_OPERATION));
+					change.rowId = cursor.getLong(cursor.getColumnIndexOrThrow(Contract.COLUMN_ROW_ID));
+					change.guid = cursor.getString(cursor.getColumnIndexOrThrow(Contract.COLUMN_GUID));
+					String key = table + ":" + change.rowId;
+					// only the last change of a row counts, it moves to the end of the page
+					changes.remove(key);
+					changes.put(key, change);
+				} while (cursor.moveToNext());
+			} finally {
+				cursor.close();
+			}
+
+			List<SyncRecord> records = new ArrayList<SyncRecord>();
+			List<Long> typeIds = new ArrayList<Long>();
+			List<Long> snapshotIds = new ArrayList<Long>();
+			List<SyncRecord> snapshotDeletes = new ArrayList<SyncRecord>();
+			long now = System.currentTimeMillis();
+			for (Map.Entry<String, Change> entry : changes.entrySet()) {
+				Change change = entry.getValue();
+				boolean type = entry.getKey().startsWith(WheelTypesTable.TABLE_NAME + ":");
+				if (change.operation != ChangeLogTable.OPERATION_DELETE) {
+					(type ? typeIds : snapshotIds).add(change.rowId);
+				} else if (change.guid != null) {
+					// rows deleted before they had a guid were never synced
+					SyncRecord deleted = SyncRecord.deleted(type ? SyncRecord.KIND_TYPE : SyncRecord.KIND_SNAPSHOT, change.guid, now);
+					(type ? records : snapshotDeletes).add(deleted);
+				}
+			}
+			readTypes(typeIds, records, typeGuids);
+			readSnapshots(snapshotIds, records, typeGuids);
+			records.addAll(snapshotDeletes);
+			flush(push(new SyncBatch(), records, result));
+
+			ContentValues values = new ContentValues();
+			values.put(Contract.COLUMN_SEQ, seq);
+			mResolver.update(mConsumerUri, values, null, null);
+		}
+	}
+
+	/**
+	 * Add the records to the batch, sending it whenever it is full
+	 * @return SyncBatch the batch holding the last records, not sent yet
+	 */
+	private SyncBatch push(SyncBatch batch, Collection<SyncRecord> records, Result result) throws IOException {
+		for (SyncRecord record : records) {
+			SyncRecord pulled = mPulled.get(record.guid);
+			if (pulled != null && (pulled.deleted ? record.deleted : pulled.isSameVersion(record))) {
+				continue;
+			}
+			String json = record.toJson();
+			if (!batch.add(json)) {
+				flush(batch);
+				batch = new SyncBatch();
+				batch.add(json);
+			}
+			result.pushed++;
+		}
+		return batch;
+	}
+
+	private void flush(SyncBatch batch) throws IOException {
+		if (batch.size() > 0) {
+			mTransport.push(mDeviceId, batch.toBytes());
+		}
+	}
+
+	// the rows that still exist, a row deleted since is pushed as deleted from a later change
+	private void readTypes(List<Long> ids, List<SyncRecord> records, Map<Long, String> typeGuids) {
+		for (int start = 0; start < ids.size(); start += MAX_SELECTION_ARGS) {
+			List<Long> chunk = ids.subList(start, Math.min(ids.size(), start + MAX_SELECTION_ARGS));
+			Cursor cursor = mResolver.query(WheelContentProvider.CONTENT_WHEEL_TYPES_URI, TYPE_PROJECTION, inSelection(Contract.COLUMN_ID,
+					chunk.size()), toArgs(chunk), null);
+			try {
+				while (cursor.moveToNext()) {
+					SyncRecord record = SyncRecord.fromTypeRow(cursor);
+					typeGuids.put(cursor.getLong(0), record.guid);
+					records.add(record);
+				}
+			} finally {
+				cursor.close();
+			}
+		}
+	}
+
+	private void readSnapshots(List<Long> ids, List<SyncRecord> records, Map<Long, String> typeGuids) {
+		for (int start = 0; start < ids.size(); start += MAX_SELECTION_ARGS) {
+			List<Long> chunk = ids.subList(start, Math.min(ids.size(), start + MAX_SELECTION_ARGS));
+			Cursor cursor = mResolver.query(WheelContentProvider.CONTENT_PROGRESS_URI, SNAPSHOT_PROJECTION, inSelection(Contract.COLUMN_ID,
+					chunk.size()), toArgs(chunk), Contract.COLUMN_ID + " ASC");
+			try {
+				while (cursor.moveToNext()) {
+					records.add(SyncRecord.fromSnapshotRow(cursor, typeGuids.get(cursor.getLong(1))));
+				}
+			} finally {
+				cursor.close();
+			}
+		}
+	}
+
+	// guid to wheel type of all wheel types on the device
+	private Map<String, LocalType> getTypes() {
+		Map<String, LocalType> types = new HashMap<String, LocalType>();
+		Cursor cursor = mResolver.query(WheelContentProvider.CONTENT_WHEEL_TYPES_URI, TYPE_PROJECTION, null, null, null);
+		try {
+			while (cursor.moveToNext()) {
+				SyncRecord record = SyncRecord.fromTypeRow(cursor);
+				types.put(record.guid, new LocalType(cursor.getLong(0), -1, record));
+			}
+		} finally {
+			cursor.close();
+		}
+		return types;
+	}
+
+	private Map<Long, String> getTypeGuids() {
+		Map<Long, String> typeGuids = new HashMap<Long, String>();
+		for (LocalType type : getTypes().values()) {
+			typeGuids.put(type.id, type.record.guid);
+		}
+		return typeGuids;
+	}
+
+	// guid to _id of the saved wheels of the records that exist on the device
+	private Map<String, Long> getSnapshotIds(List<SyncRecord> records) {
+		Map<String, Long> ids = new HashMap<String, Long>();
+		for (int start = 0; start < records.size(); start += MAX_SELECTION_ARGS) {
+			List<SyncRecord> chunk = records.subList(start, Math.min(records.size(), start + MAX_SELECTION_ARGS));
+			String[] guids = new String[chunk.size()];
+			for (int i = 0; i < guids.length; i++) {
+				guids[i] = chunk.get(i).guid;
+			}
+			Cursor cursor = mResolver.query(WheelContentProvider.CONTENT_PROGRESS_URI, new String[] { Contract.COLUMN_ID, Contract.COLUMN_GUID },
+					inSelection(Contract.COLUMN_GUID, guids.length), guids, null);
+			try {
+				while (cursor.moveToNext()) {
+					ids.put(cursor.getString(1), cursor.getLong(0));
+				}
+			} finally {
+				cursor.close();
+			}
+		}
+		return ids;
+	}
+
+	// the guids of the rows deleted on the device since the last push
+	private Set<String> getPendingDeletes(long since) {
+		Set<String> guids = new HashSet<String>();
+		Cursor cursor = mResolver.query(WheelContentProvider.getChangesUri(since), new String[] { Contract.COLUMN_OPERATION,
+				Contract.COLUMN_GUID }, null, null, null);
+		try {
+			while (cursor.moveToNext()) {
+				if (cursor.getInt(0) == ChangeLogTable.OPERATION_DELETE && !cursor.isNull(1)) {
+					guids.add(cursor.getString(1));
+				}
+			}
+		} finally {
+			cursor.close();
+		}
+		return guids;
+	}
+
+	private long getMaxSnapshotId() {
+		Cursor cursor = mResolver.query(WheelContentProvider.CONTENT_PROGRESS_SINGLE_URI, new String[] { Contract.COLUMN_ID }, null, null,
+				Contract.COLUMN_ID + " DESC");
+		try {
+			return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+		} finally {
+			cursor.close();
+		}
+	}
+
+	// null if the device never synced
+	private Long getConsumerSeq() {
+		Cursor cursor = mResolver.query(mConsumerUri, null, null, null, null);
+		try {
+			return cursor.moveToFirst() ? cursor.getLong(0) : null;
+		} finally {
+			cursor.close();
+		}
+	}
+
+	private long getToken() {
+		Cursor cursor = mResolver.query(mTokenUri, null, null, null, null);
+		try {
+			return cursor.moveToFirst() ? cursor.getLong(cursor.getColumnIndexOrThrow(Contract.COLUMN_LAST_ID)) : 0;
+		} finally {
+			cursor.close();
+		}
+	}
+
+	private static String inSelection(String column, int count) {
+		StringBuilder selection = new StringBuilder(column).append(" in (");
+		for (int i = 0; i < count; i++) {
+			selection.append(i == 0 ? "?" : ", ?");
+		}
+		return selection.append(")").toString();
+	}
+
+	private static String[] toArgs(List<Long> ids) {
+		String[] args = new String[ids.size()];
+		for (int i = 0; i < args.length; i++) {
+			args[i] = String.valueOf(ids.get(i));
+		}
+		return args;
+	}
+
+	private static String[] buildTypeProjection() {
+		List<String> projection = new ArrayList<String>();
+		projection.add(Contract.COLUMN_ID);
+		projection.add(Contract.COLUMN_TITLE);
+		projection.add(Contract.COLUMN_COUNT);
+		for (int i = 0; i < Contract.MAX_ITEMS_IN_WHEEL; i++) {
+			projection.add(Contract.COLUMN_ITEM + i);
+		}
+		projection.add(Contract.COLUMN_DATE);
+		projection.add(Contract.COLUMN_GUID);
+		projection.add(Contract.COLUMN_MODIFIED);
+		return projection.toArray(new String[projection.size()]);
+	}
+}
@@ -0,0 +1,247 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+package com.berries.dashboard.sync;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import com.berries.dashboard.db.tables.Contract;
+
+/**
+ * A wheel type or saved wheel as it is exchanged between devices, identified by its guid. 
+ * A deleted row is sent as a record with only its kind, guid, deleted flag and modified time.
+ * <p>
+ * Two versions of a wheel type are decided by {@link #isNewerThan(SyncRecord)}, the same way on every device and on the server, 
+ * so all of them end up with the same version whatever the order they see the edits in. 
+ * Saved wheels are not edited by the user, a newer version only comes from compacting the history and the server keeps the last one pushed.
+ * </p>
+ */
+public class SyncRecord {
+
+	public static final String KIND_TYPE = "type";
+	public static final String KIND_SNAPSHOT = "snapshot";
+
+	private static final String KEY_KIND = "kind";
+	private static final String KEY_DELETED = "deleted";
+	private static final String KEY_SEQ = "seq";
+	private static final String KEY_TYPE_GUID = "typeGuid";
+
+	public String kind;
+	public String guid;
+	public boolean deleted;
+	/** time in milliseconds of the last change of a wheel type, or of its delete */
+	public long modified;
+	/** position of the record on the server, set on the records pulled from it */
+	public long seq;
+
+	// wheel type
+	public String title;
+	public int count;
+	public final String[] items = new String[Contract.MAX_ITEMS_IN_WHEEL];
+
+	// saved wheel
+	public String typeGuid;
+	public long packedValues;
+	public int repeatCount = 1;
+	public Long endDate;
+
+	// both
+	public long date;
+
+	/** @return SyncRecord of a deleted row */
+	public static SyncRecord deleted(String kind, String guid, long modified) {
+		SyncRecord record = new SyncRecord();
+		record.kind = kind;
+		record.guid = guid;
+		record.deleted = true;
+		record.modified = modified;
+		return record;
+	}
+
+	/** @param cursor a WHEEL_TYPES row with at least title, count, item0..item7, date, guid & modified */
+	public static SyncRecord fromTypeRow(Cursor cursor) {
+		SyncRecord record = new SyncRecord();
+		record.kind = KIND_TYPE;
+		record.guid = cursor.getString(cursor.getColumnIndexOrThrow(Contract.COLUMN_GUID));
+		record.modified = cursor.getLong(cursor.getColumnIndexOrThrow(Contract.COLUMN_MODIFIED));
+		record.title = cursor.getString(cursor.getColumnIndexOrThrow(Contract.COLUMN_TITLE));
+		record.count = cursor.getInt(cursor.getColumnIndexOrThrow(Contract.COLUMN_COUNT));
+		for (int i = 0; i < Contract.MAX_ITEMS_IN_WHEEL; i++) {
+			record.items[i] = cursor.getString(cursor.getColumnIndexOrThrow(Contract.COLUMN_ITEM + i));
+		}
+		record.date = cursor.getLong(cursor.getColumnIndexOrThrow(Contract.COLUMN_DATE));
+		return record;
+	}
+
+	/** @param cursor a WHEEL_PROGRESS row with at least date, packedValues, repeatCount, endDate & guid */
+	public static SyncRecord fromSnapshotRow(Cursor cursor, String typeGuid) {
+		SyncRecord record = new SyncRecord();
+		record.kind = KIND_SNAPSHOT;
+		record.guid = cursor.getString(cursor.getColumnIndexOrThrow(Contract.COLUMN_GUID));
+		record.typeGuid = typeGuid;
+		record.date = cursor.getLong(cursor.getColumnIndexOrThrow(Contract.COLUMN_DATE));
+		record.packedValues = cursor.getLong(cursor.getColumnIndexOrThrow(Contract.COLUMN_PACKED_VALUES));
+		record.repeatCount = cursor.getInt(cursor.getColumnIndexOrThrow(Contract.COLUMN_REPEAT_COUNT));
+		int endDate = cursor.getColumnIndexOrThrow(Contract.COLUMN_END_DATE);
+		record.endDate = cursor.isNull(endDate) ? null : cursor.getLong(endDate);
+		return record;
+	}
+
+	public boolean isType() {
+		return KIND_TYPE.equals(kind);
+	}
+
+	/**
+	 * @return ContentValues the columns of the row, without typeId for a saved wheel. Not for deleted records
+	 */
+	public ContentValues toValues() {
+		ContentValues values = new ContentValues();
+		values.put(Contract.COLUMN_GUID, guid);
+		values.put(Contract.COLUMN_DATE, date);
+		if (isType()) {
+			values.put(Contract.COLUMN_TITLE, title);
+			values.put(Contract.COLUMN_COUNT, count);
+			for (int i = 0; i < Contract.MAX_ITEMS_IN_WHEEL; i++) {
+				values.put(Contract.COLUMN_ITEM + i, items[i]);
+			}
+			values.put(Contract.COLUMN_MODIFIED, modified);
+		} else {
+			values.put(Contract.COLUMN_PACKED_VALUES, packedValues);
+			values.put(Contract.COLUMN_REPEAT_COUNT, repeatCount);
+			values.put(Contract.COLUMN_END_DATE, endDate);
+		}
+		return values;
+	}
+
+	/**
+	 * The later change wins, a delete wins over an edit made at the same time, 
+	 * and between two edits made at the same time the greater {@link #toJson()} does, which is the same on every device
+	 */
+	public boolean isNewerThan(SyncRecord other) {
+		if (modified != other.modified) {
+			return modified > other.modified;
+		}
+		if (deleted != other.deleted) {
+			return deleted;
+		}
+		return toJson().compareTo(other.toJson()) > 0;
+	}
+
+	/** @return true if both are the same version of the same row, the server position is not compared */
+	public boolean isSameVersion(SyncRecord other) {
+		return other != null && toJson().equals(other.toJson());
+	}
+
+	/** @return String the record as a JSON object, its members always in the same order. The seq is left out */
+	public String toJson() {
+		try {
+			JSONObject json = new JSONObject();
+			json.put(KEY_KIND, kind);
+			json.put(Contract.COLUMN_GUID, guid);
+			json.put(Contract.COLUMN_MODIFIED, modified);
+			if (deleted) {
+				json.put(KEY_DELETED, true);
+			} else if (isType()) {
+				json.put(Contract.COLUMN_TITLE, title);
+				json.put(Contract.COLUMN_COUNT, count);
+				for (int i = 0; i < Contract.MAX_ITEMS_IN_WHEEL; i++) {
+					json.put(Contract.COLUMN_ITEM + i, (items[i] == null) ? JSONObject.NULL : items[i]);
+				}
+				json.put(Contract.COLUMN_DATE, date);
+			} else {
+				json.put(KEY_TYPE_GUID, typeGuid);
+				json.put(Contract.COLUMN_DATE, date);
+				json.put(Contract.COLUMN_PACKED_VALUES, packedValues);
+				json.put(Contract.COLUMN_REPEAT_COUNT, repeatCount);
+				json.put(Contract.COLUMN_END_DATE, (endDate == null) ? JSONObject.NULL : endDate);
+			}
+			return sortedJson(json);
+		} catch (JSONException e) {
+			throw new IllegalStateException("Cannot write sync record " + guid, e);
+		}
+	}
+
+	/** @return String the record with its server seq, as it is sent in a pull */
+	String toJsonWithSeq() {
+		String json = toJson();
+		return "{\"" + KEY_SEQ + "\":" + seq + "," + json.substring(1);
+	}
+
+	/** @throws JSONException if the record is malformed */
+	public static SyncRecord fromJson(JSONObject json) throws JSONException {
+		SyncRecord record = new SyncRecord();
+		record.kind = json.getString(KEY_KIND);
+		if (!KIND_TYPE.equals(record.kind) && !KIND_SNAPSHOT.equals(record.kind)) {
+			throw new JSONException("Unknown kind " + record.kind);
+		}
+		record.guid = json.getString(Contract.COLUMN_GUID);
+		record.modified = json.getLong(Contract.COLUMN_MODIFIED);
+		record.seq = json.optLong(KEY_SEQ);
+		record.deleted = json.optBoolean(KEY_DELETED);
+		if (record.deleted) {
+			return record;
+		}
+		record.date = json.getLong(Contract.COLUMN_DATE);
+		if (record.isType()) {
+			record.title = json.getString(Contract.COLUMN_TITLE);
+			record.count = json.getInt(Contract.COLUMN_COUNT);
+			for (int i = 0; i < Contract.MAX_ITEMS_IN_WHEEL; i++) {
+				record.items[i] = json.isNull(Contract.COLUMN_ITEM + i) ? null : json.getString(Contract.COLUMN_ITEM + i);
+			}
+		} else {
+			record.typeGuid = json.getString(KEY_TYPE_GUID);
+			record.packedValues = json.getLong(Contract.COLUMN_PACKED_VALUES);
+			record.repeatCount = json.getInt(Contract.COLUMN_REPEAT_COUNT);
+			record.endDate = json.isNull(Contract.COLUMN_END_DATE) ? null : json.getLong(Contract.COLUMN_END_DATE);
+		}
+		return record;
+	}
+
+	// JSONObject keeps its members in a hash map, they are written sorted so that equal records give equal strings
+	private static String sortedJson(JSONObject json) throws JSONException {
+		TreeMap<String, Object> sorted = new TreeMap<String, Object>();
+		Iterator<?> keys = json.keys();
+		while (keys.hasNext()) {
+			String key = (String) keys.next();
+			sorted.put(key, json.get(key));
+		}
+		StringBuilder builder = new StringBuilder("{");
+		for (Map.Entry<String, Object> member : sorted.entrySet()) {
+			if (builder.length() > 1) {
+				builder.append(',');
+			}
+			builder.append(JSONObject.quote(member.getKey())).append(':');
+			Object value = member.getValue();
+			builder.append((value instanceof String) ? JSONObject.quote((String) value) : String.valueOf(value));
+		}
+		return builder.append('}').toString();
+	}
+}
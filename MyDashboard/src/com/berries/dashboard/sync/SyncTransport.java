@@ -0,0 +1,66 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+package com.berries.dashboard.sync;
+
+import java.io.IOException;
+
+/**
+ * The connection of a device to the sync server. Batches are built and read with {@link SyncBatch}, 
+ * the server decides between versions of a wheel type with {@link SyncRecord#isNewerThan(SyncRecord)} 
+ * and numbers the versions it keeps, the sync token of a device being the number of the last one it pulled. 
+ * {@link InProcessSyncServer} is a stand-in keeping everything in memory.
+ */
+public interface SyncTransport {
+
+	/** The records after a sync token */
+	public static class Pull {
+		/** see {@link SyncBatch}, null if there was nothing to pull */
+		public final byte[] batch;
+		/** the token to pull from next */
+		public final long token;
+		/** true if more records are left after token */
+		public final boolean more;
+
+		public Pull(byte[] batch, long token, boolean more) {
+			this.batch = batch;
+			this.token = token;
+			this.more = more;
+		}
+	}
+
+	/**
+	 * Send the rows changed on the device. Wheel types are sent before the saved wheels referring to them
+	 * @param deviceId
+	 * @param batch see {@link SyncBatch}
+	 */
+	void push(String deviceId, byte[] batch) throws IOException;
+
+	/**
+	 * Get one batch of the records kept after the given token, leaving out the versions pushed by the device itself. 
+	 * Records are ordered by their number on the server, each holding it in {@link SyncRecord#seq}.
+	 * @param deviceId
+	 * @param token 0 for everything
+	 */
+	Pull pull(String deviceId, long token) throws IOException;
+}
@@ -0,0 +1,88 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2013 Berry Ventura, berriesapps@gmail.com
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+package com.berries.dashboard.utils;
+
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+/**
+ * Measures the cold start of the application and logs it once per process: the time from process start 
+ * until the database is open and until the first dashboard frame showing the wheels is drawn. 
+ * The start is taken when WheelContentProvider is created, which happens before any activity. 
+ * Filter the log by the StartupTiming tag.
+ */
+public class StartupTiming {
+
+	private static final String TAG = StartupTiming.class.getSimpleName();
+
+	private static long sProcessStart;
+	private static long sDatabaseReady;
+	private static boolean sFirstFrameMeasured;
+
+	/** Called from WheelContentProvider.onCreate, the earliest code the application runs */
+	public static synchronized void markProcessStart() {
+		if (sProcessStart == 0) {
+			sProcessStart = SystemClock.elapsedRealtime();
+		}
+	}
+
+	/** Called once the database was opened, created or upgraded */
+	public static synchronized void markDatabaseReady() {
+		if (sDatabaseReady == 0 && sProcessStart != 0) {
+			sDatabaseReady = SystemClock.elapsedRealtime();
+			Log.i(TAG, "Database ready " + (sDatabaseReady - sProcessStart) + " ms after process start");
+		}
+	}
+
+	/**
+	 * Called when the dashboard got its wheels, logs the time until the next frame is drawn the first time it is called
+	 * @param view any view of the dashboard
+	 */
+	public static synchronized void measureFirstFrame(final View view) {
+		if (sFirstFrameMeasured || sProcessStart == 0) {
+			return;
+		}
+		sFirstFrameMeasured = true;
+		view.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+			@Override
+			public boolean onPreDraw() {
+				view.getViewTreeObserver().removeOnPreDrawListener(this);
+				logFirstFrame();
+				return true;
+			}
+		});
+	}
+
+	private static synchronized void logFirstFrame() {
+		long firstFrame = SystemClock.elapsedRealtime() - sProcessStart;
+		String database = (sDatabaseReady == 0) ? "not ready yet" : "ready after " + (sDatabaseReady - sProcessStart) + " ms";
+		Log.i(TAG, "First dashboard frame " + firstFrame + " ms after process start, database " + database);
+	}
+
+	// don't want anyone to create an object of this class
+	private StartupTiming() {
+	}
+}